@@ -0,0 +1,30 @@
+package com.letsdoit.logger;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.test.InstrumentationTestRunner;
+
+/**
+ * Runs the instrumentation tests, and keeps the target Context where tests that extend plain TestCase can find it.
+ * The ActivityStore conformance suite lives in core, which doesn't know about Android, so the SQLite engine's
+ * conformance test can't extend AndroidTestCase to be handed a Context.
+ */
+public class LoggerTestRunner extends InstrumentationTestRunner {
+    private static volatile Context targetContext;
+
+    @Override
+    public void onCreate(Bundle arguments) {
+        targetContext = getTargetContext();
+        super.onCreate(arguments);
+    }
+
+    /**
+     * @return the Context of the app under test
+     */
+    public static Context targetContext() {
+        if (targetContext == null) {
+            throw new IllegalStateException("The tests aren't run by " + LoggerTestRunner.class.getName());
+        }
+        return targetContext;
+    }
+}
@@ -0,0 +1,102 @@
+package com.letsdoit.logger.data.sqlite;
+
+import android.test.AndroidTestCase;
+import android.test.RenamingDelegatingContext;
+
+import com.letsdoit.logger.data.dao.Activity;
+import com.letsdoit.logger.data.dao.ActivityHistoryGenerator;
+import com.letsdoit.logger.data.store.ActivityStore;
+import com.letsdoit.logger.data.store.ActivityStoreWorkload;
+import com.letsdoit.logger.data.store.InMemoryActivityStore;
+import com.letsdoit.logger.data.store.MappedFileActivityStore;
+import com.letsdoit.logger.logging.AppLog;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * Measures the SQLite engine against the memory and memory mapped ones on the same device, with the workload of
+ * ActivityStoreBenchmark.  The results are logged under ADP_ActivityStoreInstrumentationBenchmark.
+ */
+public class ActivityStoreInstrumentationBenchmark extends AndroidTestCase {
+    private static final String TAG = "ADP_ActivityStoreInstrumentationBenchmark";
+    private static final int ITERATIONS = 200;
+
+    static {
+        DateTimeZone.setDefault(DateTimeZone.UTC);
+    }
+
+    private static final DateTime END = new DateTime(2014, 8, 1, 0, 0);
+
+    private RenamingDelegatingContext context;
+    private File directory;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        context = new RenamingDelegatingContext(getContext(), "benchmark_");
+        context.deleteDatabase(LoggerDatabaseHelper.DATABASE_NAME);
+        directory = new File(getContext().getCacheDir(), "ActivityStoreInstrumentationBenchmark");
+        deleteDirectory();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        context.deleteDatabase(LoggerDatabaseHelper.DATABASE_NAME);
+        deleteDirectory();
+        super.tearDown();
+    }
+
+    private void deleteDirectory() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private static ActivityStoreWorkload.Result run(ActivityStoreWorkload workload, String engine,
+                                                    ActivityStore store) {
+        store.open();
+        try {
+            ActivityStoreWorkload.Result result = workload.run(engine, store);
+            AppLog.i(TAG, "%s", result);
+            return result;
+        } finally {
+            store.close();
+        }
+    }
+
+    private void compareEngines(int days) {
+        List<Activity> history = ActivityHistoryGenerator.builder()
+                .seed(42)
+                .range(END.minusDays(days), END)
+                .build()
+                .generate();
+        ActivityStoreWorkload workload = new ActivityStoreWorkload(history, END, ITERATIONS);
+
+        ActivityStoreWorkload.Result sqlite = run(workload, "sqlite",
+                new CompletedActivityFragmentsDAO(new LoggerDatabaseHelper(context)));
+        ActivityStoreWorkload.Result memory = run(workload, "memory", new InMemoryActivityStore());
+        ActivityStoreWorkload.Result mapped = run(workload, "mapped", new MappedFileActivityStore(directory));
+
+        // The engines have to agree on what they read for the timings to be comparable
+        assertEquals(memory.getActivitiesInDay(), sqlite.getActivitiesInDay());
+        assertEquals(memory.getActivitiesInDay(), mapped.getActivitiesInDay());
+        assertEquals(memory.hasActivitiesInHour(), sqlite.hasActivitiesInHour());
+        assertEquals(memory.hasActivitiesInHour(), mapped.hasActivitiesInHour());
+    }
+
+    public void testWeekOfHistory() {
+        compareEngines(7);
+    }
+
+    public void testYearOfHistory() {
+        compareEngines(365);
+    }
+}
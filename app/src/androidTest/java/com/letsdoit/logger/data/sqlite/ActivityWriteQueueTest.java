@@ -0,0 +1,202 @@
+package com.letsdoit.logger.data.sqlite;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+import android.test.RenamingDelegatingContext;
+
+import com.google.common.collect.Lists;
+import com.letsdoit.logger.data.dao.Activity;
+import com.letsdoit.logger.data.dao.ActivityHistoryGenerator;
+import com.letsdoit.logger.data.store.InMemoryActivityStore;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Verify queued writes are committed, grouped and announced.
+ */
+public class ActivityWriteQueueTest extends AndroidTestCase {
+
+    static {
+        DateTimeZone.setDefault(DateTimeZone.UTC);
+    }
+
+    private static final DateTime START = new DateTime(2014, 7, 17, 10, 30, 0, 0);
+
+    private LoggerDatabaseHelper dbHelper;
+    private CompletedActivityFragmentsDAO dao;
+    private ActivityWriteQueue writeQueue;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        RenamingDelegatingContext context = new RenamingDelegatingContext(getContext(), "test_");
+        context.deleteDatabase(LoggerDatabaseHelper.DATABASE_NAME);
+        dbHelper = new LoggerDatabaseHelper(context);
+        dao = new CompletedActivityFragmentsDAO(dbHelper);
+        dao.open();
+        writeQueue = new ActivityWriteQueue(dao);
+        writeQueue.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        writeQueue.shutdown();
+        dao.close();
+        super.tearDown();
+    }
+
+    private List<Activity> history() {
+        return ActivityHistoryGenerator.builder().seed(5).days(START, 30).build().generate();
+    }
+
+    public void testFlushWaitsForCommit() throws InterruptedException {
+        List<Activity> activities = history();
+        for (Activity activity : activities) {
+            writeQueue.add(activity);
+        }
+        writeQueue.flush();
+
+        assertEquals(activities, dao.getActivitiesInRange(START, START.plusDays(30)));
+    }
+
+    public void testListenersHearAboutEveryWrite() throws InterruptedException {
+        List<Activity> activities = history();
+        final AtomicInteger written = new AtomicInteger();
+        final CountDownLatch allWritten = new CountDownLatch(1);
+        final int expected = activities.size();
+        writeQueue.addListener(new ActivityWriteQueue.Listener() {
+            @Override
+            public void onActivitiesWritten(List<Activity> batch) {
+                if (written.addAndGet(batch.size()) == expected) {
+                    allWritten.countDown();
+                }
+            }
+
+            @Override
+            public void onActivitiesFailed(List<Activity> batch) {
+                fail("Nothing should fail: " + batch);
+            }
+        });
+
+        for (Activity activity : activities) {
+            writeQueue.add(activity);
+        }
+        assertTrue(allWritten.await(10, TimeUnit.SECONDS));
+    }
+
+    public void testFlushWithNothingQueued() throws InterruptedException {
+        writeQueue.flush();
+        assertEquals(Lists.newArrayList(), dao.getActivitiesInRange(START, START.plusDays(1)));
+    }
+
+    public void testAddRejectsInvalidActivities() throws InterruptedException {
+        try {
+            writeQueue.add(new Activity("", START, START.plusHours(1)));
+            fail("The name is empty");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        try {
+            writeQueue.add(new Activity("Read", START, START));
+            fail("The activity doesn't end after it starts");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        assertEquals(0, writeQueue.flush());
+        assertEquals(0, writeQueue.getCommittedCount());
+    }
+
+    public void testFailedWriteKeepsTheRestOfTheBatch() throws InterruptedException {
+        // Rejects any batch with a broken activity in it, like a failed transaction
+        InMemoryActivityStore store = new InMemoryActivityStore() {
+            @Override
+            public int addActivities(Collection<Activity> activities) {
+                for (Activity activity : activities) {
+                    if (activity.getActivityName().equals("Broken")) {
+                        throw new IllegalStateException("Can't write " + activity);
+                    }
+                }
+                return super.addActivities(activities);
+            }
+        };
+        ActivityWriteQueue failingQueue = new ActivityWriteQueue(store);
+        final List<Activity> failed = Lists.newArrayList();
+        final CountDownLatch failureHeard = new CountDownLatch(1);
+        failingQueue.addListener(new ActivityWriteQueue.Listener() {
+            @Override
+            public void onActivitiesWritten(List<Activity> activities) {
+            }
+
+            @Override
+            public void onActivitiesFailed(List<Activity> activities) {
+                failed.addAll(activities);
+                failureHeard.countDown();
+            }
+        });
+
+        Activity first = new Activity("Read", START, START.plusHours(1));
+        Activity broken = new Activity("Broken", START.plusHours(1), START.plusHours(2));
+        Activity last = new Activity("Walk", START.plusHours(2), START.plusHours(3));
+        failingQueue.add(first);
+        failingQueue.add(broken);
+        failingQueue.add(last);
+        failingQueue.start();
+        try {
+            assertEquals(1, failingQueue.flush());
+        } finally {
+            failingQueue.shutdown();
+        }
+
+        assertEquals(Lists.newArrayList(first, last), store.getActivitiesInRange(START, START.plusDays(1)));
+        assertEquals(2, failingQueue.getCommittedCount());
+        assertEquals(1, failingQueue.getFailedCount());
+        assertTrue(failureHeard.await(10, TimeUnit.SECONDS));
+        assertEquals(Lists.newArrayList(broken), failed);
+    }
+
+    public void testFailedWriteKeepsTheRestOfTheBatch_Sqlite() throws InterruptedException {
+        Activity first = new Activity("Read", START, START.plusHours(1));
+        Activity broken = new Activity("Broken", START.plusHours(1), START.plusHours(2));
+        Activity last = new Activity("Walk", START.plusHours(2), START.plusHours(3));
+
+        // Fail the broken activity's fragment insert part way through the transaction, after the names of the
+        // activities before it were inserted
+        SQLiteDatabase database = dbHelper.acquireDatabase();
+        try {
+            database.execSQL("create trigger failWrite before insert on " + CompletedActivityTable.TABLE_NAME
+                    + " when new." + CompletedActivityTable.COLUMN_ACTIVITY_START + " = "
+                    + broken.getActivityStart().getMillis() + " begin select raise(abort, 'Failed write'); end");
+        } finally {
+            dbHelper.releaseDatabase();
+        }
+
+        ActivityWriteQueue failingQueue = new ActivityWriteQueue(dao);
+        failingQueue.add(first);
+        failingQueue.add(broken);
+        failingQueue.add(last);
+        failingQueue.start();
+        try {
+            assertEquals(1, failingQueue.flush());
+        } finally {
+            failingQueue.shutdown();
+        }
+        assertEquals(2, failingQueue.getCommittedCount());
+
+        // The activities written one by one after the batch rolled back keep their own names
+        assertEquals(Lists.newArrayList(first, last), dao.getActivitiesInRange(START, START.plusDays(1)));
+        CompletedActivityFragmentsDAO restarted = new CompletedActivityFragmentsDAO(dbHelper);
+        restarted.open();
+        try {
+            assertEquals(Lists.newArrayList(first, last), restarted.getActivitiesInRange(START, START.plusDays(1)));
+        } finally {
+            restarted.close();
+        }
+    }
+}
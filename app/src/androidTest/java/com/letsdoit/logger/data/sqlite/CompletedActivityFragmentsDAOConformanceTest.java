@@ -0,0 +1,27 @@
+package com.letsdoit.logger.data.sqlite;
+
+import android.test.RenamingDelegatingContext;
+
+import com.letsdoit.logger.LoggerTestRunner;
+import com.letsdoit.logger.data.store.ActivityStore;
+import com.letsdoit.logger.data.store.ActivityStoreConformanceTest;
+
+/**
+ * Verify the SQLite engine behaves like every other ActivityStore, against a throwaway database.
+ */
+public class CompletedActivityFragmentsDAOConformanceTest extends ActivityStoreConformanceTest {
+    private RenamingDelegatingContext context;
+
+    @Override
+    protected ActivityStore createStore() throws Exception {
+        context = new RenamingDelegatingContext(LoggerTestRunner.targetContext(), "conformance_");
+        context.deleteDatabase(LoggerDatabaseHelper.DATABASE_NAME);
+        return new CompletedActivityFragmentsDAO(new LoggerDatabaseHelper(context));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        context.deleteDatabase(LoggerDatabaseHelper.DATABASE_NAME);
+    }
+}
@@ -0,0 +1,369 @@
+package com.letsdoit.logger.data.sqlite;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+import android.test.RenamingDelegatingContext;
+
+import com.google.common.collect.Lists;
+import com.letsdoit.logger.data.dao.Activity;
+import com.letsdoit.logger.data.dao.ActivityHistoryGenerator;
+import com.letsdoit.logger.data.dao.ActivityTimeline;
+import com.letsdoit.logger.data.dao.DailyTotal;
+import com.letsdoit.logger.data.store.ActivityChangeListener;
+import com.letsdoit.logger.logging.AppLog;
+import com.letsdoit.logger.metrics.Counter;
+import com.letsdoit.logger.metrics.Metrics;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Duration;
+import org.joda.time.LocalDate;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.joda.time.Period.hours;
+import static org.joda.time.Period.minutes;
+
+/**
+ * Verify reading and writing Activities through the DAO against a throwaway database.
+ */
+public class CompletedActivityFragmentsDAOTest extends AndroidTestCase {
+
+    static {
+        DateTimeZone.setDefault(DateTimeZone.UTC);
+    }
+
+    private static final DateTime START = new DateTime(2014, 7, 17, 10, 30, 0, 0);
+
+    private LoggerDatabaseHelper dbHelper;
+    private CompletedActivityFragmentsDAO dao;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        RenamingDelegatingContext context = new RenamingDelegatingContext(getContext(), "test_");
+        context.deleteDatabase(LoggerDatabaseHelper.DATABASE_NAME);
+        dbHelper = new LoggerDatabaseHelper(context);
+        dao = new CompletedActivityFragmentsDAO(dbHelper);
+        dao.open();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        dao.close();
+        super.tearDown();
+    }
+
+    private String activityName() {
+        return "ActivityName-" + UUID.randomUUID().toString();
+    }
+
+    private long countDailyTotalRows() {
+        try {
+            return DatabaseUtils.queryNumEntries(dbHelper.acquireDatabase(), DailyTotalTable.TABLE_NAME);
+        } finally {
+            dbHelper.releaseDatabase();
+        }
+    }
+
+    /**
+     * Make every fragment insert of an activity that starts at the time fail, part way through the transaction.
+     */
+    private void failWritesStartingAt(DateTime start) {
+        try {
+            dbHelper.acquireDatabase().execSQL("create trigger failWrite before insert on "
+                    + CompletedActivityTable.TABLE_NAME + " when new." + CompletedActivityTable.COLUMN_ACTIVITY_START
+                    + " = " + start.getMillis() + " begin select raise(abort, 'Failed write'); end");
+        } finally {
+            dbHelper.releaseDatabase();
+        }
+    }
+
+    private void stopFailingWrites() {
+        try {
+            dbHelper.acquireDatabase().execSQL("drop trigger failWrite");
+        } finally {
+            dbHelper.releaseDatabase();
+        }
+    }
+
+    public void testAddActivities_Empty() {
+        List<Activity> activities = Lists.newArrayList();
+        assertEquals(0, dao.addActivities(activities));
+    }
+
+    public void testAddActivities_CountsFragmentRows() {
+        List<Activity> activities = Lists.newArrayList(
+                new Activity(activityName(), START, START.plus(minutes(30))),
+                new Activity(activityName(), START.plus(hours(1)), START.plus(hours(3)).plus(minutes(30))),
+                new Activity(activityName(), START.plus(hours(4)), START.plus(hours(5))));
+
+        // 1 + 3 + 1 fragments with a one hour max fragment duration
+        assertEquals(5, dao.addActivities(activities));
+
+        List<Activity> loaded = dao.getActivitiesInRange(START, START.plus(hours(5)));
+        assertEquals(activities, loaded);
+    }
+
+    public void testNamesAreStoredOnceAndShared() {
+        String name = activityName();
+        List<Activity> activities = Lists.newArrayList(
+                new Activity(name, START, START.plus(minutes(30))),
+                new Activity(activityName(), START.plus(minutes(30)), START.plus(minutes(40))),
+                new Activity(new String(name), START.plus(hours(1)), START.plus(hours(2))));
+        dao.addActivities(activities);
+
+        List<Activity> loaded = dao.getActivitiesInRange(START, START.plus(hours(2)));
+        assertEquals(activities, loaded);
+        assertSame(loaded.get(0).getActivityName(), loaded.get(2).getActivityName());
+
+        ActivityTimeline timeline = dao.getTimelineInRange(START, START.plus(hours(2)));
+        assertEquals(3, timeline.size());
+        assertEquals(timeline.getNameId(0), timeline.getNameId(2));
+        assertFalse(timeline.getNameId(0) == timeline.getNameId(1));
+    }
+
+    public void testHasActivitiesInRange() {
+        dao.addActivity(new Activity(activityName(), START, START.plus(hours(2))));
+
+        assertFalse(dao.hasActivitiesInRange(START.minus(hours(1)), START));
+        assertTrue(dao.hasActivitiesInRange(START.plus(minutes(90)), START.plus(hours(3))));
+        assertFalse(dao.hasActivitiesInRange(START.plus(hours(2)), START.plus(hours(3))));
+    }
+
+    public void testAddActivities_GeneratedHistory() {
+        DateTime end = START.plusDays(2 * 365);
+        List<Activity> activities = ActivityHistoryGenerator.builder()
+                .seed(3)
+                .range(START, end)
+                .edgeCaseRate(0.2)
+                .build()
+                .generate();
+        dao.addActivities(activities);
+
+        assertEquals(activities, dao.getActivitiesInRange(START, end));
+        assertEquals(activities, dao.getTimelineInRange(START, end).asActivities());
+    }
+
+    public void testFailedWriteDoesNotCacheItsNewNames() {
+        String name = activityName();
+        failWritesStartingAt(START);
+        try {
+            dao.addActivity(new Activity(name, START, START.plus(hours(1))));
+            fail("The write should have failed");
+        } catch (SQLException e) {
+            // Expected, and the name's row was rolled back with it
+        }
+        stopFailingWrites();
+
+        // The name and the next new one are inserted again rather than reusing the rolled back id
+        String otherName = activityName();
+        Activity activity = new Activity(name, START.plus(hours(1)), START.plus(hours(2)));
+        Activity other = new Activity(otherName, START.plus(hours(2)), START.plus(hours(3)));
+        dao.addActivity(activity);
+        dao.addActivity(other);
+        assertEquals(Lists.newArrayList(activity, other), dao.getActivitiesInRange(START, START.plusDays(1)));
+
+        // As read by a DAO with nothing cached, e.g. after a restart
+        CompletedActivityFragmentsDAO restarted = new CompletedActivityFragmentsDAO(dbHelper);
+        restarted.open();
+        try {
+            assertEquals(Lists.newArrayList(activity, other),
+                    restarted.getActivitiesInRange(START, START.plusDays(1)));
+        } finally {
+            restarted.close();
+        }
+    }
+
+    public void testDeleteActivity() {
+        String name = activityName();
+        Activity kept = new Activity(name, START, START.plus(minutes(20)));
+        Activity deleted = new Activity(name, START.plus(minutes(20)), START.plus(hours(3)));
+        dao.addActivities(Lists.newArrayList(kept, deleted));
+
+        assertFalse(dao.deleteActivity(new Activity(activityName(), START, START.plus(minutes(20)))));
+        assertTrue(dao.deleteActivity(deleted));
+        assertFalse(dao.deleteActivity(deleted));
+
+        // Every fragment of the deleted activity is gone
+        assertEquals(Lists.newArrayList(kept), dao.getActivitiesInRange(START, START.plusDays(1)));
+        assertFalse(dao.hasActivitiesInRange(START.plus(hours(1)), START.plus(hours(2))));
+    }
+
+    public void testDailyTotals() {
+        String sleep = activityName();
+        String read = activityName();
+        DateTime midnight = START.toDateMidnight().toDateTime();
+        LocalDate day = new LocalDate(midnight);
+        Activity night = new Activity(sleep, midnight.minus(hours(2)), midnight.plus(hours(7)));
+        dao.addActivities(Lists.newArrayList(night,
+                new Activity(read, midnight.plus(hours(8)), midnight.plus(hours(9))),
+                new Activity(read, midnight.plus(hours(20)), midnight.plus(hours(21)).plus(minutes(30)))));
+
+        // Sorted by day, then by name id, and sleep was written first
+        assertEquals(Lists.newArrayList(
+                        new DailyTotal(day.minusDays(1), sleep, Duration.standardHours(2)),
+                        new DailyTotal(day, sleep, Duration.standardHours(7)),
+                        new DailyTotal(day, read, Duration.standardMinutes(150))),
+                dao.getDailyTotals(day.minusDays(1), day));
+
+        assertEquals(Duration.standardMinutes(150), dao.getTotalsByName(day, day).get(read));
+        assertEquals(Duration.standardHours(9), dao.getTotalsByName(day.minusDays(1), day).get(sleep));
+
+        // Deleting takes the time back out, and drops the days left empty
+        assertTrue(dao.deleteActivity(night));
+        assertFalse(dao.getTotalsByName(day.minusDays(1), day).containsKey(sleep));
+        assertTrue(dao.getDailyTotals(day.minusDays(1), day.minusDays(1)).isEmpty());
+    }
+
+    public void testDailyTotals_DeleteSeveralDays() {
+        String hike = activityName();
+        DateTime midnight = START.toDateMidnight().toDateTime();
+        LocalDate day = new LocalDate(midnight);
+        Activity activity = new Activity(hike, midnight.minus(hours(1)), midnight.plusDays(2).plus(hours(1)));
+        dao.addActivities(Lists.newArrayList(activity));
+        assertEquals(4, dao.getDailyTotals(day.minusDays(1), day.plusDays(2)).size());
+
+        // No zero rows are left behind on the days in the middle either
+        assertTrue(dao.deleteActivity(activity));
+        assertEquals(0, countDailyTotalRows());
+    }
+
+    public void testDailyTotals_DeleteAfterZoneChange() {
+        String sleep = activityName();
+        DateTime midnight = START.toDateMidnight().toDateTime();
+        LocalDate day = new LocalDate(midnight);
+        Activity night = new Activity(sleep, midnight.minus(hours(2)), midnight.plus(hours(7)));
+        dao.addActivities(Lists.newArrayList(night));
+
+        // The user flies to Tokyo, where the whole night falls on one day, and the app is restarted
+        DateTimeZone.setDefault(DateTimeZone.forID("Asia/Tokyo"));
+        CompletedActivityFragmentsDAO travelled = new CompletedActivityFragmentsDAO(dbHelper);
+        travelled.open();
+        try {
+            assertEquals(Lists.newArrayList(
+                            new DailyTotal(day.minusDays(1), sleep, Duration.standardHours(2)),
+                            new DailyTotal(day, sleep, Duration.standardHours(7))),
+                    travelled.getDailyTotals(day.minusDays(1), day));
+
+            // The time comes out of the rows it went into, leaving nothing negative or empty behind
+            assertTrue(travelled.deleteActivity(night));
+            assertEquals(0, countDailyTotalRows());
+        } finally {
+            travelled.close();
+            DateTimeZone.setDefault(DateTimeZone.UTC);
+        }
+    }
+
+    public void testRangeQueryUsesCoveringIndex() {
+        SQLiteDatabase database = dbHelper.acquireDatabase();
+        String[] args = {"0", "0", "0", "0"};
+        Cursor plan = database.rawQuery("explain query plan " + CompletedActivityTable.SQL_SELECT_ACTIVITIES_IN_RANGE,
+                args);
+        try {
+            assertTrue(plan.moveToFirst());
+            String detail = plan.getString(plan.getColumnIndexOrThrow("detail"));
+            assertTrue(detail, detail.contains("COVERING INDEX " + CompletedActivityTable.TABLE_INDEX_NAME));
+            // Rows come out in index order, so there's no sort step
+            assertFalse(plan.moveToNext());
+        } finally {
+            plan.close();
+            dbHelper.releaseDatabase();
+        }
+    }
+
+    /**
+     * Compare the rows the range query returns with the fragment rows the index range covers, which is what the
+     * query used to fetch and filter in Java.
+     */
+    public void testRangeQueryReturnsOneRowPerActivity() {
+        DateTime end = START.plusDays(30);
+        List<Activity> activities = ActivityHistoryGenerator.builder()
+                .seed(7)
+                .range(START, end)
+                .edgeCaseRate(0.2)
+                .build()
+                .generate();
+        dao.addActivities(activities);
+
+        Counter rowsRead = Metrics.counter("CompletedActivityFragmentsDAO.rowsRead");
+        SQLiteDatabase database = dbHelper.acquireDatabase();
+        long scanned = 0;
+        long returned = 0;
+        try {
+            for (DateTime hour = START; hour.isBefore(end); hour = hour.plus(hours(4))) {
+                DateTime hourEnd = hour.plus(hours(4));
+                String[] args = {Long.toString(hour.minus(hours(1)).getMillis()), Long.toString(hourEnd.getMillis())};
+                scanned += DatabaseUtils.longForQuery(database, "select count(*) from "
+                        + CompletedActivityTable.TABLE_NAME + " where "
+                        + CompletedActivityTable.COLUMN_FRAGMENT_START + " >= ? and "
+                        + CompletedActivityTable.COLUMN_FRAGMENT_START + " < ?", args);
+
+                long rowsBefore = rowsRead.getCount();
+                List<Activity> loaded = dao.getActivitiesInRange(hour, hourEnd);
+                assertEquals(loaded.size(), rowsRead.getCount() - rowsBefore);
+                returned += loaded.size();
+            }
+        } finally {
+            dbHelper.releaseDatabase();
+        }
+        AppLog.i("ADP_CompletedActivityFragmentsDAOTest", "Fragment rows in the scanned range: %s, rows returned: %s",
+                scanned, returned);
+        assertTrue(returned < scanned);
+    }
+
+    public void testWriteAheadLogging() {
+        assertTrue(dbHelper.acquireDatabase().isWriteAheadLoggingEnabled());
+        dbHelper.releaseDatabase();
+    }
+
+    public void testSharedDatabaseIsReferenceCounted() {
+        CompletedActivityFragmentsDAO other = new CompletedActivityFragmentsDAO(dbHelper);
+        other.open();
+        other.addActivity(new Activity(activityName(), START, START.plus(hours(1))));
+        other.close();
+
+        // Still open for the DAO opened in setUp, and it sees the other DAO's writes
+        assertTrue(dao.hasActivitiesInRange(START, START.plus(hours(1))));
+    }
+
+    public void testReleaseMoreThanAcquiredFails() {
+        dao.close();
+        try {
+            dbHelper.releaseDatabase();
+            fail("Expected an IllegalStateException");
+        } catch (IllegalStateException e) {
+            // Expected
+        } finally {
+            dao.open();
+        }
+    }
+
+    public void testChangeListenersGetTheWrittenRange() {
+        final List<DateTime> changes = Lists.newArrayList();
+        ActivityChangeListener listener = new ActivityChangeListener() {
+            @Override
+            public void onActivitiesChanged(DateTime start, DateTime end) {
+                changes.add(start);
+                changes.add(end);
+            }
+        };
+
+        // Writes through any DAO on the database are announced
+        CompletedActivityFragmentsDAO other = new CompletedActivityFragmentsDAO(dbHelper);
+        other.open();
+        dao.addChangeListener(listener);
+        other.addActivities(Lists.newArrayList(
+                new Activity(activityName(), START.plus(hours(1)), START.plus(hours(2))),
+                new Activity(activityName(), START, START.plus(minutes(30)))));
+        dao.removeChangeListener(listener);
+        other.addActivity(new Activity(activityName(), START.plus(hours(3)), START.plus(hours(4))));
+        other.close();
+
+        assertEquals(Lists.newArrayList(START, START.plus(hours(2))), changes);
+    }
+}
@@ -22,7 +22,20 @@ public class EmptyIntervalTest extends AndroidTestCase {
     private DateTime time = new DateTime(2014, 7, 17, 10, 30, 0, 0);
 
     public void testGetNextPartition() {
+        assertEquals(time.plus(minutes(5)), EmptyInterval.getNextPartition(time, time, minutes(5).toStandardDuration()));
+        assertEquals(time.plus(minutes(10)),
+                EmptyInterval.getNextPartition(time, time.plus(minutes(7)), minutes(5).toStandardDuration()));
+        assertEquals(time.plusDays(365).plus(minutes(5)),
+                EmptyInterval.getNextPartition(time, time.plusDays(365), minutes(5).toStandardDuration()));
+    }
 
+    public void testZeroSpacing() {
+        try {
+            EmptyInterval.makeEmptyBlocks(time, time, time.plus(minutes(5)), minutes(0).toStandardDuration());
+            fail("The spacing can't be zero");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
     }
 
     /**
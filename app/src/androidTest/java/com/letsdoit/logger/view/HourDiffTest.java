@@ -0,0 +1,81 @@
+package com.letsdoit.logger.view;
+
+import android.test.AndroidTestCase;
+
+import com.letsdoit.logger.data.dao.Activity;
+import com.letsdoit.logger.data.dao.ActivityNames;
+import com.letsdoit.logger.data.dao.ActivityTimeline;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+import static org.joda.time.Period.hours;
+import static org.joda.time.Period.minutes;
+
+/**
+ * Verify that hours are matched by id across models, and only changed hours are marked for binding.
+ */
+public class HourDiffTest extends AndroidTestCase {
+    static {
+        DateTimeZone.setDefault(DateTimeZone.UTC);
+    }
+
+    private DateTime start = new DateTime(2014, 7, 17, 10, 0, 0, 0);
+
+    private ActivityTimeline activities(Activity... activities) {
+        ActivityTimeline timeline = new ActivityTimeline(new ActivityNames());
+        for (Activity activity : activities) {
+            timeline.append(activity);
+        }
+        return timeline;
+    }
+
+    public void testCompute_WindowMovedBack() {
+        RenderCache renderCache = TimelineModel.newRenderCache(100);
+        ActivityTimeline activities = activities(new Activity("Work", start.plus(hours(1)), start.plus(hours(2))));
+        TimelineModel shown = TimelineModel.build(activities, start, start.plus(hours(8)), renderCache);
+        TimelineModel moved = TimelineModel.build(activities, start.minus(hours(4)), start.plus(hours(4)), renderCache)
+                .diffAgainst(shown);
+
+        assertTrue(moved.isDiffedAgainst(shown));
+        HourDiff diff = moved.getDiff();
+        assertFalse(diff.keepsPositions());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(i + 4, diff.getNewPosition(i));
+            assertEquals(shown.getHours().get(i).getId(), moved.getHours().get(i + 4).getId());
+        }
+        for (int i = 4; i < 8; i++) {
+            assertEquals(-1, diff.getNewPosition(i));
+        }
+
+        // Only the hours that weren't shown before have to be bound
+        assertEquals(4, diff.getChangedCount());
+        for (int i = 0; i < 8; i++) {
+            assertEquals(i < 4, diff.isChanged(i));
+        }
+    }
+
+    public void testCompute_ChangedContent() {
+        RenderCache renderCache = TimelineModel.newRenderCache(100);
+        TimelineModel shown = TimelineModel.build(
+                activities(new Activity("Work", start.plus(hours(1)), start.plus(hours(2)))),
+                start, start.plus(hours(4)), renderCache);
+        TimelineModel reloaded = TimelineModel.build(
+                activities(new Activity("Work", start.plus(hours(1)), start.plus(hours(2))),
+                        new Activity("Walk", start.plus(minutes(150)), start.plus(minutes(170)))),
+                start, start.plus(hours(4)), renderCache)
+                .diffAgainst(shown);
+
+        HourDiff diff = reloaded.getDiff();
+        assertTrue(diff.keepsPositions());
+        assertEquals(1, diff.getChangedCount());
+        assertTrue(diff.isChanged(2));
+    }
+
+    public void testCompute_NotDiffed() {
+        TimelineModel model = TimelineModel.build(activities(), start, start.plus(hours(2)));
+        assertNull(model.getDiff());
+        assertFalse(model.isDiffedAgainst(null));
+        assertFalse(model.isDiffedAgainst(model));
+    }
+}
@@ -1,7 +0,0 @@
-package com.letsdoit.logger.view;
-
-/**
- * Created by Andrey on 8/8/2015.
- */
-public class IntervalRendererTest {
-}
@@ -0,0 +1,112 @@
+package com.letsdoit.logger.view;
+
+import android.test.AndroidTestCase;
+
+import com.letsdoit.logger.data.dao.Activity;
+import com.letsdoit.logger.data.dao.ActivityNames;
+import com.letsdoit.logger.data.dao.ActivityTimeline;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+import java.util.List;
+
+import static org.joda.time.Period.hours;
+import static org.joda.time.Period.minutes;
+
+/**
+ * Verify that the model handed to the adapter is partitioned into hours and rendered.
+ */
+public class TimelineModelTest extends AndroidTestCase {
+    static {
+        DateTimeZone.setDefault(DateTimeZone.UTC);
+    }
+
+    private DateTime start = new DateTime(2014, 7, 17, 10, 0, 0, 0);
+
+    public void testBuild_RoundsToHoursAndRenders() {
+        ActivityTimeline activities = new ActivityTimeline(new ActivityNames());
+        activities.append(new Activity("Work", start.plus(minutes(20)), start.plus(minutes(50))));
+
+        TimelineModel model = TimelineModel.build(activities, start.plus(minutes(10)), start.plus(hours(3)));
+
+        assertEquals(start, model.getStart());
+        assertEquals(start.plus(hours(3)), model.getEnd());
+
+        List<Hour> hours = model.getHours();
+        assertEquals(3, hours.size());
+
+        Hour first = hours.get(0);
+        assertEquals(start, first.getFirstHalfHour().getStart());
+        assertEquals(start.plus(minutes(30)), first.getSecondHalfHour().getStart());
+
+        List<RenderBlock> expected = IntervalRenderer.render(first.getFirstHalfHour(),
+                TimelineModel.MIN_BLOCK_DURATION, TimelineModel.FREE_TIME_PARTITION_DURATION);
+        assertEquals(expected.size(), first.getFirstHalfHourBlocks().size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getBlockStart(), first.getFirstHalfHourBlocks().get(i).getBlockStart());
+            assertEquals(expected.get(i).getBlockEnd(), first.getFirstHalfHourBlocks().get(i).getBlockEnd());
+            assertEquals(expected.get(i).getFragments(), first.getFirstHalfHourBlocks().get(i).getFragments());
+        }
+
+        assertTrue(hours.get(1).getFirstHalfHourBlocks().get(0).getFragments().isEmpty());
+    }
+
+    public void testUpdate_OnlyRendersTheChangedHours() {
+        ActivityTimeline activities = new ActivityTimeline(new ActivityNames());
+        activities.append(new Activity("Work", start.plus(minutes(20)), start.plus(minutes(50))));
+        RenderCache renderCache = TimelineModel.newRenderCache(0);
+        TimelineModel model = TimelineModel.build(activities, start, start.plus(hours(6)), renderCache);
+
+        // Log an activity in the third and fourth hours
+        ActivityTimeline written = new ActivityTimeline(new ActivityNames());
+        written.append(new Activity("Work", start.plus(minutes(20)), start.plus(minutes(50))));
+        written.append(new Activity("Walk", start.plus(minutes(150)), start.plus(minutes(200))));
+        TimelineModel updated = model.update(written, start.plus(hours(2)), start.plus(hours(4)), renderCache);
+
+        assertTrue(updated.isDiffedAgainst(model));
+        assertFalse(model.isDiffedAgainst(updated));
+        HourDiff diff = updated.getDiff();
+        assertTrue(diff.keepsPositions());
+        assertEquals(2, diff.getChangedCount());
+        assertTrue(diff.isChanged(2));
+        assertTrue(diff.isChanged(3));
+        assertEquals(model.getStart(), updated.getStart());
+        assertEquals(model.getEnd(), updated.getEnd());
+        assertSame(written, updated.getActivities());
+
+        List<Hour> before = model.getHours();
+        List<Hour> after = updated.getHours();
+        assertEquals(before.size(), after.size());
+        for (int i = 0; i < after.size(); i++) {
+            if (i < 2 || i >= 4) {
+                assertSame(before.get(i), after.get(i));
+            }
+        }
+
+        // The updated hours are the same as a model built from scratch
+        List<Hour> rebuilt = TimelineModel.build(written, start, start.plus(hours(6))).getHours();
+        for (int i = 2; i < 4; i++) {
+            assertEquals(rebuilt.get(i).getFirstHalfHour().toString(), after.get(i).getFirstHalfHour().toString());
+            assertEquals(rebuilt.get(i).getSecondHalfHour().toString(), after.get(i).getSecondHalfHour().toString());
+            assertEquals(rebuilt.get(i).getFirstHalfHourBlocks().size(), after.get(i).getFirstHalfHourBlocks().size());
+            assertEquals(rebuilt.get(i).getSecondHalfHourBlocks().size(),
+                    after.get(i).getSecondHalfHourBlocks().size());
+        }
+        assertEquals("Walk", after.get(2).getSecondHalfHour().getFragments().get(0).getActivityName());
+    }
+
+    public void testUpdate_OutsideTheRange() {
+        ActivityTimeline activities = new ActivityTimeline(new ActivityNames());
+        TimelineModel model = TimelineModel.build(activities, start, start.plus(hours(3)));
+
+        TimelineModel updated = model.update(activities, start.plus(hours(5)), start.plus(hours(6)),
+                TimelineModel.newRenderCache(0));
+        assertEquals(0, updated.getDiff().getChangedCount());
+        assertEquals(model.getHours(), updated.getHours());
+
+        updated = model.update(activities, start.minus(hours(2)), start.minus(hours(1)),
+                TimelineModel.newRenderCache(0));
+        assertEquals(0, updated.getDiff().getChangedCount());
+    }
+}
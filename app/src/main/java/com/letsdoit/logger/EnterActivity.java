@@ -13,7 +13,7 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.letsdoit.logger.data.dao.Activity;
 import com.letsdoit.logger.data.dao.ActivityInterval;
-import com.letsdoit.logger.data.sqlite.CompletedActivityFragmentsDAO;
+import com.letsdoit.logger.data.sqlite.ActivityWriteQueue;
 import com.letsdoit.logger.view.RenderBlock;
 
 import org.joda.time.format.DateTimeFormat;
@@ -26,14 +26,14 @@ public class EnterActivity extends android.app.Activity {
     private RenderBlock start;
     private RenderBlock end;
 
-    private CompletedActivityFragmentsDAO dao;
+    private ActivityWriteQueue writeQueue;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_enter);
 
-        dao = new CompletedActivityFragmentsDAO(this);
+        writeQueue = ActivityWriteQueue.getInstance(this);
 
         Intent intent = getIntent();
         start = GSON.fromJson(intent.getStringExtra(Main.START_BLOCK), RenderBlock.class);
@@ -67,11 +67,15 @@ public class EnterActivity extends android.app.Activity {
 
     public void onLogActivity(View view) {
         AutoCompleteTextView activityNameView = (AutoCompleteTextView) findViewById(R.id.activityNameEntry);
-        String activityName = activityNameView.getText().toString();
-        dao.open();
+        String activityName = activityNameView.getText().toString().trim();
+        if (activityName.isEmpty()) {
+            // The store rejects Activities without a name, stay on the screen so it can be fixed
+            activityNameView.setError(getString(R.string.error_empty_activity_name));
+            return;
+        }
         Activity activity = new Activity(activityName, start.getBlockStart(), end.getBlockEnd());
-        dao.addActivity(activity);
-        dao.close();
+        // Written in the background, the loader reloads once it's committed
+        writeQueue.add(activity);
         finish();
     }
 }
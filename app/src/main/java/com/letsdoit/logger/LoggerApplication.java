@@ -0,0 +1,55 @@
+package com.letsdoit.logger;
+
+import android.app.Application;
+import android.widget.Toast;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
+import com.letsdoit.logger.data.dao.Activity;
+import com.letsdoit.logger.data.sqlite.ActivityWriteQueue;
+import com.letsdoit.logger.logging.AndroidLogSink;
+import com.letsdoit.logger.logging.AppLog;
+import com.letsdoit.logger.metrics.Metrics;
+import com.letsdoit.logger.metrics.SystraceTracer;
+
+import java.util.List;
+
+/**
+ * Installs the Android implementations of the logging and tracing facades before any Activity, Loader or DAO runs.
+ *
+ * Also listens to the write queue for the lifetime of the process, so an Activity that fails to be written is reported
+ * even though the screen it was entered on has already closed.
+ */
+public class LoggerApplication extends Application {
+    private static final String TAG = "ADP_LoggerApplication";
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        AppLog.setSink(new AndroidLogSink());
+        // Debug messages are only built and written in debug builds
+        AppLog.setLevel(BuildConfig.DEBUG ? AppLog.DEBUG : AppLog.INFO);
+        Metrics.setTracer(new SystraceTracer());
+
+        ActivityWriteQueue.getInstance(this).addListener(new ActivityWriteQueue.Listener() {
+            @Override
+            public void onActivitiesWritten(List<Activity> activities) {
+            }
+
+            @Override
+            public void onActivitiesFailed(List<Activity> activities) {
+                reportLostActivities(activities);
+            }
+        });
+    }
+
+    private void reportLostActivities(List<Activity> activities) {
+        AppLog.e(TAG, "Lost %s activities: %s", activities.size(), activities);
+        List<String> names = Lists.newArrayListWithCapacity(activities.size());
+        for (Activity activity : activities) {
+            names.add(activity.getActivityName());
+        }
+        Toast.makeText(this, getString(R.string.error_activities_not_saved, Joiner.on(", ").join(names)),
+                Toast.LENGTH_LONG).show();
+    }
+}
@@ -4,8 +4,8 @@ import android.app.AlertDialog;
 import android.app.LoaderManager;
 import android.content.Intent;
 import android.content.Loader;
+import android.os.AsyncTask;
 import android.os.Bundle;
-import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
@@ -15,20 +15,22 @@ import android.widget.ListView;
 import com.fatboyindustrial.gsonjodatime.Converters;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import com.letsdoit.logger.data.dao.Activity;
+import com.letsdoit.logger.data.ActivityStores;
 import com.letsdoit.logger.data.dao.ActivityFragment;
 import com.letsdoit.logger.data.dao.ActivityInterval;
-import com.letsdoit.logger.data.sqlite.CompletedActivityFragmentsDAO;
+import com.letsdoit.logger.data.store.ActivityStore;
 import com.letsdoit.logger.loader.CompletedActivityFragmentLoader;
+import com.letsdoit.logger.logging.AppLog;
+import com.letsdoit.logger.metrics.Metrics;
+import com.letsdoit.logger.view.HalfHourView;
 import com.letsdoit.logger.view.HourAdapter;
 import com.letsdoit.logger.view.RenderBlock;
+import com.letsdoit.logger.view.TimelineModel;
 
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.joda.time.Duration;
 
-import java.util.Collections;
-import java.util.List;
 import java.util.TimeZone;
 
 import static org.joda.time.Period.days;
@@ -36,8 +38,9 @@ import static org.joda.time.Period.hours;
 
 
 public class Main extends android.app.Activity
-        implements LoaderManager.LoaderCallbacks<List<Activity>>,
-        AbsListView.OnScrollListener {
+        implements LoaderManager.LoaderCallbacks<TimelineModel>,
+        AbsListView.OnScrollListener,
+        HalfHourView.OnBlockClickListener {
     public static final String START_BLOCK = "StartBlock";
     public static final String END_BLOCK = "EndBlock";
 
@@ -48,7 +51,7 @@ public class Main extends android.app.Activity
 
     private static final Gson GSON = Converters.registerDateTime(new GsonBuilder()).create();
 
-    private CompletedActivityFragmentsDAO dao;
+    private ActivityStore store;
 
     private DateTime start;
     private DateTime end;
@@ -59,9 +62,11 @@ public class Main extends android.app.Activity
     private ListView listView;
     private HourAdapter adapter;
 
-    private View cachedStartBlock = null;
     private RenderBlock cachedStartInterval = null;
-    private boolean isMaxWindowSize = false;
+    private boolean isCheckingSelection = false;
+
+    // The last model delivered by the loader.  Answers overlap checks for selections inside the loaded range.
+    private TimelineModel timelineModel;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -70,8 +75,9 @@ public class Main extends android.app.Activity
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
         
-        this.dao = new CompletedActivityFragmentsDAO(this);
-        this.adapter = new HourAdapter(this);
+        // Not opened here, opening may upgrade the database.  Only background tasks and the loader open it.
+        this.store = ActivityStores.getInstance(this);
+        this.adapter = new HourAdapter(this, this);
 
         listView = (ListView) findViewById(R.id.listView);
         listView.setAdapter(this.adapter);
@@ -83,14 +89,14 @@ public class Main extends android.app.Activity
 
         getLoaderManager().initLoader(LOADER_ID, null, this);
 
-        Log.d(TAG, "onCreate completed");
+        AppLog.d(TAG, "onCreate completed");
     }
 
     @Override
-    public Loader<List<Activity>> onCreateLoader(int id, Bundle args) {
-        Log.d(TAG, "creating loader");
+    public Loader<TimelineModel> onCreateLoader(int id, Bundle args) {
+        AppLog.d(TAG, "creating loader");
 
-        CompletedActivityFragmentLoader loader = new CompletedActivityFragmentLoader(this, dao);
+        CompletedActivityFragmentLoader loader = new CompletedActivityFragmentLoader(this, store);
 
         loader.setStart(start);
         loader.setEnd(end);
@@ -100,47 +106,27 @@ public class Main extends android.app.Activity
 
     // Update the adapter with the loaded data
     @Override
-    public void onLoadFinished(Loader<List<Activity>> loader, List<Activity> data) {
-        CompletedActivityFragmentLoader fragmentLoader = (CompletedActivityFragmentLoader) loader;
-
-        adapter.setData(data, start, end);
-        adapter.notifyDataSetChanged();
-
-        int listViewPosition = DEFAULT_HOURS_TO_LOAD - 3;
-        int pixelsFromTop = 0;
-
-        if (listView.getSelectedView() != null) {
-            listViewPosition = listView.getSelectedItemPosition();
-            pixelsFromTop = listView.getSelectedView().getTop();
+    public void onLoadFinished(Loader<TimelineModel> loader, TimelineModel data) {
+        timelineModel = data;
+        if (!adapter.setData(data, listView)) {
+            // Nothing was showing yet, start a few hours before now
+            int nowPosition = adapter.getPosition(DateTime.now());
+            int listViewPosition = nowPosition < 0 ? DEFAULT_HOURS_TO_LOAD - 3 : Math.max(0, nowPosition - 3);
+            listView.setSelectionFromTop(listViewPosition, 0);
         }
 
-        if (loadedAtStart) {
-            listViewPosition += DEFAULT_HOURS_TO_LOAD - 1;
-        } else if (loadedAtEnd) {
-            listViewPosition -= DEFAULT_HOURS_TO_LOAD;
-            if (isMaxWindowSize) {
-                listViewPosition -= DEFAULT_HOURS_TO_LOAD;
-            }
-        }
-
-        listView.setSelectionFromTop(listViewPosition, pixelsFromTop);
-
         loadedAtStart = false;
         loadedAtEnd = false;
 
-        Log.d(TAG, "onLoadFinished completed");
-    }
-
-    @Override
-    protected void onResume() {
-        super.onResume();
-        getLoaderManager().getLoader(LOADER_ID).forceLoad();
+        AppLog.d(TAG, "onLoadFinished completed");
     }
 
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         // Inflate the menu; this adds items to the action bar if it is present.
         getMenuInflater().inflate(R.menu.main, menu);
+        // The metrics dump is only for debugging load and scroll performance
+        menu.findItem(R.id.action_metrics).setVisible(BuildConfig.DEBUG);
         return true;
     }
 
@@ -152,13 +138,17 @@ public class Main extends android.app.Activity
         int id = item.getItemId();
         if (id == R.id.action_settings) {
             return true;
+        } else if (id == R.id.action_metrics) {
+            String metrics = Metrics.dump();
+            AppLog.i(TAG, "Metrics:\n%s", metrics);
+            new AlertDialog.Builder(this).setMessage(metrics).create().show();
+            return true;
         }
         return super.onOptionsItemSelected(item);
     }
 
-    public void onTimeEntryButtonClick(View view) {
-        RenderBlock block = (RenderBlock) view.getTag(R.id.display_block_key);
-
+    @Override
+    public void onBlockClick(HalfHourView view, RenderBlock block) {
         // Don't allow selections in the future
         if (block.getBlockEnd().isAfter(DateTime.now())) {
             return;
@@ -167,54 +157,94 @@ public class Main extends android.app.Activity
         if (cachedStartInterval == null) {
             // Save the clicked empty block as the start of the selection
             if (block.getFragments().isEmpty()) {
-                cachedStartBlock = view;
                 cachedStartInterval = block;
-                view.setAlpha((float) 0.25);
+                adapter.setSelectedBlock(block);
             } else {
                 String message = ActivityFragment.stringify(block.getFragments(), block.getBlockStart(), block.getBlockEnd());
                 new AlertDialog.Builder(this).setMessage(message).create().show();
             }
-        } else {
-            dao.open();
-            List<Activity> activitiesInInterval = dao.getActivitiesInRange(
-                    cachedStartInterval.getBlockStart(),
-                    block.getBlockEnd());
-            dao.close();
-            Log.d(TAG, String.format("Num activities in selection: %s", activitiesInInterval.size()));
-
-            // Don't create activity if it overlaps with another activity
-            if (activitiesInInterval.isEmpty()) {
-                // Clear the start selection
-                RenderBlock startBlock = cachedStartInterval;
-                cachedStartBlock.setAlpha(1);
-                cachedStartInterval = null;
-                cachedStartBlock = null;
-
-                if (block.getFragments().isEmpty()) {
-                    // Make sure that the selected block is after
-                    if (block.getBlockEnd().isAfter(startBlock.getBlockStart())) {
-                        Intent intent = new Intent(this, EnterActivity.class);
-
-                        intent.putExtra(START_BLOCK, GSON.toJson(startBlock));
-                        intent.putExtra(END_BLOCK, GSON.toJson(block));
-                        startActivity(intent);
-                    }
-                } else {
-                    String message = ActivityFragment.stringify(block.getFragments(), block.getBlockStart(), block.getBlockEnd());
-                    new AlertDialog.Builder(this).setMessage(message).create().show();
+        } else if (!isCheckingSelection) {
+            DateTime selectionStart = cachedStartInterval.getBlockStart();
+            DateTime selectionEnd = block.getBlockEnd();
+
+            if (timelineModel != null && timelineModel.isLoaded(selectionStart, selectionEnd)) {
+                finishSelection(block, timelineModel.hasActivitiesBetween(selectionStart, selectionEnd));
+            } else {
+                // The selection reaches outside of the loaded data, so ask the database without blocking the UI
+                isCheckingSelection = true;
+                new SelectionOverlapCheck(block).execute(selectionStart, selectionEnd);
+            }
+        }
+    }
+
+    /**
+     * End the selection that started at cachedStartInterval.
+     *
+     * @param block the block the selection ends on
+     * @param overlapsActivities whether any Activity overlaps the selection
+     */
+    private void finishSelection(RenderBlock block, boolean overlapsActivities) {
+        AppLog.d(TAG, "Selection overlaps activities: %s", overlapsActivities);
+
+        // Don't create activity if it overlaps with another activity
+        if (!overlapsActivities) {
+            // Clear the start selection
+            RenderBlock startBlock = cachedStartInterval;
+            cachedStartInterval = null;
+            adapter.setSelectedBlock(null);
+
+            if (block.getFragments().isEmpty()) {
+                // Make sure that the selected block is after
+                if (block.getBlockEnd().isAfter(startBlock.getBlockStart())) {
+                    Intent intent = new Intent(this, EnterActivity.class);
+
+                    intent.putExtra(START_BLOCK, GSON.toJson(startBlock));
+                    intent.putExtra(END_BLOCK, GSON.toJson(block));
+                    startActivity(intent);
                 }
+            } else {
+                String message = ActivityFragment.stringify(block.getFragments(), block.getBlockStart(), block.getBlockEnd());
+                new AlertDialog.Builder(this).setMessage(message).create().show();
+            }
+        }
+    }
+
+    /**
+     * Checks whether a selection overlaps any Activity in the database, off of the UI thread.
+     */
+    private class SelectionOverlapCheck extends AsyncTask<DateTime, Void, Boolean> {
+        private final RenderBlock block;
+
+        private SelectionOverlapCheck(RenderBlock block) {
+            this.block = block;
+        }
+
+        @Override
+        protected Boolean doInBackground(DateTime... selection) {
+            // Opened here rather than on the UI thread.  It's only a reference count while the loader holds the store.
+            store.open();
+            try {
+                return store.hasActivitiesInRange(selection[0], selection[1]);
+            } finally {
+                store.close();
+            }
+        }
+
+        @Override
+        protected void onPostExecute(Boolean overlapsActivities) {
+            isCheckingSelection = false;
+            if (cachedStartInterval != null) {
+                finishSelection(block, overlapsActivities);
             }
         }
     }
 
     // Clear out the loader
     @Override
-    public void onLoaderReset(Loader<List<Activity>> loader) {
-        DateTime now = new DateTime();
-        List<Activity> empty = Collections.emptyList();
-        adapter.setData(empty, now, now);
-        adapter.notifyDataSetChanged();
-        Log.d(TAG, "onLoaderReset completed");
+    public void onLoaderReset(Loader<TimelineModel> loader) {
+        timelineModel = null;
+        adapter.clear();
+        AppLog.d(TAG, "onLoaderReset completed");
     }
 
     @Override
@@ -235,7 +265,7 @@ public class Main extends android.app.Activity
         if (closeToStart || closeToEnd) {
 
             CompletedActivityFragmentLoader loader = (CompletedActivityFragmentLoader)
-                    getLoaderManager().<List<Activity>>getLoader(LOADER_ID);
+                    getLoaderManager().<TimelineModel>getLoader(LOADER_ID);
 
             if (loader == null) {
                 return;
@@ -246,7 +276,6 @@ public class Main extends android.app.Activity
                 DateTime maxEnd = start.plus(MAX_SCROLL_WINDOW_SIZE);
                 if (maxEnd.isBefore(end)) {
                     end = maxEnd;
-                    isMaxWindowSize = true;
                 }
                 loadedAtStart = true;
             }
@@ -256,14 +285,13 @@ public class Main extends android.app.Activity
                 DateTime minStart = end.minus(MAX_SCROLL_WINDOW_SIZE);
                 if (minStart.isAfter(start)) {
                     start = minStart;
-                    isMaxWindowSize = true;
                 }
                 loadedAtEnd = true;
             }
 
-            Log.d(TAG, "Setting loader start and end ");
-            Log.d(TAG, "start: " + start);
-            Log.d(TAG, "end:   " + end);
+            AppLog.d(TAG, "Setting loader start and end ");
+            AppLog.d(TAG, "start: %s", start);
+            AppLog.d(TAG, "end:   %s", end);
 
             loader.setStart(start);
             loader.setEnd(end);
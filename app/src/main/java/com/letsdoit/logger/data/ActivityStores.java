@@ -0,0 +1,38 @@
+package com.letsdoit.logger.data;
+
+import android.content.Context;
+
+import com.letsdoit.logger.data.importer.ActivityImporter;
+import com.letsdoit.logger.data.sqlite.CompletedActivityFragmentsDAO;
+import com.letsdoit.logger.data.store.ActivityStore;
+
+/**
+ * Chooses the storage engine the app keeps its Activities in.  Everything outside of the data packages should only see
+ * the {@link ActivityStore} interface, so the engine can be swapped here without touching the UI.
+ */
+public class ActivityStores {
+    private static ActivityStore instance;
+
+    /**
+     * @param context any context, only its application context is kept
+     * @return the store shared by the whole process.  Callers still have to open and close it around their use.
+     */
+    public static synchronized ActivityStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new CompletedActivityFragmentsDAO(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * @param context any context
+     * @return a builder of importers into the store shared by the whole process, that sort in the app's cache
+     * directory.  The store still has to be opened around the import.
+     */
+    public static ActivityImporter.Builder importer(Context context) {
+        return ActivityImporter.builder(getInstance(context)).tempDirectory(context.getCacheDir());
+    }
+
+    // This is a utility class with only static members.  Don't allow instantiation.
+    private ActivityStores() {}
+}
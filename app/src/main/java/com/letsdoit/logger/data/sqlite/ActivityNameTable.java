@@ -0,0 +1,48 @@
+package com.letsdoit.logger.data.sqlite;
+
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * Dictionary of every activity name that has been logged.  Fragment rows refer to their activity's name by the _id
+ * in this table instead of repeating the text.
+ */
+public class ActivityNameTable {
+
+    public static final String TABLE_NAME = "ActivityName";
+    public static final String TABLE_INDEX_NAME = "ACTIVITY_NAME_NAME";
+
+    public static final String COLUMN_ID = "_id";
+    public static final String COLUMN_NAME = "name";
+
+    public static final String[] ALL_COLUMNS = {COLUMN_ID, COLUMN_NAME};
+
+    // Index of the column in ALL_COLUMNS, used to query from cursors
+    public static final int COLUMN_INDEX_ID = 0;
+    public static final int COLUMN_INDEX_NAME = 1;
+
+    private static final String SQL_CREATE_TABLE = "create table " + TABLE_NAME + "("
+            + COLUMN_ID + " integer primary key autoincrement, "
+            + COLUMN_NAME + " text not null"
+            + ");";
+
+    private static final String SQL_CREATE_INDEX = "create unique index " + TABLE_INDEX_NAME
+            + " on " + TABLE_NAME + "(" + COLUMN_NAME + ")";
+
+    // Bind order: name
+    public static final String SQL_INSERT_NAME = "insert or ignore into " + TABLE_NAME + "(" + COLUMN_NAME + ")"
+            + " values (?)";
+
+    // Bind order: name
+    public static final String SQL_SELECT_ID = "select " + COLUMN_ID + " from " + TABLE_NAME
+            + " where " + COLUMN_NAME + " = ?";
+
+    public static final String QUERY_NAME_ON_ID = String.format("%s = ?", COLUMN_ID);
+
+    public static void createTable(SQLiteDatabase database) {
+        database.execSQL(SQL_CREATE_TABLE);
+        database.execSQL(SQL_CREATE_INDEX);
+    }
+
+    // This is a utility class with only static members.  Don't allow instantiation.
+    private ActivityNameTable() {}
+}
@@ -0,0 +1,272 @@
+package com.letsdoit.logger.data.sqlite;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.letsdoit.logger.data.ActivityStores;
+import com.letsdoit.logger.data.dao.Activity;
+import com.letsdoit.logger.data.store.ActivityStore;
+import com.letsdoit.logger.logging.AppLog;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Writes Activities to the ActivityStore on a single background thread, so logging an Activity never waits on storage.
+ *
+ * Writes that queue up while a commit is in progress are committed together in the next transaction.  Listeners are
+ * told on the main thread after every commit, e.g. so loaders can reload.  If the transaction fails, its Activities
+ * are written one at a time, so one bad write doesn't lose the others, and listeners are told about the ones that
+ * still failed.
+ *
+ * The store is opened on the writer thread, since opening may upgrade the database.
+ *
+ * Writes are not durable until {@link #flush()} returns or a listener hears about them.  The queue is bounded, so a
+ * caller only blocks if storage falls {@value #CAPACITY} writes behind.
+ */
+public class ActivityWriteQueue {
+    private static final String TAG = "ADP_ActivityWriteQueue";
+    private static final int CAPACITY = 256;
+
+    /**
+     * Told on the main thread after Activities have been committed, or have failed to be.
+     */
+    public interface Listener {
+        void onActivitiesWritten(List<Activity> activities);
+
+        void onActivitiesFailed(List<Activity> activities);
+    }
+
+    private static ActivityWriteQueue instance;
+
+    private final ActivityStore store;
+    private final BlockingQueue<Activity> queue = new LinkedBlockingQueue<Activity>(CAPACITY);
+    private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Thread writer;
+
+    // Guarded by this.  Writes are numbered in the order they were enqueued, so flush() can wait for a number.
+    // Every write ends up either committed or failed.
+    private long enqueued = 0;
+    private long committed = 0;
+    private long failed = 0;
+
+    ActivityWriteQueue(ActivityStore store) {
+        this.store = store;
+        this.writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        }, TAG);
+        writer.setDaemon(true);
+    }
+
+    /**
+     * @return the queue shared by the whole process
+     */
+    public static synchronized ActivityWriteQueue getInstance(Context context) {
+        if (instance == null) {
+            instance = new ActivityWriteQueue(ActivityStores.getInstance(context));
+            instance.start();
+        }
+        return instance;
+    }
+
+    void start() {
+        writer.start();
+    }
+
+    /**
+     * Stop the writer thread once the queued writes are committed.  Only for tests, the shared queue lives as long
+     * as the process.
+     */
+    void shutdown() throws InterruptedException {
+        flush();
+        writer.interrupt();
+        writer.join();
+    }
+
+    /**
+     * @throws IllegalArgumentException if the store would reject the Activity
+     */
+    public static void checkValid(Activity activity) {
+        Preconditions.checkArgument(!StringUtils.isEmpty(activity.getActivityName()), "Activity name cannot be empty.");
+        Preconditions.checkArgument(activity.getActivityStart().isBefore(activity.getActivityEnd()),
+                "The activity has to end after it starts: %s to %s", activity.getActivityStart(),
+                activity.getActivityEnd());
+    }
+
+    /**
+     * Queue the Activity to be written.  Returns immediately unless the queue is full.
+     *
+     * @param activity the Activity to persist
+     * @throws IllegalArgumentException if the Activity has no name or doesn't end after it starts, since the store
+     * would reject it
+     */
+    public void add(Activity activity) {
+        checkValid(activity);
+        synchronized (this) {
+            enqueued++;
+        }
+        boolean interrupted = false;
+        while (true) {
+            try {
+                queue.put(activity);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Block until everything queued before the call has been committed or has failed.  Don't call on the main thread.
+     *
+     * @return the number of writes that have failed since the queue started, see {@link #getFailedCount()}
+     */
+    public synchronized long flush() throws InterruptedException {
+        long target = enqueued;
+        while (committed + failed < target) {
+            wait();
+        }
+        return failed;
+    }
+
+    /**
+     * @return the number of Activities that were written to the store
+     */
+    public synchronized long getCommittedCount() {
+        return committed;
+    }
+
+    /**
+     * @return the number of Activities the store failed to write, which listeners were told about
+     */
+    public synchronized long getFailedCount() {
+        return failed;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    private void writeLoop() {
+        // Open before the first write is queued, so the upgrade, if any, is usually done by the time it arrives
+        boolean isOpen = openStore();
+        List<Activity> batch = Lists.newArrayList();
+        try {
+            while (true) {
+                try {
+                    batch.add(queue.take());
+                } catch (InterruptedException e) {
+                    return;
+                }
+                // Group everything else that's waiting into the same transaction
+                queue.drainTo(batch);
+
+                if (!isOpen) {
+                    // Opening failed before, try again rather than fail every write from now on
+                    isOpen = openStore();
+                }
+                List<Activity> written = Lists.newArrayListWithCapacity(batch.size());
+                List<Activity> lost = Lists.newArrayList();
+                if (isOpen) {
+                    write(batch, written, lost);
+                } else {
+                    lost.addAll(batch);
+                }
+
+                if (!written.isEmpty()) {
+                    notifyWritten(written);
+                }
+                if (!lost.isEmpty()) {
+                    notifyFailed(lost);
+                }
+                synchronized (this) {
+                    committed += written.size();
+                    failed += lost.size();
+                    notifyAll();
+                }
+                batch.clear();
+            }
+        } finally {
+            if (isOpen) {
+                store.close();
+            }
+        }
+    }
+
+    // Held open for as long as the writer runs, which for the shared queue is the lifetime of the process
+    private boolean openStore() {
+        try {
+            store.open();
+            return true;
+        } catch (RuntimeException e) {
+            AppLog.e(TAG, "Failed to open the store", e);
+            return false;
+        }
+    }
+
+    /**
+     * Write the batch in one transaction, or one Activity at a time if the transaction fails.
+     *
+     * @param written output, the Activities that were written
+     * @param lost output, the Activities that failed to be written
+     */
+    private void write(List<Activity> batch, List<Activity> written, List<Activity> lost) {
+        try {
+            store.addActivities(batch);
+            written.addAll(batch);
+            return;
+        } catch (RuntimeException e) {
+            AppLog.e(TAG, "Failed to write " + batch.size() + " activities together, writing them one by one", e);
+        }
+
+        for (Activity activity : batch) {
+            try {
+                store.addActivity(activity);
+                written.add(activity);
+            } catch (RuntimeException e) {
+                AppLog.e(TAG, "Failed to write " + activity, e);
+                lost.add(activity);
+            }
+        }
+    }
+
+    private void notifyWritten(final List<Activity> activities) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                for (Listener listener : listeners) {
+                    listener.onActivitiesWritten(activities);
+                }
+            }
+        });
+    }
+
+    private void notifyFailed(final List<Activity> activities) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                for (Listener listener : listeners) {
+                    listener.onActivitiesFailed(activities);
+                }
+            }
+        });
+    }
+}
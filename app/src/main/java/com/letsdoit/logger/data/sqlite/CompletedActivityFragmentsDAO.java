@@ -1,23 +1,39 @@
 package com.letsdoit.logger.data.sqlite;
 
-import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
-import android.util.Log;
+import android.database.sqlite.SQLiteStatement;
 
+import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.letsdoit.logger.data.dao.Activity;
 import com.letsdoit.logger.data.dao.ActivityFragment;
+import com.letsdoit.logger.data.dao.ActivityNames;
+import com.letsdoit.logger.data.dao.ActivityTimeline;
+import com.letsdoit.logger.data.dao.DailyTotal;
 import com.letsdoit.logger.data.dao.Fragmenter;
+import com.letsdoit.logger.data.store.ActivityChangeListener;
+import com.letsdoit.logger.data.store.ActivityIterator;
+import com.letsdoit.logger.data.store.ActivityStore;
+import com.letsdoit.logger.logging.AppLog;
+import com.letsdoit.logger.metrics.Counter;
+import com.letsdoit.logger.metrics.Metrics;
+import com.letsdoit.logger.metrics.Timer;
 
 import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
 import org.joda.time.Duration;
+import org.joda.time.LocalDate;
 import org.joda.time.Period;
 
-import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Provide access to the persistence layer for Activities.  The inputs and outputs are Activities.  Internally,
@@ -25,9 +41,13 @@ import java.util.List;
  *
  * Created by Andrey on 7/12/2014.
  */
-public class CompletedActivityFragmentsDAO {
+public class CompletedActivityFragmentsDAO implements ActivityStore {
     private static final String TAG = "ADP_CompletedActivityFragmentsDAO";
 
+    private static final Timer TIMELINE_QUERY_TIMER =
+            Metrics.timer("CompletedActivityFragmentsDAO.getTimelineInRange");
+    private static final Counter ROWS_READ = Metrics.counter("CompletedActivityFragmentsDAO.rowsRead");
+
     /**
      * An activity that was happening at a specific instant will have a fragment that started no longer than this
      * duration relative to the instant and ended no later than this duration relative to this instant.  This makes
@@ -37,27 +57,64 @@ public class CompletedActivityFragmentsDAO {
      */
     private static final Duration MAX_FRAGMENT_DURATION = Period.hours(1).toStandardDuration();
 
-    private SQLiteDatabase database;
-    private LoggerDatabaseHelper dbHelper;
+    private volatile SQLiteDatabase database;
+    private final LoggerDatabaseHelper dbHelper;
+    private boolean namesCached = false;
+
+    // In-process cache of the ActivityName dictionary table.  Shared by every timeline this DAO loads.
+    private final ActivityNames names = new ActivityNames();
+
+    // The zone the daily totals are kept in, read with the names
+    private DateTimeZone dayZone;
 
     public CompletedActivityFragmentsDAO(Context context) {
-        this.dbHelper = new LoggerDatabaseHelper(context);
+        this(LoggerDatabaseHelper.getInstance(context));
+    }
+
+    CompletedActivityFragmentsDAO(LoggerDatabaseHelper dbHelper) {
+        this.dbHelper = dbHelper;
     }
 
     /**
      * Start interacting with the database.  Must be called before any public methods in this class are called.
      *
+     * The database handle is shared by every DAO in the process and reference counted, so open the DAO once for the
+     * lifetime of its owner (e.g. in onCreate) rather than around every call.  May be called more than once, as long
+     * as every call is balanced by a {@link #close()}.
+     *
      * @throws SQLException on error opening the database.
      */
-    public void open() throws SQLException {
-        database = dbHelper.getWritableDatabase();
+    @Override
+    public synchronized void open() throws SQLException {
+        database = dbHelper.acquireDatabase();
+        if (!namesCached) {
+            cacheAllNames();
+            dayZone = DailyTotalTable.readZone(database);
+            namesCached = true;
+        }
+    }
+
+    /**
+     * Stop interacting with the database.  Must be called once for every call to {@link #open()}.
+     */
+    @Override
+    public synchronized void close() {
+        dbHelper.releaseDatabase();
     }
 
     /**
-     * Stop interacting with the database.  Must be called every time you are done with the database.
+     * Be told about every write to the database, through this DAO or any other.
+     *
+     * @param listener called after each commit with the range of time that changed
      */
-    public void close() {
-        dbHelper.close();
+    @Override
+    public void addChangeListener(ActivityChangeListener listener) {
+        dbHelper.addChangeListener(listener);
+    }
+
+    @Override
+    public void removeChangeListener(ActivityChangeListener listener) {
+        dbHelper.removeChangeListener(listener);
     }
 
     /**
@@ -68,63 +125,159 @@ public class CompletedActivityFragmentsDAO {
      *
      * @return a list of Activities that started after the start and ended before the end of the interval.
      */
+    @Override
     public List<Activity> getActivitiesInRange(DateTime start, DateTime end) {
-        Log.d(TAG, "getActivitesInRange called");
-        List<ActivityFragment> fragments = queryInTimeRange(start, end);
-        return Fragmenter.defragment(fragments);
+        AppLog.d(TAG, "getActivitesInRange called");
+        ActivityIterator activities = iterateActivitiesInRange(start, end);
+        try {
+            return Lists.newArrayList(activities);
+        } finally {
+            activities.close();
+        }
     }
 
     /**
-     * Query the database for the ActivityFragments that started or ended in the specified interval.
+     * Stream the Activities in the specified interval straight from the cursor.  The query returns one row per
+     * Activity, so nothing has to be collected to defragment them and only the cursor's window is held in memory.
      *
      * @param start - specifies the start of the interval we are interested in
      * @param end - specifies the end of the interval we are interested in
      *
-     * @return all of the ActivityFragments  that either start or end in the specified interval
+     * @return an iterator over the Activities overlapping the interval, sorted by start time.  Must be closed.
      */
-    private List<ActivityFragment> queryInTimeRange(DateTime start, DateTime end) {
+    @Override
+    public ActivityIterator iterateActivitiesInRange(DateTime start, DateTime end) {
+        return new CursorActivityIterator(queryActivitiesInRange(start, end));
+    }
 
+    /**
+     * Check whether any Activity overlaps the specified interval without loading any of them.
+     *
+     * @param start - specifies the start of the interval we are interested in
+     * @param end - specifies the end of the interval we are interested in
+     *
+     * @return true if an Activity ends after the start and starts before the end of the interval
+     */
+    @Override
+    public boolean hasActivitiesInRange(DateTime start, DateTime end) {
         // The table is indexed on the start time, so the query is done relative to the start times.
         DateTime bufferedStart = start.minus(MAX_FRAGMENT_DURATION);
-        String beginningStartTime = Long.toString(bufferedStart.getMillis());
-        String endingStartTime = Long.toString(end.getMillis());
-
-        String[] selectionArgs = {beginningStartTime, endingStartTime};
-        Cursor cursor = database.query(CompletedActivityTable.TABLE_NAME,
-                CompletedActivityTable.ALL_COLUMNS, CompletedActivityTable.QUERY_FRAGMENT_ON_START_TIME,
-                selectionArgs, null, null, null);
-
-        cursor.moveToFirst();
-        List<ActivityFragment> fragments = Lists.newArrayList();
-        while (!cursor.isAfterLast()) {
-            ActivityFragment fragment = cursorToActivityFragment(cursor);
-            if (fragment.getFragmentEnd().isAfter(start)) {
-                fragments.add(fragment);
+        String[] selectionArgs = {Long.toString(bufferedStart.getMillis()), Long.toString(end.getMillis()),
+                Long.toString(start.getMillis())};
+        return DatabaseUtils.longForQuery(database, CompletedActivityTable.SQL_EXISTS_FRAGMENT_IN_RANGE,
+                selectionArgs) != 0;
+    }
+
+    /**
+     * Same as {@link #getActivitiesInRange(DateTime, DateTime)}, but reads the rows straight into a columnar
+     * ActivityTimeline instead of creating an Activity per row.
+     *
+     * @param start - specifies the start of the interval we are interested in
+     * @param end - specifies the end of the interval we are interested in
+     *
+     * @return a timeline of the Activities that started after the start and ended before the end of the interval.
+     */
+    @Override
+    public ActivityTimeline getTimelineInRange(DateTime start, DateTime end) {
+        long startNanos = TIMELINE_QUERY_TIMER.start();
+        Cursor cursor = queryActivitiesInRange(start, end);
+        try {
+            ActivityTimeline timeline = new ActivityTimeline(names, Math.max(1, cursor.getCount()));
+            cursor.moveToFirst();
+            while (!cursor.isAfterLast()) {
+                ROWS_READ.increment();
+                int nameId = cursor.getInt(CompletedActivityTable.ACTIVITY_COLUMN_INDEX_NAME_ID);
+                cacheName(nameId);
+                timeline.append(nameId, cursor.getLong(CompletedActivityTable.ACTIVITY_COLUMN_INDEX_START),
+                        cursor.getLong(CompletedActivityTable.ACTIVITY_COLUMN_INDEX_END));
+                cursor.moveToNext();
             }
-            cursor.moveToNext();
+            return timeline;
+        } finally {
+            cursor.close();
+            TIMELINE_QUERY_TIMER.stop(startNanos);
         }
+    }
+
+    /**
+     * Read how much time went to each activity on each day from the daily totals, without touching the fragments.
+     * Days are in the zone the totals were created in, see {@link DailyTotalTable}.
+     *
+     * @param firstDay - the first day to report on
+     * @param lastDay - the last day to report on, inclusive
+     *
+     * @return a total for every day and activity name with any time logged, sorted by day
+     */
+    public List<DailyTotal> getDailyTotals(LocalDate firstDay, LocalDate lastDay) {
+        String[] selectionArgs = {Integer.toString(DailyTotalTable.toDayColumn(firstDay)),
+                Integer.toString(DailyTotalTable.toDayColumn(lastDay))};
+        Cursor cursor = database.query(DailyTotalTable.TABLE_NAME, DailyTotalTable.ALL_COLUMNS,
+                DailyTotalTable.QUERY_TOTAL_ON_DAY, selectionArgs, null, null, DailyTotalTable.ORDER_BY_DAY_AND_NAME);
+
+        List<DailyTotal> totals = Lists.newArrayListWithCapacity(cursor.getCount());
+        try {
+            cursor.moveToFirst();
+            while (!cursor.isAfterLast()) {
+                int nameId = cursor.getInt(DailyTotalTable.COLUMN_INDEX_ACTIVITY_NAME_ID);
+                cacheName(nameId);
+                LocalDate day = DailyTotalTable.fromDayColumn(cursor.getInt(DailyTotalTable.COLUMN_INDEX_DAY));
+                totals.add(new DailyTotal(day, names.getName(nameId),
+                        new Duration(cursor.getLong(DailyTotalTable.COLUMN_INDEX_DURATION))));
+                cursor.moveToNext();
+            }
+        } finally {
+            cursor.close();
+        }
+        return totals;
+    }
 
-        cursor.close();
-        Log.d(TAG, String.format("Loaded %s raw fragments between %s and %s", fragments.size(), bufferedStart, end));
+    /**
+     * Add up the daily totals of each activity over a range of days, e.g. a week or a month.  Reads one row per day
+     * and activity name, however many fragments were logged.
+     *
+     * @param firstDay - the first day to report on
+     * @param lastDay - the last day to report on, inclusive
+     *
+     * @return the total time of every activity name with any time logged in the range
+     */
+    public Map<String, Duration> getTotalsByName(LocalDate firstDay, LocalDate lastDay) {
+        String[] selectionArgs = {Integer.toString(DailyTotalTable.toDayColumn(firstDay)),
+                Integer.toString(DailyTotalTable.toDayColumn(lastDay))};
+        Cursor cursor = database.rawQuery(DailyTotalTable.SQL_SUM_BY_NAME, selectionArgs);
 
-        return fragments;
+        Map<String, Duration> totals = Maps.newHashMap();
+        try {
+            cursor.moveToFirst();
+            while (!cursor.isAfterLast()) {
+                int nameId = cursor.getInt(0);
+                cacheName(nameId);
+                totals.put(names.getName(nameId), new Duration(cursor.getLong(1)));
+                cursor.moveToNext();
+            }
+        } finally {
+            cursor.close();
+        }
+        return totals;
     }
 
     /**
-     * Deserialize the ActivityFragment from the database entry.
+     * Query the database for one row per Activity overlapping the specified interval.  The filtering happens in the
+     * covering index, so every row read is an Activity in the result.
      *
-     * @param cursor the database entry for an ActivityFragment.
-     * @return an ActivityFragment for the database entry.
+     * @param start - specifies the start of the interval we are interested in
+     * @param end - specifies the end of the interval we are interested in
+     *
+     * @return a cursor over the columns of {@link CompletedActivityTable#SQL_SELECT_ACTIVITIES_IN_RANGE}, sorted by
+     * activity start time.  The caller must close it.
      */
-    private ActivityFragment cursorToActivityFragment(Cursor cursor) {
-        String activityName = cursor.getString(CompletedActivityTable.COLUMN_INDEX_ACTIVITY_NAME);
-        long activityStartMs = cursor.getLong(CompletedActivityTable.COLUMN_INDEX_ACTIVITY_START);
-        long activityEndMs = cursor.getLong(CompletedActivityTable.COLUMN_INDEX_ACTIVITY_END);
-        long startMs = cursor.getLong(CompletedActivityTable.COLUMN_INDEX_START);
-        long endMs = cursor.getLong(CompletedActivityTable.COLUMN_INDEX_END);
+    private Cursor queryActivitiesInRange(DateTime start, DateTime end) {
+        // Fragments are never longer than the max duration, which bounds the range scan on the fragment start
+        String earliestFragmentStart = Long.toString(start.minus(MAX_FRAGMENT_DURATION).getMillis());
+        String rangeStart = Long.toString(start.getMillis());
+        String rangeEnd = Long.toString(end.getMillis());
 
-        return new ActivityFragment(activityName, new DateTime(activityStartMs), new DateTime(activityEndMs),
-                new DateTime(startMs), new DateTime(endMs));
+        String[] selectionArgs = {earliestFragmentStart, rangeEnd, rangeStart, rangeStart};
+        return database.rawQuery(CompletedActivityTable.SQL_SELECT_ACTIVITIES_IN_RANGE, selectionArgs);
     }
 
     /**
@@ -132,28 +285,244 @@ public class CompletedActivityFragmentsDAO {
      *
      * @param activity the activity to be persisted
      */
+    @Override
     public void addActivity(Activity activity) {
-        // Split into fragments no longer than the max duration and persist
-        List<ActivityFragment> fragments = Fragmenter.fragment(activity, MAX_FRAGMENT_DURATION);
-        for (ActivityFragment fragment : fragments) {
-            addFragment(fragment);
+        addActivities(Collections.singletonList(activity));
+    }
+
+    /**
+     * Persist all of the given activities in the database in a single transaction.  Every fragment of every activity
+     * is written with the same compiled insert statement, so the cost of a large import is dominated by the row writes
+     * rather than by one commit per fragment.
+     *
+     * Does not verify that the activities being inserted do not overlap with each other or with existing activities.
+     *
+     * @param activities the activities to be persisted
+     * @return the number of fragment rows written to the database
+     */
+    @Override
+    public int addActivities(Collection<Activity> activities) {
+        if (activities.isEmpty()) {
+            return 0;
+        }
+
+        int rowsWritten = 0;
+        DateTime changedStart = null;
+        DateTime changedEnd = null;
+        SQLiteStatement insert = database.compileStatement(CompletedActivityTable.SQL_INSERT_FRAGMENT);
+        SQLiteStatement insertName = database.compileStatement(ActivityNameTable.SQL_INSERT_NAME);
+        SQLiteStatement selectNameId = database.compileStatement(ActivityNameTable.SQL_SELECT_ID);
+        SQLiteStatement insertEmptyTotal = database.compileStatement(DailyTotalTable.SQL_INSERT_EMPTY_TOTAL);
+        SQLiteStatement addDuration = database.compileStatement(DailyTotalTable.SQL_ADD_DURATION);
+        // Names inserted by this transaction, only cached once it commits
+        Map<String, Integer> newNames = Maps.newHashMap();
+        // Non-exclusive, so loads on other connections keep reading the last commit while this writes
+        database.beginTransactionNonExclusive();
+        try {
+            for (Activity activity : activities) {
+                int nameId = getOrInsertNameId(activity.getActivityName(), newNames, insertName, selectNameId);
+                if (changedStart == null || activity.getActivityStart().isBefore(changedStart)) {
+                    changedStart = activity.getActivityStart();
+                }
+                if (changedEnd == null || activity.getActivityEnd().isAfter(changedEnd)) {
+                    changedEnd = activity.getActivityEnd();
+                }
+
+                // Split into fragments no longer than the max duration and persist
+                List<ActivityFragment> fragments = Fragmenter.fragment(activity, MAX_FRAGMENT_DURATION);
+                for (ActivityFragment fragment : fragments) {
+                    bindFragment(insert, nameId, fragment);
+                    insert.executeInsert();
+                    rowsWritten++;
+                }
+                DailyTotalTable.addActivity(activity, dayZone, nameId, 1, insertEmptyTotal, addDuration);
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+            insert.close();
+            insertName.close();
+            selectNameId.close();
+            insertEmptyTotal.close();
+            addDuration.close();
+        }
+
+        // A rolled back transaction takes the names and their ids with it, so they can't be cached before this point
+        for (Map.Entry<String, Integer> name : newNames.entrySet()) {
+            names.put(name.getValue(), name.getKey());
+        }
+        if (AppLog.isDebugEnabled()) {
+            AppLog.d(TAG, "Wrote %s fragments for %s activities", rowsWritten, activities.size());
         }
+        dbHelper.notifyChanged(changedStart, changedEnd);
+        return rowsWritten;
     }
 
     /**
-     * Does not verify that the activity being inserted does not overlap with other activities.
+     * Delete every fragment of the activity in a single transaction.
      *
-     * @param fragment
+     * @param activity the activity to delete, matched on its name, start and end
+     * @return true if the activity was in the database
      */
-    private void addFragment(ActivityFragment fragment) {
-        ContentValues values = new ContentValues();
-        values.put(CompletedActivityTable.COLUMN_ACTIVITY_NAME, fragment.getActivityName());
-        values.put(CompletedActivityTable.COLUMN_ACTIVITY_START, fragment.getActivityStart().getMillis());
-        values.put(CompletedActivityTable.COLUMN_ACTIVITY_END, fragment.getActivityEnd().getMillis());
-        values.put(CompletedActivityTable.COLUMN_FRAGMENT_START, fragment.getFragmentStart().getMillis());
-        values.put(CompletedActivityTable.COLUMN_FRAGMENT_END, fragment.getFragmentEnd().getMillis());
+    @Override
+    public boolean deleteActivity(Activity activity) {
+        int nameId = names.getId(activity.getActivityName());
+        if (nameId == ActivityNames.NO_ID) {
+            return false;
+        }
 
-        database.insert(CompletedActivityTable.TABLE_NAME, null, values);
+        String[] whereArgs = {Integer.toString(nameId), Long.toString(activity.getActivityStart().getMillis()),
+                Long.toString(activity.getActivityEnd().getMillis())};
+        int rowsDeleted;
+        SQLiteStatement insertEmptyTotal = database.compileStatement(DailyTotalTable.SQL_INSERT_EMPTY_TOTAL);
+        SQLiteStatement addDuration = database.compileStatement(DailyTotalTable.SQL_ADD_DURATION);
+        database.beginTransactionNonExclusive();
+        try {
+            rowsDeleted = database.delete(CompletedActivityTable.TABLE_NAME,
+                    CompletedActivityTable.QUERY_FRAGMENT_ON_ACTIVITY, whereArgs);
+            if (rowsDeleted > 0) {
+                List<DailyTotal> days = DailyTotalTable.addActivity(activity, dayZone, nameId, -1, insertEmptyTotal,
+                        addDuration);
+                // Every day the activity touched, including the ones in between, may have been left empty
+                String[] dayArgs = {
+                        Integer.toString(DailyTotalTable.toDayColumn(days.get(0).getDay())),
+                        Integer.toString(DailyTotalTable.toDayColumn(days.get(days.size() - 1).getDay()))};
+                database.delete(DailyTotalTable.TABLE_NAME, DailyTotalTable.QUERY_EMPTY_TOTAL_ON_DAY, dayArgs);
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+            insertEmptyTotal.close();
+            addDuration.close();
+        }
+
+        if (AppLog.isDebugEnabled()) {
+            AppLog.d(TAG, "Deleted %s fragments of %s", rowsDeleted, activity);
+        }
+        if (rowsDeleted == 0) {
+            return false;
+        }
+        dbHelper.notifyChanged(activity.getActivityStart(), activity.getActivityEnd());
+        return true;
     }
 
+    /**
+     * Bind the fragment's values to the insert statement, in the order of the columns in
+     * {@link CompletedActivityTable#SQL_INSERT_FRAGMENT}.
+     *
+     * @param insert the compiled insert statement
+     * @param nameId the id of the fragment's activity name in the ActivityName table
+     * @param fragment the fragment to bind
+     */
+    private void bindFragment(SQLiteStatement insert, int nameId, ActivityFragment fragment) {
+        insert.clearBindings();
+        insert.bindLong(1, nameId);
+        insert.bindLong(2, fragment.getActivityStart().getMillis());
+        insert.bindLong(3, fragment.getActivityEnd().getMillis());
+        insert.bindLong(4, fragment.getFragmentStart().getMillis());
+        insert.bindLong(5, fragment.getFragmentEnd().getMillis());
+    }
+
+    /**
+     * Look up the id of the activity name in the ActivityName table, adding the name if it's new.  Must be called
+     * inside of the insert transaction, so a name never gets committed without the fragments that use it.
+     *
+     * @param activityName the name to look up
+     * @param newNames the names the transaction has inserted so far, which the name is added to if it's new.  The
+     *                 caller caches them once the transaction commits.
+     * @param insertName compiled {@link ActivityNameTable#SQL_INSERT_NAME}
+     * @param selectNameId compiled {@link ActivityNameTable#SQL_SELECT_ID}
+     * @return the id of the name
+     */
+    private int getOrInsertNameId(String activityName, Map<String, Integer> newNames, SQLiteStatement insertName,
+                                  SQLiteStatement selectNameId) {
+        int nameId = names.getId(activityName);
+        if (nameId != ActivityNames.NO_ID) {
+            return nameId;
+        }
+        Integer newId = newNames.get(activityName);
+        if (newId != null) {
+            return newId;
+        }
+
+        insertName.bindString(1, activityName);
+        insertName.executeInsert();
+        selectNameId.bindString(1, activityName);
+        nameId = (int) selectNameId.simpleQueryForLong();
+        newNames.put(activityName, nameId);
+        return nameId;
+    }
+
+    /**
+     * Make sure the name for the id is in the in-process cache, reading it from the ActivityName table if another
+     * DAO added it since this one last looked.
+     *
+     * @param nameId the id of an activity name in the ActivityName table
+     */
+    private void cacheName(int nameId) {
+        if (names.contains(nameId)) {
+            return;
+        }
+
+        String[] selectionArgs = {Integer.toString(nameId)};
+        Cursor cursor = database.query(ActivityNameTable.TABLE_NAME, ActivityNameTable.ALL_COLUMNS,
+                ActivityNameTable.QUERY_NAME_ON_ID, selectionArgs, null, null, null);
+        try {
+            if (cursor.moveToFirst()) {
+                names.put(nameId, cursor.getString(ActivityNameTable.COLUMN_INDEX_NAME));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Read the whole ActivityName table into the in-process cache.  There are few distinct activity names, so this is
+     * cheaper than looking them up one at a time as fragments are read.
+     */
+    private void cacheAllNames() {
+        Cursor cursor = database.query(ActivityNameTable.TABLE_NAME, ActivityNameTable.ALL_COLUMNS,
+                null, null, null, null, null);
+        try {
+            cursor.moveToFirst();
+            while (!cursor.isAfterLast()) {
+                names.put(cursor.getInt(ActivityNameTable.COLUMN_INDEX_ID),
+                        cursor.getString(ActivityNameTable.COLUMN_INDEX_NAME));
+                cursor.moveToNext();
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Turns each row of {@link CompletedActivityTable#SQL_SELECT_ACTIVITIES_IN_RANGE} into an Activity as it is
+     * read.  Closes the cursor when it runs out.
+     */
+    private class CursorActivityIterator extends AbstractIterator<Activity> implements ActivityIterator {
+        private final Cursor cursor;
+
+        private CursorActivityIterator(Cursor cursor) {
+            this.cursor = cursor;
+        }
+
+        @Override
+        protected Activity computeNext() {
+            if (cursor.isClosed() || !cursor.moveToNext()) {
+                close();
+                return endOfData();
+            }
+            ROWS_READ.increment();
+            int nameId = cursor.getInt(CompletedActivityTable.ACTIVITY_COLUMN_INDEX_NAME_ID);
+            cacheName(nameId);
+            return new Activity(names.getName(nameId),
+                    new DateTime(cursor.getLong(CompletedActivityTable.ACTIVITY_COLUMN_INDEX_START)),
+                    new DateTime(cursor.getLong(CompletedActivityTable.ACTIVITY_COLUMN_INDEX_END)));
+        }
+
+        @Override
+        public void close() {
+            cursor.close();
+        }
+    }
 }
@@ -1,10 +1,8 @@
 package com.letsdoit.logger.data.sqlite;
 
-import android.content.ContentValues;
 import android.database.sqlite.SQLiteDatabase;
-import android.util.Log;
 
-import com.letsdoit.logger.data.dao.ActivityFragment;
+import com.letsdoit.logger.logging.AppLog;
 
 /**
  * Created by Andrey on 7/20/2014.
@@ -13,21 +11,21 @@ public class CompletedActivityTable {
     private static final String TAG = "CompletedActivityTable";
 
     public static final String TABLE_NAME = "CompletedActivityFragment";
-    public static final String TABLE_INDEX_NAME = "FRAGMENT_START_TIME";
+    public static final String TABLE_INDEX_NAME = "FRAGMENT_RANGE";
 
     public static final String COLUMN_ID = "_id";
-    public static final String COLUMN_ACTIVITY_NAME = "activityName";
+    public static final String COLUMN_ACTIVITY_NAME_ID = "activityNameId";
     public static final String COLUMN_ACTIVITY_START = "activityStart";
     public static final String COLUMN_ACTIVITY_END = "activityEnd";
     public static final String COLUMN_FRAGMENT_START = "fragmentStart";
     public static final String COLUMN_FRAGMENT_END = "fragmentEnd";
 
-    public static final String[] ALL_COLUMNS = {COLUMN_ID, COLUMN_ACTIVITY_NAME, COLUMN_ACTIVITY_START,
+    public static final String[] ALL_COLUMNS = {COLUMN_ID, COLUMN_ACTIVITY_NAME_ID, COLUMN_ACTIVITY_START,
             COLUMN_ACTIVITY_END, COLUMN_FRAGMENT_START, COLUMN_FRAGMENT_END};
 
     // Index of the column in ALL_COLUMNS, used to query from cursors
     public static final int COLUMN_INDEX_ID = 0;
-    public static final int COLUMN_INDEX_ACTIVITY_NAME = 1;
+    public static final int COLUMN_INDEX_ACTIVITY_NAME_ID = 1;
     public static final int COLUMN_INDEX_ACTIVITY_START = 2;
     public static final int COLUMN_INDEX_ACTIVITY_END = 3;
     public static final int COLUMN_INDEX_START = 4;
@@ -36,45 +34,140 @@ public class CompletedActivityTable {
 
     private static final String SQL_CREATE_TABLE = "create table " + TABLE_NAME + "("
             + COLUMN_ID + " integer primary key autoincrement, "
-            + COLUMN_ACTIVITY_NAME + " text not null, "
+            + COLUMN_ACTIVITY_NAME_ID + " integer not null references "
+            + ActivityNameTable.TABLE_NAME + "(" + ActivityNameTable.COLUMN_ID + "), "
             + COLUMN_ACTIVITY_START + " integer not null, "
             + COLUMN_ACTIVITY_END + " integer not null, "
             + COLUMN_FRAGMENT_START + " integer not null, "
             + COLUMN_FRAGMENT_END + " integer not null"
             + ");";
 
+    // Covers the range queries: the range is on the fragment start, the fragment end is filtered in the index and the
+    // activity columns are read from it, so they never touch the table rows
     private static final String SQL_CREATE_INDEX = "create index " + TABLE_INDEX_NAME
-            + " on " + TABLE_NAME + "(" + COLUMN_FRAGMENT_START + ")";
+            + " on " + TABLE_NAME + "("
+            + COLUMN_FRAGMENT_START + ", "
+            + COLUMN_FRAGMENT_END + ", "
+            + COLUMN_ACTIVITY_START + ", "
+            + COLUMN_ACTIVITY_END + ", "
+            + COLUMN_ACTIVITY_NAME_ID
+            + ")";
 
     public static void createTable(SQLiteDatabase database) {
         database.execSQL(SQL_CREATE_TABLE);
         database.execSQL(SQL_CREATE_INDEX);
     }
 
-    public static final String QUERY_FRAGMENT_ON_START_TIME =
-            String.format("%s >= ? and %s < ? ", COLUMN_FRAGMENT_START, COLUMN_FRAGMENT_START);
-
-    // TODO: Delete this once the database starts really being used
-    private static void add(SQLiteDatabase database, ActivityFragment fragment) {
-        ContentValues values = new ContentValues();
-        values.put(CompletedActivityTable.COLUMN_ACTIVITY_NAME, fragment.getActivityName());
-        values.put(CompletedActivityTable.COLUMN_ACTIVITY_START, fragment.getActivityStart().getMillis());
-        values.put(CompletedActivityTable.COLUMN_ACTIVITY_END, fragment.getActivityEnd().getMillis());
-        values.put(CompletedActivityTable.COLUMN_FRAGMENT_START, fragment.getFragmentStart().getMillis());
-        values.put(CompletedActivityTable.COLUMN_FRAGMENT_END, fragment.getFragmentEnd().getMillis());
-
-        database.insert(CompletedActivityTable.TABLE_NAME, null, values);
-    }
+    /**
+     * One row per activity overlapping a range, in order.  Of the fragments overlapping the range, only an activity's
+     * first one is returned: the one the activity starts with if it starts in the range, or else the one containing
+     * the start of the range.  Fragments are never longer than the max fragment duration, so the earliest fragment
+     * start bounds the index range scan.
+     *
+     * Bind order: earliest fragmentStart, end of the range, start of the range, start of the range
+     */
+    public static final String SQL_SELECT_ACTIVITIES_IN_RANGE = "select "
+            + COLUMN_ACTIVITY_NAME_ID + ", " + COLUMN_ACTIVITY_START + ", " + COLUMN_ACTIVITY_END
+            + " from " + TABLE_NAME
+            + " where " + COLUMN_FRAGMENT_START + " >= ? and " + COLUMN_FRAGMENT_START + " < ?"
+            + " and " + COLUMN_FRAGMENT_END + " > ?"
+            + " and (" + COLUMN_FRAGMENT_START + " = " + COLUMN_ACTIVITY_START
+            + " or " + COLUMN_FRAGMENT_START + " <= ?)"
+            + " order by " + COLUMN_FRAGMENT_START;
+
+    // Index of the column in SQL_SELECT_ACTIVITIES_IN_RANGE, used to query from cursors
+    public static final int ACTIVITY_COLUMN_INDEX_NAME_ID = 0;
+    public static final int ACTIVITY_COLUMN_INDEX_START = 1;
+    public static final int ACTIVITY_COLUMN_INDEX_END = 2;
+
+    // Bind order: activityNameId, activityStart, activityEnd
+    public static final String QUERY_FRAGMENT_ON_ACTIVITY = String.format("%s = ? and %s = ? and %s = ?",
+            COLUMN_ACTIVITY_NAME_ID, COLUMN_ACTIVITY_START, COLUMN_ACTIVITY_END);
+
+    // Bind order: earliest fragmentStart, end of the range, start of the range
+    public static final String SQL_EXISTS_FRAGMENT_IN_RANGE = "select exists (select 1 from " + TABLE_NAME
+            + " where " + COLUMN_FRAGMENT_START + " >= ? and " + COLUMN_FRAGMENT_START + " < ?"
+            + " and " + COLUMN_FRAGMENT_END + " > ? limit 1)";
+
+    // Bind order: activityNameId, activityStart, activityEnd, fragmentStart, fragmentEnd
+    public static final String SQL_INSERT_FRAGMENT = "insert into " + TABLE_NAME + "("
+            + COLUMN_ACTIVITY_NAME_ID + ", "
+            + COLUMN_ACTIVITY_START + ", "
+            + COLUMN_ACTIVITY_END + ", "
+            + COLUMN_FRAGMENT_START + ", "
+            + COLUMN_FRAGMENT_END
+            + ") values (?, ?, ?, ?, ?)";
 
     // This is a utility class with only static members.  Don't allow instantiation.
     private CompletedActivityTable() {}
 
+    /*
+     * Schema history.  Migrations have to recreate the schema exactly as it was at their version, not the latest
+     * one, so the old definitions are kept here.
+     */
+
+    private static final String COLUMN_VERSION_5_ACTIVITY_NAME = "activityName";
+
+    private static final String TABLE_INDEX_NAME_VERSION_7 = "FRAGMENT_START_TIME";
+
+    private static final String SQL_CREATE_INDEX_VERSION_7 = "create index " + TABLE_INDEX_NAME_VERSION_7
+            + " on " + TABLE_NAME + "(" + COLUMN_FRAGMENT_START + ")";
+
+    private static final String SQL_CREATE_TABLE_VERSION_5 = "create table " + TABLE_NAME + "("
+            + COLUMN_ID + " integer primary key autoincrement, "
+            + COLUMN_VERSION_5_ACTIVITY_NAME + " text not null, "
+            + COLUMN_ACTIVITY_START + " integer not null, "
+            + COLUMN_ACTIVITY_END + " integer not null, "
+            + COLUMN_FRAGMENT_START + " integer not null, "
+            + COLUMN_FRAGMENT_END + " integer not null"
+            + ");";
+
     public static void moveFromVersion4To5(SQLiteDatabase database) {
-        Log.d(TAG, "Dropping index and table");
+        AppLog.d(TAG, "Dropping index and table");
 
-        database.execSQL("DROP INDEX IF EXISTS " + TABLE_INDEX_NAME);
+        database.execSQL("DROP INDEX IF EXISTS " + TABLE_INDEX_NAME_VERSION_7);
         database.execSQL("DROP TABLE IF EXISTS " + TABLE_NAME);
 
-        createTable(database);
+        database.execSQL(SQL_CREATE_TABLE_VERSION_5);
+        database.execSQL(SQL_CREATE_INDEX_VERSION_7);
+    }
+
+    /**
+     * Move the activity names out of the fragment rows into the ActivityName dictionary table and replace them with
+     * the name's id.  SQLite can't drop columns, so the fragment table is copied into a new one.
+     */
+    public static void moveFromVersion5To6(SQLiteDatabase database) {
+        String version5Table = TABLE_NAME + "_version5";
+
+        AppLog.d(TAG, "Creating the activity name dictionary");
+        ActivityNameTable.createTable(database);
+        database.execSQL("INSERT INTO " + ActivityNameTable.TABLE_NAME + "(" + ActivityNameTable.COLUMN_NAME + ")"
+                + " SELECT DISTINCT " + COLUMN_VERSION_5_ACTIVITY_NAME + " FROM " + TABLE_NAME);
+
+        AppLog.d(TAG, "Replacing activity names with name ids");
+        database.execSQL("DROP INDEX IF EXISTS " + TABLE_INDEX_NAME_VERSION_7);
+        database.execSQL("ALTER TABLE " + TABLE_NAME + " RENAME TO " + version5Table);
+        database.execSQL(SQL_CREATE_TABLE);
+        database.execSQL(SQL_CREATE_INDEX_VERSION_7);
+        database.execSQL("INSERT INTO " + TABLE_NAME + "("
+                + COLUMN_ID + ", " + COLUMN_ACTIVITY_NAME_ID + ", "
+                + COLUMN_ACTIVITY_START + ", " + COLUMN_ACTIVITY_END + ", "
+                + COLUMN_FRAGMENT_START + ", " + COLUMN_FRAGMENT_END + ")"
+                + " SELECT f." + COLUMN_ID + ", n." + ActivityNameTable.COLUMN_ID + ", "
+                + "f." + COLUMN_ACTIVITY_START + ", f." + COLUMN_ACTIVITY_END + ", "
+                + "f." + COLUMN_FRAGMENT_START + ", f." + COLUMN_FRAGMENT_END
+                + " FROM " + version5Table + " f JOIN " + ActivityNameTable.TABLE_NAME + " n"
+                + " ON n." + ActivityNameTable.COLUMN_NAME + " = f." + COLUMN_VERSION_5_ACTIVITY_NAME);
+        database.execSQL("DROP TABLE " + version5Table);
+    }
+
+    /**
+     * Replace the index on the fragment start with one that covers the range queries.  The new index starts with the
+     * fragment start as well, so the old one would only slow down writes.
+     */
+    public static void moveFromVersion7To8(SQLiteDatabase database) {
+        AppLog.d(TAG, "Replacing the fragment start index with a covering index");
+        database.execSQL("DROP INDEX IF EXISTS " + TABLE_INDEX_NAME_VERSION_7);
+        database.execSQL(SQL_CREATE_INDEX);
     }
 }
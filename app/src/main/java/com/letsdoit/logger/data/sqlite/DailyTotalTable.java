@@ -0,0 +1,204 @@
+package com.letsdoit.logger.data.sqlite;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.letsdoit.logger.data.dao.Activity;
+import com.letsdoit.logger.data.dao.DailyTotal;
+import com.letsdoit.logger.logging.AppLog;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDate;
+
+import java.util.List;
+
+/**
+ * How much time went to each activity name on each day, kept up to date in the same transaction as the fragment rows
+ * so reports read one row per day and name instead of every fragment.
+ *
+ * Days are stored as yyyymmdd integers of the calendar day in the zone recorded in the DailyTotalZone table when the
+ * totals were created.  Every write and delete splits activities in that zone rather than the default one, so a delete
+ * after the user changed zones takes the time back out of the same rows it was added to.
+ */
+public class DailyTotalTable {
+    private static final String TAG = "ADP_DailyTotalTable";
+
+    public static final String TABLE_NAME = "DailyTotal";
+
+    public static final String COLUMN_DAY = "day";
+    public static final String COLUMN_ACTIVITY_NAME_ID = "activityNameId";
+    public static final String COLUMN_DURATION = "duration";
+
+    public static final String[] ALL_COLUMNS = {COLUMN_DAY, COLUMN_ACTIVITY_NAME_ID, COLUMN_DURATION};
+
+    // A single row holding the id of the zone the days are in
+    public static final String ZONE_TABLE_NAME = "DailyTotalZone";
+    public static final String COLUMN_ZONE_ID = "zoneId";
+
+    // Index of the column in ALL_COLUMNS, used to query from cursors
+    public static final int COLUMN_INDEX_DAY = 0;
+    public static final int COLUMN_INDEX_ACTIVITY_NAME_ID = 1;
+    public static final int COLUMN_INDEX_DURATION = 2;
+
+    // The primary key doubles as the index for day range queries
+    private static final String SQL_CREATE_TABLE = "create table " + TABLE_NAME + "("
+            + COLUMN_DAY + " integer not null, "
+            + COLUMN_ACTIVITY_NAME_ID + " integer not null references "
+            + ActivityNameTable.TABLE_NAME + "(" + ActivityNameTable.COLUMN_ID + "), "
+            + COLUMN_DURATION + " integer not null, "
+            + "primary key (" + COLUMN_DAY + ", " + COLUMN_ACTIVITY_NAME_ID + ")"
+            + ");";
+
+    private static final String SQL_CREATE_ZONE_TABLE = "create table " + ZONE_TABLE_NAME + "("
+            + COLUMN_ZONE_ID + " text not null"
+            + ");";
+
+    private static final String SQL_SELECT_ZONE = "select " + COLUMN_ZONE_ID + " from " + ZONE_TABLE_NAME;
+
+    // Bind order: day, activityNameId
+    public static final String SQL_INSERT_EMPTY_TOTAL = "insert or ignore into " + TABLE_NAME + "("
+            + COLUMN_DAY + ", " + COLUMN_ACTIVITY_NAME_ID + ", " + COLUMN_DURATION + ") values (?, ?, 0)";
+
+    // Bind order: duration to add, day, activityNameId
+    public static final String SQL_ADD_DURATION = "update " + TABLE_NAME
+            + " set " + COLUMN_DURATION + " = " + COLUMN_DURATION + " + ?"
+            + " where " + COLUMN_DAY + " = ? and " + COLUMN_ACTIVITY_NAME_ID + " = ?";
+
+    public static final String QUERY_TOTAL_ON_DAY = String.format("%s >= ? and %s <= ?", COLUMN_DAY, COLUMN_DAY);
+
+    // Bind order: first day, last day
+    public static final String QUERY_EMPTY_TOTAL_ON_DAY = QUERY_TOTAL_ON_DAY + " and " + COLUMN_DURATION + " <= 0";
+
+    public static final String ORDER_BY_DAY_AND_NAME = COLUMN_DAY + ", " + COLUMN_ACTIVITY_NAME_ID;
+
+    // Bind order: first day, last day
+    public static final String SQL_SUM_BY_NAME = "select " + COLUMN_ACTIVITY_NAME_ID + ", sum(" + COLUMN_DURATION
+            + ") from " + TABLE_NAME + " where " + QUERY_TOTAL_ON_DAY + " group by " + COLUMN_ACTIVITY_NAME_ID;
+
+    public static void createTable(SQLiteDatabase database) {
+        database.execSQL(SQL_CREATE_TABLE);
+    }
+
+    /**
+     * Create the zone table and record the zone the days are in.  It never changes afterwards.
+     *
+     * @param zone the time zone whose calendar days the totals are kept for
+     */
+    public static void createZoneTable(SQLiteDatabase database, DateTimeZone zone) {
+        database.execSQL(SQL_CREATE_ZONE_TABLE);
+        ContentValues values = new ContentValues();
+        values.put(COLUMN_ZONE_ID, zone.getID());
+        database.insertOrThrow(ZONE_TABLE_NAME, null, values);
+    }
+
+    /**
+     * @return the time zone the days are in
+     */
+    public static DateTimeZone readZone(SQLiteDatabase database) {
+        return DateTimeZone.forID(DatabaseUtils.stringForQuery(database, SQL_SELECT_ZONE, null));
+    }
+
+    /**
+     * @param day a calendar day
+     * @return the day as stored in the table, e.g. 20140717
+     */
+    public static int toDayColumn(LocalDate day) {
+        return day.getYear() * 10000 + day.getMonthOfYear() * 100 + day.getDayOfMonth();
+    }
+
+    /**
+     * @param day the day as stored in the table
+     * @return the calendar day
+     */
+    public static LocalDate fromDayColumn(int day) {
+        return new LocalDate(day / 10000, day / 100 % 100, day % 100);
+    }
+
+    /**
+     * Add the time the activity took on each day to the totals, or take it away.  Must be called inside of the
+     * transaction that writes or deletes the activity's fragments.
+     *
+     * @param activity the activity that was written or deleted
+     * @param zone the zone the days are in, see {@link #readZone(SQLiteDatabase)}
+     * @param nameId the id of the activity's name in the ActivityName table
+     * @param sign 1 if the activity was written, -1 if it was deleted
+     * @param insertEmptyTotal compiled {@link #SQL_INSERT_EMPTY_TOTAL}
+     * @param addDuration compiled {@link #SQL_ADD_DURATION}
+     * @return the time the activity took on each day, in day order
+     */
+    public static List<DailyTotal> addActivity(Activity activity, DateTimeZone zone, int nameId, int sign,
+                                               SQLiteStatement insertEmptyTotal, SQLiteStatement addDuration) {
+        List<DailyTotal> totals = DailyTotal.split(activity, zone);
+        for (DailyTotal total : totals) {
+            int day = toDayColumn(total.getDay());
+            insertEmptyTotal.bindLong(1, day);
+            insertEmptyTotal.bindLong(2, nameId);
+            insertEmptyTotal.executeInsert();
+
+            addDuration.bindLong(1, sign * total.getDuration().getMillis());
+            addDuration.bindLong(2, day);
+            addDuration.bindLong(3, nameId);
+            addDuration.executeUpdateDelete();
+        }
+        return totals;
+    }
+
+    // This is a utility class with only static members.  Don't allow instantiation.
+    private DailyTotalTable() {}
+
+    /*
+     * Migrations
+     */
+
+    private static final String SQL_SELECT_LOGGED_ACTIVITIES = "select distinct "
+            + CompletedActivityTable.COLUMN_ACTIVITY_NAME_ID + ", "
+            + CompletedActivityTable.COLUMN_ACTIVITY_START + ", "
+            + CompletedActivityTable.COLUMN_ACTIVITY_END
+            + " from " + CompletedActivityTable.TABLE_NAME;
+
+    /**
+     * Create the daily totals and fill them in from every activity that has already been logged.
+     *
+     * The days are in the default zone, which {@link #moveFromVersion8To9(SQLiteDatabase)} records later in the same
+     * upgrade.
+     */
+    public static void moveFromVersion6To7(SQLiteDatabase database) {
+        AppLog.d(TAG, "Creating the daily totals");
+        createTable(database);
+        DateTimeZone zone = DateTimeZone.getDefault();
+
+        SQLiteStatement insertEmptyTotal = database.compileStatement(SQL_INSERT_EMPTY_TOTAL);
+        SQLiteStatement addDuration = database.compileStatement(SQL_ADD_DURATION);
+        Cursor cursor = database.rawQuery(SQL_SELECT_LOGGED_ACTIVITIES, null);
+        int activities = 0;
+        try {
+            cursor.moveToFirst();
+            while (!cursor.isAfterLast()) {
+                // Only the times matter for the totals, the name is carried by its id
+                Activity activity = new Activity("", new DateTime(cursor.getLong(1)), new DateTime(cursor.getLong(2)));
+                addActivity(activity, zone, cursor.getInt(0), 1, insertEmptyTotal, addDuration);
+                activities++;
+                cursor.moveToNext();
+            }
+        } finally {
+            cursor.close();
+            insertEmptyTotal.close();
+            addDuration.close();
+        }
+        AppLog.d(TAG, "Added %s activities to the daily totals", activities);
+    }
+
+    /**
+     * Record the zone the days are in.  Totals written before this were split in the default zone at the time, so the
+     * current default is the best guess for them.
+     */
+    public static void moveFromVersion8To9(SQLiteDatabase database) {
+        DateTimeZone zone = DateTimeZone.getDefault();
+        AppLog.d(TAG, "Keeping the daily totals in %s", zone);
+        createZoneTable(database, zone);
+    }
+}
@@ -6,18 +6,88 @@ package com.letsdoit.logger.data.sqlite;
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
-import android.util.Log;
 
 import com.google.common.base.Preconditions;
+import com.letsdoit.logger.data.store.ActivityChangeListener;
+import com.letsdoit.logger.data.store.ActivityChangeNotifier;
+import com.letsdoit.logger.logging.AppLog;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
 
 public class LoggerDatabaseHelper extends SQLiteOpenHelper {
 
     public static final String DATABASE_NAME = "activities.db";
 
-    private static final int DATABASE_VERSION = 5;
+    private static final int DATABASE_VERSION = 9;
+
+    private static LoggerDatabaseHelper instance;
+
+    // How many open DAOs are using the database.  The database is closed when the last one closes.
+    private int references = 0;
 
-    public LoggerDatabaseHelper(Context context) {
+    // Everyone who wants to know about writes to this database, through any DAO
+    private final ActivityChangeNotifier changeNotifier = new ActivityChangeNotifier();
+
+    /**
+     * Use {@link #getInstance(Context)} instead, so the whole process shares one connection pool.  Only tests that
+     * need a database of their own should create a helper directly.
+     */
+    LoggerDatabaseHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        // Readers get their own connections and see the last commit instead of waiting for writers to finish
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    /**
+     * @param context any context, only its application context is kept
+     * @return the helper shared by every DAO in the process
+     */
+    public static synchronized LoggerDatabaseHelper getInstance(Context context) {
+        if (instance == null) {
+            instance = new LoggerDatabaseHelper(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /**
+     * Take a reference to the database, opening it if nobody else is using it.  Every call must be balanced by a
+     * call to {@link #releaseDatabase()}.
+     *
+     * @return the database, safe to use from any thread until the reference is released
+     */
+    public synchronized SQLiteDatabase acquireDatabase() {
+        SQLiteDatabase database = getWritableDatabase();
+        references++;
+        return database;
+    }
+
+    /**
+     * Give back a reference taken by {@link #acquireDatabase()}.  Closes the database when the last reference is
+     * released.
+     */
+    public synchronized void releaseDatabase() {
+        Preconditions.checkState(references > 0, "The database was released more times than it was acquired.");
+        references--;
+        if (references == 0) {
+            close();
+        }
+    }
+
+    public void addChangeListener(ActivityChangeListener listener) {
+        changeNotifier.addListener(listener);
+    }
+
+    public void removeChangeListener(ActivityChangeListener listener) {
+        changeNotifier.removeListener(listener);
+    }
+
+    /**
+     * Tell the listeners that Activities in the range were committed.
+     */
+    void notifyChanged(DateTime start, DateTime end) {
+        changeNotifier.notifyChanged(start, end);
     }
 
     /**
@@ -26,7 +96,10 @@ public class LoggerDatabaseHelper extends SQLiteOpenHelper {
      */
     @Override
     public void onCreate(SQLiteDatabase database) {
+        ActivityNameTable.createTable(database);
         CompletedActivityTable.createTable(database);
+        DailyTotalTable.createTable(database);
+        DailyTotalTable.createZoneTable(database, DateTimeZone.getDefault());
     }
 
     /**
@@ -38,7 +111,7 @@ public class LoggerDatabaseHelper extends SQLiteOpenHelper {
      */
     @Override
     public void onUpgrade(SQLiteDatabase db, int currentVersion, int newVersion) {
-        Log.w(LoggerDatabaseHelper.class.getName(),"Upgrading database from version " + currentVersion + " to " +
+        AppLog.w(LoggerDatabaseHelper.class.getName(), "Upgrading database from version %s to %s", currentVersion,
                 newVersion);
 
         Preconditions.checkArgument(currentVersion < newVersion, "Downgrading the database version is not supported. " +
@@ -57,8 +130,14 @@ public class LoggerDatabaseHelper extends SQLiteOpenHelper {
                 // All table versions up to 5 were static testing databses.  From 5 onward, we have real user data!
                 CompletedActivityTable.moveFromVersion4To5(db);
             case 5:
+                CompletedActivityTable.moveFromVersion5To6(db);
             case 6:
+                DailyTotalTable.moveFromVersion6To7(db);
             case 7:
+                CompletedActivityTable.moveFromVersion7To8(db);
+            case 8:
+                DailyTotalTable.moveFromVersion8To9(db);
+            case 9:
                 // All the cases except the last one should fall through.  The last one breaks to prevent falling
                 // into the default case.
                 break;
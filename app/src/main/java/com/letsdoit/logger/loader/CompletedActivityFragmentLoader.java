@@ -2,46 +2,74 @@ package com.letsdoit.logger.loader;
 
 import android.content.AsyncTaskLoader;
 import android.content.Context;
-import android.util.Log;
+import android.os.Handler;
+import android.os.Looper;
 
 import com.google.common.base.Preconditions;
-import com.letsdoit.logger.data.dao.Activity;
-import com.letsdoit.logger.data.dao.ActivityFragment;
-import com.letsdoit.logger.data.sqlite.CompletedActivityFragmentsDAO;
+import com.letsdoit.logger.data.dao.ActivityTimeline;
+import com.letsdoit.logger.data.store.ActivityChangeListener;
+import com.letsdoit.logger.data.store.ActivityStore;
+import com.letsdoit.logger.logging.AppLog;
+import com.letsdoit.logger.metrics.Metrics;
+import com.letsdoit.logger.metrics.Timer;
+import com.letsdoit.logger.view.RenderCache;
+import com.letsdoit.logger.view.TimelineModel;
 
 import org.joda.time.DateTime;
 import org.joda.time.Period;
 
-import java.util.List;
-
 import static org.joda.time.Period.hours;
 
 /**
  * Created by Andrey on 7/12/2014.
  */
-public class CompletedActivityFragmentLoader extends AsyncTaskLoader<List<Activity>> {
+public class CompletedActivityFragmentLoader extends AsyncTaskLoader<TimelineModel>
+        implements ActivityChangeListener {
 
     private static final String TAG = "ADP_CompletedActivityFragmentLoader";
-    private static final boolean DEBUG = true;
     public static final Period DEFAULT_DURATION_TO_LOAD = hours(8);
+    private static final Timer LOAD_TIMER = Metrics.timer("CompletedActivityFragmentLoader.loadInBackground");
+    // A week of half hours, a few times what fits in the window, so scrolling back never renders again
+    private static final int RENDER_CACHE_HALF_HOURS = 7 * 48;
 
-    private final CompletedActivityFragmentsDAO dao;
+    private final ActivityStore store;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
 
     // The time range we are querying for
     private DateTime start;
     private DateTime end;
 
     // We hold a reference to the Loader's data here.
-    private List<Activity> cachedActivities;
+    private TimelineModel cachedActivities;
+
+    // The most recently loaded range and its activities.  Scrolling only moves the range by a few hours, so the next
+    // load only has to query the newly exposed part.  Written and read on the loader's background thread.
+    private volatile LoadedWindow loadedWindow;
+
+    // The RenderBlocks of recently loaded half hours, so a load only renders the half hours whose content changed
+    private final RenderCache renderCache = TimelineModel.newRenderCache(RENDER_CACHE_HALF_HOURS);
+
+    // Whether the loader holds its own reference to the store.  Taken by the first load, since the loader can outlive
+    // the Activity that created it, and given back when the loader is reset.  Guarded by storeLock.
+    private final Object storeLock = new Object();
+    private boolean isStoreOpen = false;
+    private boolean isStoreReleased = false;
 
-    public CompletedActivityFragmentLoader(Context context, CompletedActivityFragmentsDAO dao) {
+    // The hours written to since the last load started, or null if none were.  Only these hours have to be re-queried.
+    private final Object changeLock = new Object();
+    private DateTime changedStart;
+    private DateTime changedEnd;
+
+    public CompletedActivityFragmentLoader(Context context, ActivityStore store) {
         // Loaders may be used across multiple Activities (assuming they aren't
         // bound to the LoaderManager), so NEVER hold a reference to the context
         // directly. Doing so will cause you to leak an entire Activity's context.
         // The superclass constructor will store a reference to the Application
         // Context instead, and can be retrieved with a call to getContext().
         super(context);
-        this.dao = dao;
+        this.store = store;
+        // The store is opened by the first load, on the background thread, since opening may upgrade the database
+        store.addChangeListener(this);
 
         // Load activities for the past 8 hours by default
         this.end = DateTime.now();
@@ -53,22 +81,98 @@ public class CompletedActivityFragmentLoader extends AsyncTaskLoader<List<Activi
     /****************************************************/
 
     /**
-     * This method is called on a background thread and generates a List of
-     * {@link com.letsdoit.logger.data.dao.Activity} objects.
+     * This method is called on a background thread and generates a
+     * {@link com.letsdoit.logger.view.TimelineModel} of the activities in the range, already partitioned into
+     * hours and rendered, so the UI thread only has to bind it to views.
      */
     @Override
-    public List<Activity> loadInBackground() {
+    public TimelineModel loadInBackground() {
         Preconditions.checkArgument(start != null, "The start time cannot be null.");
         Preconditions.checkArgument(end != null, "The end time cannot be null.");
 
-        Log.i(TAG, "+++ loadInBackground() called! +++");
+        AppLog.d(TAG, "+++ loadInBackground() called! +++");
+        long startNanos = LOAD_TIMER.start();
+        try {
+            return load();
+        } finally {
+            LOAD_TIMER.stop(startNanos);
+        }
+    }
+
+    private TimelineModel load() {
+        if (!openStore()) {
+            AppLog.w(TAG, "The loader was reset, not loading");
+            return null;
+        }
+
+        DateTime start = this.start;
+        DateTime end = this.end;
+        LoadedWindow previous = loadedWindow;
+
+        DateTime changedStart;
+        DateTime changedEnd;
+        synchronized (changeLock) {
+            changedStart = this.changedStart;
+            changedEnd = this.changedEnd;
+            this.changedStart = null;
+            this.changedEnd = null;
+        }
 
-        dao.open();
-        // Retrieve activities in the specified range
-        List<Activity> activities = dao.getActivitiesInRange(start, end);
-        dao.close();
+        ActivityTimeline activities;
+        if (previous == null || !previous.overlaps(start, end)) {
+            // Retrieve activities in the specified range
+            activities = store.getTimelineInRange(start, end);
+        } else {
+            activities = previous.activities;
+            if (changedStart != null && previous.overlaps(changedStart, changedEnd)) {
+                // Re-query only the hours that were written to and patch them into what was loaded last time
+                DateTime patchStart = changedStart.isAfter(previous.start) ? changedStart : previous.start;
+                DateTime patchEnd = changedEnd.isBefore(previous.end) ? changedEnd : previous.end;
+                activities = ActivityTimeline.splice(activities, store.getTimelineInRange(patchStart, patchEnd),
+                        patchStart.getMillis(), patchEnd.getMillis());
+            }
 
-        return activities;
+            // Only retrieve the slices that weren't loaded last time and drop what scrolled out of the range
+            if (start.isBefore(previous.start)) {
+                activities = ActivityTimeline.merge(store.getTimelineInRange(start, previous.start), activities,
+                        start.getMillis(), end.getMillis());
+            }
+            if (end.isAfter(previous.end)) {
+                activities = ActivityTimeline.merge(activities, store.getTimelineInRange(previous.end, end),
+                        start.getMillis(), end.getMillis());
+            }
+            if (!start.isBefore(previous.start) && !end.isAfter(previous.end)) {
+                // No new slices to load, only evict what fell out of the range
+                activities = ActivityTimeline.merge(activities, activities, start.getMillis(), end.getMillis());
+            }
+        }
+
+        TimelineModel model;
+        if (previous != null && previous.isRange(start, end) && changedStart != null) {
+            // Only activities were written, so only re-render the hours they touched and keep the rest of the model
+            model = previous.model.update(activities, changedStart, changedEnd, renderCache);
+        } else {
+            model = TimelineModel.build(activities, start, end, renderCache);
+            if (previous != null) {
+                // Let the list rebind only the rows that changed and keep its place, by hour
+                model = model.diffAgainst(previous.model);
+            }
+        }
+        loadedWindow = new LoadedWindow(start, end, activities, model);
+        if (AppLog.isDebugEnabled()) {
+            AppLog.d(TAG, "Render cache hits %s, misses %s", renderCache.getHitCount(), renderCache.getMissCount());
+        }
+        return model;
+    }
+
+    /**
+     * The data source changed, so none of the previously loaded activities can be reused.  The next load will query
+     * the whole range.
+     */
+    @Override
+    public void onContentChanged() {
+        loadedWindow = null;
+        super.onContentChanged();
     }
 
     /*******************************************/
@@ -81,9 +185,9 @@ public class CompletedActivityFragmentLoader extends AsyncTaskLoader<List<Activi
      * forward the results to the client through a call to onLoadFinished.
      */
     @Override
-    public void deliverResult(List<Activity> activities) {
+    public void deliverResult(TimelineModel activities) {
         if (isReset()) {
-            if (DEBUG) Log.w(TAG, "+++ Warning! An async query came in while the Loader was reset! +++");
+            AppLog.w(TAG, "+++ Warning! An async query came in while the Loader was reset! +++");
             // The Loader has been reset; ignore the result and invalidate the data.
             // This can happen when the Loader is reset while an asynchronous query
             // is working in the background. That is, when the background thread
@@ -98,11 +202,11 @@ public class CompletedActivityFragmentLoader extends AsyncTaskLoader<List<Activi
 
         // Hold a reference to the old data so it doesn't get garbage collected.
         // We must protect it until the new data has been delivered.
-        List<Activity> oldActivities = this.cachedActivities;
+        TimelineModel oldActivities = this.cachedActivities;
         this.cachedActivities = activities;
 
         if (isStarted()) {
-            if (DEBUG) Log.i(TAG, "+++ Delivering results to the LoaderManager for" +
+            AppLog.d(TAG, "+++ Delivering results to the LoaderManager for" +
                     " the ListFragment to display! +++");
             // If the Loader is in a started state, have the superclass deliver the
             // results to the client.
@@ -111,7 +215,7 @@ public class CompletedActivityFragmentLoader extends AsyncTaskLoader<List<Activi
 
         // Invalidate the old data as we don't need it any more.
         if (oldActivities != null && oldActivities != activities) {
-            if (DEBUG) Log.i(TAG, "+++ Releasing any old data associated with this Loader. +++");
+            AppLog.d(TAG, "+++ Releasing any old data associated with this Loader. +++");
             releaseResources(oldActivities);
         }
     }
@@ -122,33 +226,31 @@ public class CompletedActivityFragmentLoader extends AsyncTaskLoader<List<Activi
 
     @Override
     protected void onStartLoading() {
-        if (DEBUG) Log.i(TAG, "+++ onStartLoading() called! +++");
+        AppLog.d(TAG, "+++ onStartLoading() called! +++");
 
         if (cachedActivities != null) {
             // Deliver any previously loaded data immediately.
-            if (DEBUG) Log.i(TAG, "+++ Delivering previously loaded data to the client...");
+            AppLog.d(TAG, "+++ Delivering previously loaded data to the client...");
             deliverResult(cachedActivities);
         }
 
-        // TODO: Register the observers that will notify the Loader when changes are made.
-
         if (takeContentChanged()) {
             // When the observer detects a new installed application, it will call
             // onContentChanged() on the Loader, which will cause the next call to
             // takeContentChanged() to return true. If this is ever the case (or if
             // the current data is null), we force a new load.
-            if (DEBUG) Log.i(TAG, "+++ A content change has been detected... so force load! +++");
+            AppLog.d(TAG, "+++ A content change has been detected... so force load! +++");
             forceLoad();
         } else if (cachedActivities == null) {
             // If the current data is null... then we should make it non-null! :)
-            if (DEBUG) Log.i(TAG, "+++ The current data is data is null... so force load! +++");
+            AppLog.d(TAG, "+++ The current data is data is null... so force load! +++");
             forceLoad();
         }
     }
 
     @Override
     protected void onStopLoading() {
-        if (DEBUG) Log.i(TAG, "+++ onStopLoading() called! +++");
+        AppLog.d(TAG, "+++ onStopLoading() called! +++");
 
         // The Loader has been put in a stopped state, so we should attempt to
         // cancel the current load (if there is one).
@@ -161,7 +263,7 @@ public class CompletedActivityFragmentLoader extends AsyncTaskLoader<List<Activi
 
     @Override
     protected void onReset() {
-        if (DEBUG) Log.i(TAG, "+++ onReset() called! +++");
+        AppLog.d(TAG, "+++ onReset() called! +++");
 
         // Ensure the loader is stopped.
         onStopLoading();
@@ -171,14 +273,18 @@ public class CompletedActivityFragmentLoader extends AsyncTaskLoader<List<Activi
             releaseResources(cachedActivities);
             cachedActivities = null;
         }
+        loadedWindow = null;
+        renderCache.clear();
+        store.removeChangeListener(this);
+        releaseStore();
 
         // The Loader is being reset, so we should stop monitoring for changes.
 
     }
 
     @Override
-    public void onCanceled(List<Activity> activities) {
-        if (DEBUG) Log.i(TAG, "+++ onCanceled() called! +++");
+    public void onCanceled(TimelineModel activities) {
+        AppLog.d(TAG, "+++ onCanceled() called! +++");
 
         // Attempt to cancel the current asynchronous load.
         super.onCanceled(activities);
@@ -190,23 +296,93 @@ public class CompletedActivityFragmentLoader extends AsyncTaskLoader<List<Activi
 
     @Override
     public void forceLoad() {
-        if (DEBUG) Log.i(TAG, "+++ forceLoad() called! +++");
+        AppLog.d(TAG, "+++ forceLoad() called! +++");
         super.forceLoad();
     }
 
+    /**
+     * Take the loader's reference to the store if it doesn't have one yet.  Called on the background thread, so a
+     * database upgrade on the first open never blocks the UI.
+     *
+     * @return false if the loader was already reset and must not open the store again
+     */
+    private boolean openStore() {
+        synchronized (storeLock) {
+            if (isStoreReleased) {
+                return false;
+            }
+            if (!isStoreOpen) {
+                store.open();
+                isStoreOpen = true;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Give back the loader's reference to the store, if a load took one.
+     */
+    private void releaseStore() {
+        synchronized (storeLock) {
+            if (isStoreOpen) {
+                store.close();
+                isStoreOpen = false;
+            }
+            isStoreReleased = true;
+        }
+    }
+
     /**
      * Helper method to take care of releasing resources associated with an
      * actively loaded data set.
      */
-    private void releaseResources(List<Activity> activities) {
-        // For a simple List, there is nothing to do. For something like a Cursor,
+    private void releaseResources(TimelineModel activities) {
+        // For an immutable model, there is nothing to do. For something like a Cursor,
         // we would close it in this method. All resources associated with the
         // Loader should be released here.
     }
 
-    /*********************************************************************/
-    /** TODO: (4) Observer which receives notifications when the data changes **/
-    /*********************************************************************/
+    /******************************************************************/
+    /** (4) Observer which receives notifications when the data changes **/
+    /******************************************************************/
+
+    /**
+     * Activities were written to the database.  Remember which hours changed, so the next load only re-queries those,
+     * and reload if we're showing them.  Called on the writing thread.
+     */
+    @Override
+    public void onActivitiesChanged(DateTime changeStart, DateTime changeEnd) {
+        // Round out to whole hours, the rows of the list
+        final DateTime hourStart = changeStart.hourOfDay().roundFloorCopy();
+        final DateTime hourEnd = changeEnd.hourOfDay().roundCeilingCopy();
+        synchronized (changeLock) {
+            if (changedStart == null || hourStart.isBefore(changedStart)) {
+                changedStart = hourStart;
+            }
+            if (changedEnd == null || hourEnd.isAfter(changedEnd)) {
+                changedEnd = hourEnd;
+            }
+        }
+
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                LoadedWindow window = loadedWindow;
+                boolean isLoaded = window != null && window.overlaps(hourStart, hourEnd);
+                boolean isRequested = start.isBefore(hourEnd) && hourStart.isBefore(end);
+                if (isLoaded || isRequested) {
+                    onRangeChanged();
+                }
+            }
+        });
+    }
+
+    /**
+     * Reload, reusing the previously loaded activities outside of the changed hours.
+     */
+    private void onRangeChanged() {
+        super.onContentChanged();
+    }
 
     public void setStart(DateTime start) {
         this.start = start;
@@ -223,4 +399,29 @@ public class CompletedActivityFragmentLoader extends AsyncTaskLoader<List<Activi
     public DateTime getEnd() {
         return end;
     }
+
+    /**
+     * A range of time, all of the activities overlapping it and the model built from them, as of the last load.
+     */
+    private static class LoadedWindow {
+        private final DateTime start;
+        private final DateTime end;
+        private final ActivityTimeline activities;
+        private final TimelineModel model;
+
+        private LoadedWindow(DateTime start, DateTime end, ActivityTimeline activities, TimelineModel model) {
+            this.start = start;
+            this.end = end;
+            this.activities = activities;
+            this.model = model;
+        }
+
+        private boolean isRange(DateTime otherStart, DateTime otherEnd) {
+            return start.equals(otherStart) && end.equals(otherEnd);
+        }
+
+        private boolean overlaps(DateTime otherStart, DateTime otherEnd) {
+            return start.isBefore(otherEnd) && otherStart.isBefore(end);
+        }
+    }
 }
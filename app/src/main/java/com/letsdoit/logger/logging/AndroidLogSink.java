@@ -0,0 +1,17 @@
+package com.letsdoit.logger.logging;
+
+import android.util.Log;
+
+/**
+ * Writes to logcat.
+ */
+public class AndroidLogSink implements LogSink {
+
+    @Override
+    public void println(int level, String tag, String message, Throwable throwable) {
+        if (throwable != null) {
+            message = message + "\n" + Log.getStackTraceString(throwable);
+        }
+        Log.println(level, tag, message);
+    }
+}
@@ -0,0 +1,20 @@
+package com.letsdoit.logger.metrics;
+
+import android.os.Trace;
+
+/**
+ * Marks the timed stages as systrace sections, so they show up next to the framework's own sections (inflate,
+ * measure, draw) when capturing a trace with the "app" category.
+ */
+public class SystraceTracer implements Tracer {
+
+    @Override
+    public void beginSection(String name) {
+        Trace.beginSection(name);
+    }
+
+    @Override
+    public void endSection() {
+        Trace.endSection();
+    }
+}
@@ -1,11 +1,11 @@
 package com.letsdoit.logger.view;
 
-import android.util.Log;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
 import com.letsdoit.logger.data.dao.ActivityFragment;
 import com.letsdoit.logger.data.dao.ActivityInterval;
+import com.letsdoit.logger.logging.AppLog;
 
 import org.joda.time.DateTime;
 import org.joda.time.Duration;
@@ -87,7 +87,7 @@ public class DisplayBlock {
             //Log.d(TAG, "Fragment=[" + fragment + "]");
             if (fragment.getFragmentEnd().isBefore(start)) {
                 // Skip it, it's not in the specified period
-                Log.d(TAG, "Fragment ends before the start of the interval.  Continuing.");
+                AppLog.d(TAG, "Fragment ends before the start of the interval.  Continuing.");
                 continue;
             } else if (fragment.getFragmentStart().isAfter(end)) {
                 // We're past the specified period
@@ -111,8 +111,8 @@ public class DisplayBlock {
                 blocks.add(ActivityInterval.fromFragment(fragment.clipEnd(end)));
             } else {
                 // This should never happen
-                Log.e(TAG, String.format("Activity fragment %s starts before the previous  fragment ends %s",
-                        fragment, prevFragmentEnd));
+                AppLog.e(TAG, "Activity fragment %s starts before the previous  fragment ends %s",
+                        fragment, prevFragmentEnd);
             }
             prevFragmentEnd = fragment.getFragmentEnd();
         }
@@ -44,8 +44,7 @@ public class EmptyInterval {
         Preconditions.checkArgument(!reference.isAfter(start), "The reference time must be earlier or equal " +
                 "to the start time.");
         Preconditions.checkArgument(start.isBefore(end), "The start must be earlier than the end.");
-        // TODO: make sure the spacing isn't zero
-        // Preconditions.checkArgument(spacing);
+        AlignedBoundaries.checkSpacing(spacing.getMillis());
 
         List<ActivityInterval> blocks = Lists.newArrayList();
         DateTime nextPartition = getNextPartition(reference, start, spacing);
@@ -59,12 +58,11 @@ public class EmptyInterval {
         return blocks;
     }
 
+    /**
+     * @return the first partition after prev, where partitions are spaced from the reference
+     */
     protected static DateTime getNextPartition(DateTime reference, DateTime prev, Duration spacing) {
-        DateTime time = reference;
-        while (!time.isAfter(prev)) {
-            time = time.plus(spacing);
-        }
-        return time;
+        return AlignedBoundaries.next(reference, prev, spacing);
     }
 
     @Override
@@ -0,0 +1,246 @@
+package com.letsdoit.logger.view;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.text.TextPaint;
+import android.text.TextUtils;
+import android.util.AttributeSet;
+import android.view.MotionEvent;
+import android.view.SoundEffectConstants;
+import android.view.View;
+
+import com.google.common.collect.ImmutableList;
+import com.letsdoit.logger.R;
+import com.letsdoit.logger.data.dao.ActivityInterval;
+
+import java.util.List;
+
+/**
+ * Draws the RenderBlocks of one half-hour ActivityInterval directly onto a Canvas.
+ *
+ * Each block is a rectangle as wide as its share of the half hour, labelled with the name of its first activity.
+ * Binding new blocks only recomputes the block edges and labels; there are no child views to inflate, measure or
+ * lay out while the list scrolls.  Taps are mapped back to the RenderBlock under the finger.
+ */
+public class HalfHourView extends View {
+
+    /**
+     * Receives taps on the blocks of a HalfHourView.
+     */
+    public interface OnBlockClickListener {
+        void onBlockClick(HalfHourView view, RenderBlock block);
+    }
+
+    // Blocks narrower than this fraction of the half hour don't get a label
+    private static final float MIN_LABELLED_FRACTION = 0.1f;
+
+    private static final int FUTURE_ALPHA = 64;
+    private static final int SECOND_HALF_ALPHA = 128;
+    private static final int PAST_ALPHA = 255;
+
+    private final Paint freeTimePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint activityPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint selectedPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final TextPaint textPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+    private final RectF blockRect = new RectF();
+
+    private final int rowHeight;
+    private final float blockGap;
+    private final float blockPadding;
+
+    private List<RenderBlock> blocks = ImmutableList.of();
+    private long intervalStartMillis;
+    private long intervalDurationMillis = 1;
+    private long nowMillis;
+    private boolean isSecondHalf;
+    private RenderBlock selectedBlock;
+    private OnBlockClickListener listener;
+
+    // Cached per bind and size: the left and right edge and the label of every block
+    private float[] blockLefts = new float[0];
+    private float[] blockRights = new float[0];
+    private CharSequence[] labels = new CharSequence[0];
+
+    public HalfHourView(Context context) {
+        this(context, null);
+    }
+
+    public HalfHourView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+
+        Resources resources = context.getResources();
+        rowHeight = resources.getDimensionPixelSize(R.dimen.half_hour_row_height);
+        blockGap = resources.getDimension(R.dimen.block_gap);
+        blockPadding = resources.getDimension(R.dimen.block_padding);
+
+        freeTimePaint.setColor(Color.LTGRAY);
+        activityPaint.setColor(Color.rgb(0x99, 0xcc, 0xff));
+        selectedPaint.setColor(Color.DKGRAY);
+        textPaint.setColor(Color.BLACK);
+        textPaint.setTextSize(resources.getDimension(R.dimen.block_text_size));
+    }
+
+    public void setOnBlockClickListener(OnBlockClickListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Bind the view to a half hour.
+     *
+     * @param interval the half hour being displayed
+     * @param blocks the rendered blocks of the half hour
+     * @param isSecondHalf whether this is the second half of the hour, which is drawn lighter
+     * @param nowMillis the current time.  Blocks ending after it are drawn faded.
+     * @param selectedBlock the block that starts the current selection, or null if there is none
+     */
+    public void setBlocks(ActivityInterval interval, List<RenderBlock> blocks, boolean isSecondHalf, long nowMillis,
+                          RenderBlock selectedBlock) {
+        this.blocks = blocks;
+        this.intervalStartMillis = interval.getStart().getMillis();
+        this.intervalDurationMillis = interval.getDuration().getMillis();
+        this.isSecondHalf = isSecondHalf;
+        this.nowMillis = nowMillis;
+        this.selectedBlock = selectedBlock;
+
+        layoutBlocks(getWidth());
+        invalidate();
+    }
+
+    public List<RenderBlock> getBlocks() {
+        return blocks;
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int width = MeasureSpec.getSize(widthMeasureSpec);
+        int height = resolveSize(rowHeight + getPaddingTop() + getPaddingBottom(), heightMeasureSpec);
+        setMeasuredDimension(width, height);
+    }
+
+    @Override
+    protected void onSizeChanged(int width, int height, int oldWidth, int oldHeight) {
+        super.onSizeChanged(width, height, oldWidth, oldHeight);
+        layoutBlocks(width);
+    }
+
+    /**
+     * Compute the edges and ellipsized labels of the blocks for the width, so onDraw doesn't have to.
+     */
+    private void layoutBlocks(int width) {
+        int numBlocks = blocks.size();
+        if (blockLefts.length < numBlocks) {
+            blockLefts = new float[numBlocks];
+            blockRights = new float[numBlocks];
+            labels = new CharSequence[numBlocks];
+        }
+
+        float contentLeft = getPaddingLeft();
+        float contentWidth = Math.max(0, width - getPaddingLeft() - getPaddingRight());
+
+        for (int i = 0; i < numBlocks; i++) {
+            RenderBlock block = blocks.get(i);
+            blockLefts[i] = contentLeft + toFraction(block.getBlockStart().getMillis()) * contentWidth;
+            blockRights[i] = contentLeft + toFraction(block.getBlockEnd().getMillis()) * contentWidth;
+
+            float blockFraction = (blockRights[i] - blockLefts[i]) / Math.max(1, contentWidth);
+            float labelWidth = blockRights[i] - blockLefts[i] - blockGap - 2 * blockPadding;
+            if (block.getFragments().isEmpty() || blockFraction < MIN_LABELLED_FRACTION || labelWidth <= 0) {
+                labels[i] = null;
+            } else {
+                String activityName = block.getFragments().get(0).getActivityName();
+                labels[i] = TextUtils.ellipsize(activityName, textPaint, labelWidth, TextUtils.TruncateAt.END);
+            }
+        }
+    }
+
+    // Blocks are re-rendered on every load, so match the selection by time rather than by identity
+    private boolean isSelected(RenderBlock block) {
+        return selectedBlock != null && block.getBlockStart().isEqual(selectedBlock.getBlockStart());
+    }
+
+    private float toFraction(long timeMillis) {
+        return (float) (timeMillis - intervalStartMillis) / (float) intervalDurationMillis;
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        float top = getPaddingTop() + blockGap / 2;
+        float bottom = getHeight() - getPaddingBottom() - blockGap / 2;
+        float textBaseline = (top + bottom - textPaint.ascent() - textPaint.descent()) / 2;
+
+        for (int i = 0; i < blocks.size(); i++) {
+            RenderBlock block = blocks.get(i);
+
+            Paint paint;
+            if (isSelected(block)) {
+                paint = selectedPaint;
+            } else if (block.getFragments().isEmpty()) {
+                paint = freeTimePaint;
+            } else {
+                paint = activityPaint;
+            }
+
+            int alpha;
+            if (block.getBlockEnd().getMillis() > nowMillis) {
+                alpha = FUTURE_ALPHA;
+            } else if (isSecondHalf) {
+                alpha = SECOND_HALF_ALPHA;
+            } else {
+                alpha = PAST_ALPHA;
+            }
+            paint.setAlpha(alpha);
+
+            blockRect.set(blockLefts[i] + blockGap / 2, top, blockRights[i] - blockGap / 2, bottom);
+            canvas.drawRect(blockRect, paint);
+
+            if (labels[i] != null) {
+                textPaint.setAlpha(alpha);
+                canvas.drawText(labels[i], 0, labels[i].length(), blockRect.left + blockPadding, textBaseline,
+                        textPaint);
+            }
+        }
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                return blockAt(event.getX()) != null;
+            case MotionEvent.ACTION_UP:
+                RenderBlock block = blockAt(event.getX());
+                if (block != null && listener != null) {
+                    playSoundEffect(SoundEffectConstants.CLICK);
+                    listener.onBlockClick(this, block);
+                }
+                return true;
+            default:
+                return super.onTouchEvent(event);
+        }
+    }
+
+    /**
+     * @param x the horizontal position of a tap, in view coordinates
+     * @return the RenderBlock drawn at the position, or null if there is none
+     */
+    public RenderBlock blockAt(float x) {
+        // The blocks are sorted and back to back, so find the first one whose right edge is past the tap
+        int low = 0;
+        int high = blocks.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (blockRights[mid] <= x) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        if (low < blocks.size() && blockLefts[low] <= x) {
+            return blocks.get(low);
+        }
+        return null;
+    }
+}
@@ -1,24 +1,49 @@
 package com.letsdoit.logger.view;
 
+import com.google.common.collect.ImmutableList;
 import com.letsdoit.logger.data.dao.ActivityInterval;
 
+import java.util.List;
+
 /**
+ * One row of the hour list: the two half-hour ActivityIntervals and the RenderBlocks they render into.
+ *
  * Created by Andrey on 1/17/2015.
  */
 public class Hour {
-    private ActivityInterval firstHalfHour;
-    private ActivityInterval secondHalfHour;
+    private final ActivityInterval firstHalfHour;
+    private final ImmutableList<RenderBlock> firstHalfHourBlocks;
+    private final ActivityInterval secondHalfHour;
+    private final ImmutableList<RenderBlock> secondHalfHourBlocks;
 
-    public Hour(ActivityInterval firstHalfHour, ActivityInterval secondHalfHour) {
+    public Hour(ActivityInterval firstHalfHour, List<RenderBlock> firstHalfHourBlocks,
+                ActivityInterval secondHalfHour, List<RenderBlock> secondHalfHourBlocks) {
         this.firstHalfHour = firstHalfHour;
+        this.firstHalfHourBlocks = ImmutableList.copyOf(firstHalfHourBlocks);
         this.secondHalfHour = secondHalfHour;
+        this.secondHalfHourBlocks = ImmutableList.copyOf(secondHalfHourBlocks);
+    }
+
+    /**
+     * @return a stable id for the row, the epoch millis of the start of the hour
+     */
+    public long getId() {
+        return firstHalfHour.getStart().getMillis();
     }
 
     public ActivityInterval getFirstHalfHour() {
         return firstHalfHour;
     }
 
+    public List<RenderBlock> getFirstHalfHourBlocks() {
+        return firstHalfHourBlocks;
+    }
+
     public ActivityInterval getSecondHalfHour() {
         return secondHalfHour;
     }
+
+    public List<RenderBlock> getSecondHalfHourBlocks() {
+        return secondHalfHourBlocks;
+    }
 }
@@ -2,194 +2,256 @@ package com.letsdoit.logger.view;
 
 import android.content.Context;
 import android.graphics.Color;
-import android.graphics.Point;
-import android.util.DisplayMetrics;
-import android.util.Log;
-import android.util.TypedValue;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.view.WindowManager;
-import android.widget.ArrayAdapter;
-import android.widget.Button;
-import android.widget.LinearLayout;
+import android.widget.BaseAdapter;
+import android.widget.ListView;
 import android.widget.TextView;
 
+import com.google.common.collect.ImmutableList;
 import com.letsdoit.logger.R;
-import com.letsdoit.logger.data.dao.Activity;
 import com.letsdoit.logger.data.dao.ActivityInterval;
-import com.letsdoit.logger.data.dao.Partitioner;
+import com.letsdoit.logger.logging.AppLog;
+import com.letsdoit.logger.metrics.Metrics;
+import com.letsdoit.logger.metrics.Timer;
 
 import org.joda.time.DateTime;
-import org.joda.time.Duration;
-import org.joda.time.Period;
 
 import java.util.List;
 
 /**
+ * Binds the hours of a TimelineModel to the rows of the hour list.
+ *
+ * Each row's id is the epoch millis of its hour, so rows keep their identity when the loaded range moves.  New data
+ * comes with an {@link HourDiff} computed by the loader, so only the rows that changed are bound again and the list
+ * stays on the hour it was showing.
+ *
  * Created by Andrey on 7/12/2014.
  */
-public class HourAdapter extends ArrayAdapter<Hour> {
+public class HourAdapter extends BaseAdapter {
     private static final String TAG = "ADP_HourAdapter";
-    public static final Duration ACTIVITY_INTERVAL_DURATION = Period.minutes(30).toStandardDuration();
-    private static Duration HALF_HOUR = new Duration(30 * 60 * 1000);
-    private static Duration FREE_TIME_PARTITION_DURATION = new Duration(5 * 60 * 1000);
-    private static Duration MIN_BLOCK_DURATION = new Duration(4 * 60 * 1000);
+    private static final Timer GET_VIEW_TIMER = Metrics.timer("HourAdapter.getView");
 
-    // The width of the hour label on the left side of the screen
-    private static int HOUR_FIELD_WIDTH_IN_DIP = 24;
-    // The number of blocks to subdivide the free areas in each half-hour row
-    private static int NUM_BLOCKS_IN_HALF_HOUR = 6;
+    private final LayoutInflater inflater;
+    private final HalfHourView.OnBlockClickListener blockClickListener;
 
-    private int pixelsInHalfHour;
+    private TimelineModel model;
+    private List<Hour> hours = ImmutableList.of();
 
-    private LayoutInflater inflater;
+    // The block the user tapped to start a selection, drawn highlighted until the selection ends
+    private RenderBlock selectedBlock;
 
-    public HourAdapter(Context context) {
-        super(context, R.layout.hour);
-        inflater = (LayoutInflater) context.getSystemService(Context.LAYOUT_INFLATER_SERVICE);
+    public HourAdapter(Context context, HalfHourView.OnBlockClickListener blockClickListener) {
+        this.inflater = (LayoutInflater) context.getSystemService(Context.LAYOUT_INFLATER_SERVICE);
+        this.blockClickListener = blockClickListener;
+    }
 
-        int hourFieldWidth = getHourFieldWidth(context);
-        int screenWidth = getScreenWidthInPixels(context);
-        pixelsInHalfHour = screenWidth - hourFieldWidth;
+    @Override
+    public int getCount() {
+        return hours.size();
+    }
 
-        Log.d(TAG, "pixelsInHalfHour=" + pixelsInHalfHour);
+    @Override
+    public Hour getItem(int position) {
+        return hours.get(position);
     }
 
-    private int getScreenWidthInPixels(Context context) {
-        Point outSize = new Point();
-        WindowManager windowManager = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
-        windowManager.getDefaultDisplay().getSize(outSize);
-        return outSize.x;
+    @Override
+    public long getItemId(int position) {
+        return hours.get(position).getId();
     }
 
-    private int getHourFieldWidth(Context context) {
-        DisplayMetrics displayMetrics = context.getResources().getDisplayMetrics();
-        return (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, HOUR_FIELD_WIDTH_IN_DIP,
-                displayMetrics);
+    @Override
+    public boolean hasStableIds() {
+        return true;
     }
 
     @Override
     public View getView(int position, View convertView, ViewGroup parent) {
+        long startNanos = GET_VIEW_TIMER.start();
+        try {
+            return bindView(position, convertView, parent);
+        } finally {
+            GET_VIEW_TIMER.stop(startNanos);
+        }
+    }
 
+    private View bindView(int position, View convertView, ViewGroup parent) {
         View view;
+        RowHolder holder;
         if (convertView == null) {
             view = inflater.inflate(R.layout.hour, parent, false);
+            holder = new RowHolder(view);
+            holder.firstHalfHourView.setOnBlockClickListener(blockClickListener);
+            holder.secondHalfHourView.setOnBlockClickListener(blockClickListener);
+            view.setTag(holder);
         } else {
             view = convertView;
+            holder = (RowHolder) view.getTag();
         }
 
-        TextView hourText = (TextView) view.findViewById(R.id.hour);
-
         Hour hourData = getItem(position);
+        DateTime now = DateTime.now();
+        if (holder.isBoundTo(hourData, selectedBlock)) {
+            // The list handed back the row that already shows this hour, and nothing it draws changed since
+            return view;
+        }
+
         ActivityInterval firstHalfHour = hourData.getFirstHalfHour();
         ActivityInterval secondHalfHour = hourData.getSecondHalfHour();
-        hourText.setText("" + firstHalfHour.getStart().getHourOfDay());
+        holder.hourText.setText("" + firstHalfHour.getStart().getHourOfDay());
 
-        DateTime now = DateTime.now();
         if (!firstHalfHour.getStart().isAfter(now) && !secondHalfHour.getEnd().isBefore(now)) {
-            hourText.setTextColor(Color.BLUE);
+            holder.hourText.setTextColor(Color.BLUE);
         } else {
-            hourText.setTextColor(Color.BLACK);
+            holder.hourText.setTextColor(Color.BLACK);
         }
 
-        List<RenderBlock> firstHalfHourRenderBlocks = IntervalRenderer.render(firstHalfHour, MIN_BLOCK_DURATION, FREE_TIME_PARTITION_DURATION);
-        List<RenderBlock> secondHalfHourRenderBlocks = IntervalRenderer.render(secondHalfHour, MIN_BLOCK_DURATION,
-                FREE_TIME_PARTITION_DURATION);
-
-        ActivityInterval firstHalfHourInterval = new ActivityInterval(firstHalfHour.getStart(), firstHalfHour.getEnd(),
-                firstHalfHour.getFragments());
-        ActivityInterval secondHalfHourInterval = new ActivityInterval(secondHalfHour.getStart(),
-                secondHalfHour.getEnd(), secondHalfHour.getFragments());
-
-        LinearLayout firstHalfHourLayout = (LinearLayout) view.findViewById(R.id.firstHalfHourLayout);
-        LinearLayout secondHalfHourLayout = (LinearLayout) view.findViewById(R.id.secondHalfHourLayout);
-
-        sizeChildrenInHalfHour(firstHalfHourRenderBlocks, firstHalfHourLayout, false);
-        sizeChildrenInHalfHour(secondHalfHourRenderBlocks, secondHalfHourLayout, true);
+        holder.firstHalfHourView.setBlocks(firstHalfHour, hourData.getFirstHalfHourBlocks(), false, now.getMillis(),
+                selectedBlock);
+        holder.secondHalfHourView.setBlocks(secondHalfHour, hourData.getSecondHalfHourBlocks(), true,
+                now.getMillis(), selectedBlock);
+        holder.bind(hourData, selectedBlock, now.getMillis());
 
         return view;
     }
 
-    private void sizeChildrenInHalfHour(List<RenderBlock> halfHour, LinearLayout halfHourLayout,
-                                        boolean isSecondHalf) {
-        // Make sure there are enough GUI blocks to display all of the DisplayBlocks
-        int numButtons = halfHourLayout.getChildCount();
-        int numDisplayBlocks = halfHour.size();
-        int numAdditionalButtonsNeeded = numDisplayBlocks - numButtons;
+    /**
+     * Highlight the block that starts a selection, or clear the highlight.
+     *
+     * @param selectedBlock the block to highlight, or null to clear the highlight
+     */
+    public void setSelectedBlock(RenderBlock selectedBlock) {
+        this.selectedBlock = selectedBlock;
+        notifyDataSetChanged();
+    }
 
-        for (int i = 0; i < numAdditionalButtonsNeeded; i++) {
-            inflater.inflate(R.layout.disply_block, halfHourLayout, true);
+    /**
+     * Show the hours of a new model.  The model is already partitioned and rendered, so this only swaps the list.
+     *
+     * If every hour kept its position, only the changed rows on screen are bound again and the list isn't told to
+     * lay out.  Otherwise the list keeps the hour at its top where it was, found by id, rather than by position.
+     *
+     * @param model the model built by the loader
+     * @param listView the list this adapter is showing in
+     * @return true if the list was showing an hour that is still in the model and was kept in place
+     */
+    public boolean setData(TimelineModel model, ListView listView) {
+        HourDiff diff = model.isDiffedAgainst(this.model) ? model.getDiff() : null;
+        if (AppLog.isDebugEnabled()) {
+            AppLog.d(TAG, "setData called, %s rows changed", diff == null ? "all" : diff.getChangedCount());
         }
 
-        for (int i = numDisplayBlocks; i < numButtons; i++) {
-            halfHourLayout.removeViewAt(numDisplayBlocks);
-        }
+        int firstVisible = listView.getFirstVisiblePosition();
+        View firstView = listView.getChildAt(0);
+        boolean isShowing = firstView != null && firstVisible < hours.size();
+        long anchorId = isShowing ? hours.get(firstVisible).getId() : 0;
+        int anchorTop = isShowing ? firstView.getTop() : 0;
 
-        DateTime now = DateTime.now();
+        this.model = model;
+        this.hours = model.getHours();
 
-        // Resize and update the text on the GUI blocks
-        for(int i = 0; i < numDisplayBlocks; i++) {
-            RenderBlock block = halfHour.get(i);
-            double relativeSize = (double) block.getDuration().getMillis() / (double) HALF_HOUR.getMillis();
-
-            Button button = (Button) halfHourLayout.getChildAt(i);
-            int buttonWidth = (int) (relativeSize * pixelsInHalfHour * 0.9);
-            button.setWidth(buttonWidth);
-            
-            button.setTag(R.id.display_block_key, block);
-
-            if (block.getBlockEnd().isAfter(now)) {
-                button.setAlpha((float) 0.25);
-            } else if (isSecondHalf) {
-                button.setAlpha((float) 0.50);
-            } else {
-                button.setAlpha(1);
-            }
+        if (diff != null && diff.keepsPositions()) {
+            rebindChanged(diff, listView);
+            return isShowing;
+        }
 
-            if (block.getFragments().isEmpty()) {
-                button.setText("");
-            } else {
-                if (relativeSize < 0.1) {
-                    button.setText("");
-                } else {
-                    String activityName = block.getFragments().get(0).getActivityName();
-                    button.setText(activityName);
-                }
+        notifyDataSetChanged();
+        if (!isShowing) {
+            return false;
+        }
+        int position = diff != null ? diff.getNewPosition(firstVisible) : getPosition(anchorId);
+        if (position < 0) {
+            return false;
+        }
+        listView.setSelectionFromTop(position, anchorTop);
+        return true;
+    }
+
+    private void rebindChanged(HourDiff diff, ListView listView) {
+        int firstVisible = listView.getFirstVisiblePosition();
+        for (int i = 0; i < listView.getChildCount(); i++) {
+            int position = firstVisible + i;
+            if (position < hours.size() && diff.isChanged(position)) {
+                getView(position, listView.getChildAt(i), listView);
             }
         }
     }
 
-    public void setData(List<Activity> activities, DateTime earliestTime, DateTime latestTime) {
-        Log.d(TAG, "setData called");
+    /**
+     * Forget the model, e.g. when the loader is reset.
+     */
+    public void clear() {
+        model = null;
+        hours = ImmutableList.of();
+        notifyDataSetChanged();
+    }
 
-        clear();
-        earliestTime = roundDownToHour(earliestTime);
-        latestTime = roundDownToHour(latestTime);
-        Log.d(TAG, "earliestTime=" + earliestTime);
-        Log.d(TAG, "latestTime=" + latestTime);
+    /**
+     * @param id the id of an hour, see {@link Hour#getId()}
+     * @return the position of the hour, or -1 if it isn't shown
+     */
+    public int getPosition(long id) {
+        return getPositionAt(id, true);
+    }
 
-        List<ActivityInterval> halfHours = Partitioner.partition(
-                activities,
-                earliestTime, latestTime,
-                ACTIVITY_INTERVAL_DURATION);
+    /**
+     * @param time a time in the hours that are shown
+     * @return the position of the hour the time is in, or -1 if it isn't shown
+     */
+    public int getPosition(DateTime time) {
+        return getPositionAt(time.getMillis(), false);
+    }
 
-        ActivityInterval prev = null;
-        for (ActivityInterval halfHour : halfHours) {
-            if (prev == null) {
-                prev = halfHour;
+    // Binary search, the hours are sorted by start
+    private int getPositionAt(long millis, boolean isStart) {
+        int low = 0;
+        int high = hours.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            Hour hour = hours.get(mid);
+            if (millis < hour.getId()) {
+                high = mid - 1;
+            } else if (millis >= hour.getSecondHalfHour().getEnd().getMillis()) {
+                low = mid + 1;
             } else {
-                add(new Hour(prev, halfHour));
-                prev = null;
+                return !isStart || millis == hour.getId() ? mid : -1;
             }
         }
+        return -1;
     }
 
-    private DateTime roundDownToHour(DateTime time) {
-        int minutes = time.getMinuteOfHour();
-        int millis = time.getMillisOfSecond();
-        int seconds = time.getSecondOfMinute();
-        return time.minusMinutes(minutes).minusSeconds(seconds).minusMillis(millis);
-    }
+    /**
+     * The views of a row, and what they were last bound to.
+     */
+    private static class RowHolder {
+        private final TextView hourText;
+        private final HalfHourView firstHalfHourView;
+        private final HalfHourView secondHalfHourView;
+
+        private Hour boundHour;
+        private RenderBlock boundSelection;
+        private long boundNowMillis;
+
+        private RowHolder(View view) {
+            this.hourText = (TextView) view.findViewById(R.id.hour);
+            this.firstHalfHourView = (HalfHourView) view.findViewById(R.id.firstHalfHour);
+            this.secondHalfHourView = (HalfHourView) view.findViewById(R.id.secondHalfHour);
+        }
 
+        private void bind(Hour hour, RenderBlock selection, long nowMillis) {
+            this.boundHour = hour;
+            this.boundSelection = selection;
+            this.boundNowMillis = nowMillis;
+        }
+
+        /**
+         * An hour that was already over when it was bound draws the same until its blocks or the selection change.
+         */
+        private boolean isBoundTo(Hour hour, RenderBlock selection) {
+            return hour == boundHour && selection == boundSelection
+                    && hour.getSecondHalfHour().getEnd().getMillis() <= boundNowMillis;
+        }
+    }
 }
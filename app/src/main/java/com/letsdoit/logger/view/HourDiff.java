@@ -0,0 +1,124 @@
+package com.letsdoit.logger.view;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * The difference between the hours of two models: where each old hour moved to, and which new hours have to be bound
+ * again because they weren't shown before or their blocks changed.
+ *
+ * Hours are matched by {@link Hour#getId()}.  A matched hour is unchanged if it kept the same RenderBlock lists.  The
+ * RenderCache hands out the same list for an interval whose content didn't change, so comparing the lists by identity
+ * is enough and doesn't touch the blocks.
+ *
+ * Computed on the loader's background thread, so the UI thread only has to look positions up.
+ */
+public class HourDiff {
+    // For each old position, its new position, or -1 if the hour is no longer shown
+    private final int[] newPositions;
+    // The new positions whose rows have to be bound again
+    private final BitSet changed;
+    private final int newSize;
+
+    private HourDiff(int[] newPositions, BitSet changed, int newSize) {
+        this.newPositions = newPositions;
+        this.changed = changed;
+        this.newSize = newSize;
+    }
+
+    /**
+     * Match the hours of two models.  Both lists are sorted by start, so this is a single pass over each.
+     *
+     * @param oldHours the hours being shown
+     * @param newHours the hours that will replace them
+     * @return the difference
+     */
+    public static HourDiff compute(List<Hour> oldHours, List<Hour> newHours) {
+        int[] newPositions = new int[oldHours.size()];
+        Arrays.fill(newPositions, -1);
+        BitSet changed = new BitSet(newHours.size());
+
+        int oldPosition = 0;
+        for (int newPosition = 0; newPosition < newHours.size(); newPosition++) {
+            Hour newHour = newHours.get(newPosition);
+            while (oldPosition < oldHours.size() && oldHours.get(oldPosition).getId() < newHour.getId()) {
+                oldPosition++;
+            }
+            if (oldPosition < oldHours.size() && oldHours.get(oldPosition).getId() == newHour.getId()) {
+                newPositions[oldPosition] = newPosition;
+                if (!isSameContent(oldHours.get(oldPosition), newHour)) {
+                    changed.set(newPosition);
+                }
+                oldPosition++;
+            } else {
+                changed.set(newPosition);
+            }
+        }
+        return new HourDiff(newPositions, changed, newHours.size());
+    }
+
+    /**
+     * The difference of an update that only replaced the hours in [first, end), see
+     * {@link TimelineModel#update(com.letsdoit.logger.data.dao.ActivityTimeline, org.joda.time.DateTime,
+     * org.joda.time.DateTime, RenderCache)}.
+     *
+     * @param size the number of hours, the same before and after
+     * @param first the first replaced hour
+     * @param end the position after the last replaced hour
+     * @return the difference
+     */
+    public static HourDiff replaced(int size, int first, int end) {
+        int[] newPositions = new int[size];
+        for (int i = 0; i < size; i++) {
+            newPositions[i] = i;
+        }
+        BitSet changed = new BitSet(size);
+        changed.set(first, end);
+        return new HourDiff(newPositions, changed, size);
+    }
+
+    private static boolean isSameContent(Hour oldHour, Hour newHour) {
+        return oldHour == newHour
+                || (oldHour.getFirstHalfHourBlocks() == newHour.getFirstHalfHourBlocks()
+                && oldHour.getSecondHalfHourBlocks() == newHour.getSecondHalfHourBlocks());
+    }
+
+    /**
+     * @param oldPosition the position of an hour in the old list
+     * @return its position in the new list, or -1 if it isn't in it
+     */
+    public int getNewPosition(int oldPosition) {
+        return oldPosition >= 0 && oldPosition < newPositions.length ? newPositions[oldPosition] : -1;
+    }
+
+    /**
+     * @param newPosition the position of an hour in the new list
+     * @return true if its row has to be bound again
+     */
+    public boolean isChanged(int newPosition) {
+        return changed.get(newPosition);
+    }
+
+    /**
+     * @return the number of rows that have to be bound again
+     */
+    public int getChangedCount() {
+        return changed.cardinality();
+    }
+
+    /**
+     * @return true if every hour stayed at its position, so rows can be rebound in place without the list moving
+     */
+    public boolean keepsPositions() {
+        if (newPositions.length != newSize) {
+            return false;
+        }
+        for (int i = 0; i < newPositions.length; i++) {
+            if (newPositions[i] != i) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,256 @@
+package com.letsdoit.logger.view;
+
+import com.google.common.collect.ImmutableList;
+import com.letsdoit.logger.data.dao.ActivityInterval;
+import com.letsdoit.logger.data.dao.ActivityTimeline;
+import com.letsdoit.logger.data.dao.Partitioner;
+import com.letsdoit.logger.metrics.Metrics;
+import com.letsdoit.logger.metrics.Timer;
+
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
+import org.joda.time.Period;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Everything the hour list needs to display a range of time: the Activities, partitioned into half-hour
+ * ActivityIntervals, each rendered into RenderBlocks.
+ *
+ * Partitioning and rendering are too slow to do while the user scrolls, so the model is built up front on a
+ * background thread and is immutable afterwards.  Binding a row to a view is then just a lookup.  A RenderCache kept
+ * across builds means a rebuild only renders the half hours that changed or weren't in the last few models.
+ *
+ * When activities are written inside the range, {@link #update(ActivityTimeline, DateTime, DateTime, RenderCache)}
+ * makes a new model that only partitions and renders the hours the write touched, and shares every other Hour with
+ * this one.  Either way the loader attaches an {@link HourDiff} against the previous model, so the list only has to
+ * rebind the rows that changed and can keep its scroll position by hour.
+ */
+public class TimelineModel {
+    public static final Duration ACTIVITY_INTERVAL_DURATION = Period.minutes(30).toStandardDuration();
+    public static final Duration FREE_TIME_PARTITION_DURATION = Period.minutes(5).toStandardDuration();
+    public static final Duration MIN_BLOCK_DURATION = Period.minutes(4).toStandardDuration();
+
+    private static final Duration HOUR_DURATION = ACTIVITY_INTERVAL_DURATION.plus(ACTIVITY_INTERVAL_DURATION);
+
+    private static final Timer BUILD_TIMER = Metrics.timer("TimelineModel.build");
+    private static final Timer UPDATE_TIMER = Metrics.timer("TimelineModel.update");
+    private static final AtomicLong NEXT_ID = new AtomicLong();
+
+    // Identifies the model, so an update can tell which model it was made from without holding on to it
+    private final long id = NEXT_ID.getAndIncrement();
+    // The model this one is an update of, or -1 if it was built from scratch
+    private final long baseId;
+    // The difference from the base model's hours, or null if there is no base model
+    private final HourDiff diff;
+
+    private final DateTime start;
+    private final DateTime end;
+
+    // The range the activities were loaded for.  The hours may start a little earlier, since they're rounded down.
+    private final DateTime loadedStart;
+    private final DateTime loadedEnd;
+    private final ActivityTimeline activities;
+    private final ImmutableList<Hour> hours;
+
+    private TimelineModel(DateTime start, DateTime end, DateTime loadedStart, DateTime loadedEnd,
+                          ActivityTimeline activities, ImmutableList<Hour> hours) {
+        this(start, end, loadedStart, loadedEnd, activities, hours, -1, null);
+    }
+
+    private TimelineModel(DateTime start, DateTime end, DateTime loadedStart, DateTime loadedEnd,
+                          ActivityTimeline activities, ImmutableList<Hour> hours, long baseId, HourDiff diff) {
+        this.baseId = baseId;
+        this.diff = diff;
+        this.start = start;
+        this.end = end;
+        this.loadedStart = loadedStart;
+        this.loadedEnd = loadedEnd;
+        this.activities = activities;
+        this.hours = hours;
+    }
+
+    /**
+     * Partition and render the activities in the range.  Expensive, don't call it on the UI thread.
+     *
+     * @param activities all of the activities overlapping the range
+     * @param earliestTime the start of the range the activities were loaded for.  The hours start at this time
+     *                     rounded down to the hour.
+     * @param latestTime the end of the range the activities were loaded for.  The hours end at this time rounded
+     *                   down to the hour.
+     * @return the model for the range
+     */
+    public static TimelineModel build(ActivityTimeline activities, DateTime earliestTime, DateTime latestTime) {
+        return build(activities, earliestTime, latestTime, newRenderCache(0));
+    }
+
+    /**
+     * Same as {@link #build(ActivityTimeline, DateTime, DateTime)}, but only renders the half hours whose content
+     * isn't already in the cache.
+     *
+     * @param renderCache a cache made by {@link #newRenderCache(int)}, kept across builds
+     */
+    public static TimelineModel build(ActivityTimeline activities, DateTime earliestTime, DateTime latestTime,
+                                      RenderCache renderCache) {
+        long startNanos = BUILD_TIMER.start();
+        try {
+            return buildModel(activities, earliestTime, latestTime, renderCache);
+        } finally {
+            BUILD_TIMER.stop(startNanos);
+        }
+    }
+
+    /**
+     * @param maxHalfHours the most half hours to remember the RenderBlocks of
+     * @return a cache that renders half hours the way the hour list draws them
+     */
+    public static RenderCache newRenderCache(int maxHalfHours) {
+        return new RenderCache(maxHalfHours, MIN_BLOCK_DURATION, FREE_TIME_PARTITION_DURATION);
+    }
+
+    private static TimelineModel buildModel(ActivityTimeline activities, DateTime earliestTime, DateTime latestTime,
+                                            RenderCache renderCache) {
+        DateTime start = roundDownToHour(earliestTime);
+        DateTime end = roundDownToHour(latestTime);
+
+        List<ActivityInterval> halfHours = Partitioner.partition(
+                activities,
+                start, end,
+                ACTIVITY_INTERVAL_DURATION);
+
+        ImmutableList.Builder<Hour> hours = ImmutableList.builder();
+        addHours(halfHours, renderCache, hours);
+
+        return new TimelineModel(start, end, earliestTime, latestTime, activities, hours.build());
+    }
+
+    private static void addHours(List<ActivityInterval> halfHours, RenderCache renderCache,
+                                 ImmutableList.Builder<Hour> hours) {
+        ActivityInterval prev = null;
+        for (ActivityInterval halfHour : halfHours) {
+            if (prev == null) {
+                prev = halfHour;
+            } else {
+                hours.add(new Hour(prev, renderCache.render(prev), halfHour, renderCache.render(halfHour)));
+                prev = null;
+            }
+        }
+    }
+
+    /**
+     * Make the model for the same range after activities in [changeStart, changeEnd) were written.  Only the hours
+     * overlapping the change are partitioned and rendered again, the rest are shared with this model, so the cost is
+     * proportional to the change rather than to the range.  Don't call it on the UI thread.
+     *
+     * @param activities all of the activities overlapping the range, including the change
+     * @param changeStart the start of the period that was written to
+     * @param changeEnd the end of the period that was written to
+     * @param renderCache a cache made by {@link #newRenderCache(int)}, kept across builds
+     * @return the model for the range, an update of this one
+     */
+    public TimelineModel update(ActivityTimeline activities, DateTime changeStart, DateTime changeEnd,
+                                RenderCache renderCache) {
+        long startNanos = UPDATE_TIMER.start();
+        try {
+            return updateModel(activities, changeStart, changeEnd, renderCache);
+        } finally {
+            UPDATE_TIMER.stop(startNanos);
+        }
+    }
+
+    private TimelineModel updateModel(ActivityTimeline activities, DateTime changeStart, DateTime changeEnd,
+                                      RenderCache renderCache) {
+        // The hours are a fixed duration apart from the start, so the ones overlapping the change are a division away
+        long hourMillis = HOUR_DURATION.getMillis();
+        long fromStart = changeStart.getMillis() - start.getMillis();
+        long toEnd = changeEnd.getMillis() - start.getMillis();
+        int first = (int) Math.max(0, Math.min(hours.size(), floorDiv(fromStart, hourMillis)));
+        int end = (int) Math.max(first, Math.min(hours.size(), -floorDiv(-toEnd, hourMillis)));
+
+        List<ActivityInterval> halfHours = Partitioner.partition(
+                activities,
+                start.plus(first * hourMillis), start.plus(end * hourMillis),
+                ACTIVITY_INTERVAL_DURATION);
+
+        ImmutableList.Builder<Hour> updated = ImmutableList.builder();
+        updated.addAll(hours.subList(0, first));
+        addHours(halfHours, renderCache, updated);
+        updated.addAll(hours.subList(end, hours.size()));
+
+        return new TimelineModel(start, this.end, loadedStart, loadedEnd, activities, updated.build(),
+                id, HourDiff.replaced(hours.size(), first, end));
+    }
+
+    /**
+     * Compare the hours with the ones of the model being shown, so the list knows which rows moved and which changed.
+     * Linear in the number of hours, don't call it on the UI thread.
+     *
+     * @param previous the model being shown
+     * @return this model, with the difference from the previous one
+     */
+    public TimelineModel diffAgainst(TimelineModel previous) {
+        return new TimelineModel(start, end, loadedStart, loadedEnd, activities, hours,
+                previous.id, HourDiff.compute(previous.hours, hours));
+    }
+
+    private static long floorDiv(long dividend, long divisor) {
+        long quotient = dividend / divisor;
+        return dividend % divisor < 0 ? quotient - 1 : quotient;
+    }
+
+    private static DateTime roundDownToHour(DateTime time) {
+        int minutes = time.getMinuteOfHour();
+        int millis = time.getMillisOfSecond();
+        int seconds = time.getSecondOfMinute();
+        return time.minusMinutes(minutes).minusSeconds(seconds).minusMillis(millis);
+    }
+
+    /**
+     * @return true if the activities were loaded for the whole [start, end) period, so
+     * {@link #hasActivitiesBetween(DateTime, DateTime)} can answer for it without going to the database.
+     */
+    public boolean isLoaded(DateTime start, DateTime end) {
+        return !start.isBefore(loadedStart) && !end.isAfter(loadedEnd);
+    }
+
+    /**
+     * Check whether any activity overlaps the [start, end) period in O(log n).  Only meaningful for periods that
+     * {@link #isLoaded(DateTime, DateTime)}.
+     */
+    public boolean hasActivitiesBetween(DateTime start, DateTime end) {
+        return activities.overlaps(start.getMillis(), end.getMillis());
+    }
+
+    public DateTime getStart() {
+        return start;
+    }
+
+    public DateTime getEnd() {
+        return end;
+    }
+
+    public ActivityTimeline getActivities() {
+        return activities;
+    }
+
+    public List<Hour> getHours() {
+        return hours;
+    }
+
+    /**
+     * @return true if {@link #getDiff()} is the difference from the other model's hours
+     */
+    public boolean isDiffedAgainst(TimelineModel other) {
+        return other != null && baseId == other.id;
+    }
+
+    /**
+     * @return the difference from the hours of the model this was made from, by
+     * {@link #update(ActivityTimeline, DateTime, DateTime, RenderCache)} or {@link #diffAgainst(TimelineModel)}, or
+     * null for a new model
+     */
+    public HourDiff getDiff() {
+        return diff;
+    }
+}
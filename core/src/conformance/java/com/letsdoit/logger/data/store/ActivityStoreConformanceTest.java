@@ -0,0 +1,217 @@
+package com.letsdoit.logger.data.store;
+
+import junit.framework.TestCase;
+
+import com.google.common.collect.Lists;
+import com.letsdoit.logger.data.dao.Activity;
+import com.letsdoit.logger.data.dao.ActivityHistoryGenerator;
+import com.letsdoit.logger.data.dao.ActivityInterval;
+import com.letsdoit.logger.data.dao.Partitioner;
+import com.letsdoit.logger.metrics.Metrics;
+import com.letsdoit.logger.metrics.Timer;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Duration;
+
+import java.util.List;
+
+import static org.joda.time.Period.hours;
+import static org.joda.time.Period.minutes;
+
+/**
+ * The behavior every ActivityStore has to have, whatever its storage engine.  Each engine's test extends this and
+ * creates an empty store.
+ */
+public abstract class ActivityStoreConformanceTest extends TestCase {
+
+    static {
+        DateTimeZone.setDefault(DateTimeZone.UTC);
+    }
+
+    protected static final DateTime START = new DateTime(2014, 7, 17, 10, 0, 0, 0);
+
+    protected ActivityStore store;
+
+    /**
+     * @return a new, empty, unopened store
+     */
+    protected abstract ActivityStore createStore() throws Exception;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        store = createStore();
+        store.open();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        store.close();
+        super.tearDown();
+    }
+
+    public void testEmpty() {
+        assertTrue(store.getActivitiesInRange(START, START.plusDays(1)).isEmpty());
+        assertTrue(store.getTimelineInRange(START, START.plusDays(1)).isEmpty());
+        assertFalse(store.hasActivitiesInRange(START, START.plusDays(1)));
+        assertEquals(0, store.addActivities(Lists.<Activity>newArrayList()));
+    }
+
+    public void testRangeIsHalfOpen() {
+        Activity activity = new Activity("Read", START, START.plus(hours(1)));
+        store.addActivity(activity);
+
+        assertTrue(store.getActivitiesInRange(START.minus(hours(1)), START).isEmpty());
+        assertTrue(store.getActivitiesInRange(START.plus(hours(1)), START.plus(hours(2))).isEmpty());
+        assertFalse(store.hasActivitiesInRange(START.plus(hours(1)), START.plus(hours(2))));
+        assertEquals(Lists.newArrayList(activity),
+                store.getActivitiesInRange(START.plus(minutes(59)), START.plus(hours(2))));
+        assertTrue(store.hasActivitiesInRange(START.minus(hours(1)), START.plus(minutes(1))));
+    }
+
+    public void testActivityLongerThanRangeIsReturnedWhole() {
+        Activity activity = new Activity("Sleep", START.minus(hours(6)), START.plus(hours(2)));
+        store.addActivity(activity);
+
+        assertEquals(Lists.newArrayList(activity), store.getActivitiesInRange(START, START.plus(minutes(30))));
+        assertEquals(Lists.newArrayList(activity),
+                store.getTimelineInRange(START, START.plus(minutes(30))).asActivities());
+    }
+
+    public void testSortedByStart() {
+        Activity first = new Activity("Walk", START, START.plus(minutes(20)));
+        Activity second = new Activity("Cook", START.plus(minutes(20)), START.plus(minutes(50)));
+        Activity third = new Activity("Walk", START.plus(hours(2)), START.plus(hours(3)));
+        store.addActivity(third);
+        store.addActivities(Lists.newArrayList(second, first));
+
+        List<Activity> expected = Lists.newArrayList(first, second, third);
+        assertEquals(expected, store.getActivitiesInRange(START, START.plusDays(1)));
+        assertEquals(expected, store.getTimelineInRange(START, START.plusDays(1)).asActivities());
+    }
+
+    public void testIterateActivitiesInRange() {
+        Activity first = new Activity("Sleep", START.minus(hours(6)), START.plus(hours(2)));
+        Activity second = new Activity("Cook", START.plus(hours(2)), START.plus(hours(3)));
+        Activity third = new Activity("Walk", START.plus(hours(3)), START.plus(hours(5)));
+        store.addActivities(Lists.newArrayList(third, first, second));
+
+        ActivityIterator activities = store.iterateActivitiesInRange(START, START.plus(hours(4)));
+        try {
+            assertEquals(Lists.newArrayList(first, second, third), Lists.newArrayList(activities));
+            assertFalse(activities.hasNext());
+        } finally {
+            activities.close();
+        }
+
+        // Closing early releases the store and can be repeated
+        activities = store.iterateActivitiesInRange(START, START.plus(hours(4)));
+        assertEquals(first, activities.next());
+        activities.close();
+        activities.close();
+
+        activities = store.iterateActivitiesInRange(START.plus(hours(5)), START.plus(hours(6)));
+        assertFalse(activities.hasNext());
+        activities.close();
+    }
+
+    public void testDeleteActivity() {
+        Activity kept = new Activity("Walk", START, START.plus(minutes(20)));
+        Activity deleted = new Activity("Cook", START.plus(minutes(20)), START.plus(hours(3)));
+        store.addActivities(Lists.newArrayList(kept, deleted));
+
+        assertFalse(store.deleteActivity(new Activity("Cook", START.plus(minutes(20)), START.plus(hours(2)))));
+        assertFalse(store.deleteActivity(new Activity("Unknown", START.plus(minutes(20)), START.plus(hours(3)))));
+        assertTrue(store.deleteActivity(deleted));
+        assertFalse(store.deleteActivity(deleted));
+
+        assertEquals(Lists.newArrayList(kept), store.getActivitiesInRange(START, START.plusDays(1)));
+        assertFalse(store.hasActivitiesInRange(START.plus(hours(1)), START.plus(hours(2))));
+
+        // The time can be logged again
+        store.addActivity(deleted);
+        assertEquals(Lists.newArrayList(kept, deleted), store.getActivitiesInRange(START, START.plusDays(1)));
+    }
+
+    public void testChangeListeners() {
+        final List<DateTime> changes = Lists.newArrayList();
+        ActivityChangeListener listener = new ActivityChangeListener() {
+            @Override
+            public void onActivitiesChanged(DateTime start, DateTime end) {
+                changes.add(start);
+                changes.add(end);
+            }
+        };
+        store.addChangeListener(listener);
+
+        Activity late = new Activity("Walk", START.plus(hours(3)), START.plus(hours(4)));
+        Activity early = new Activity("Read", START, START.plus(minutes(30)));
+        store.addActivities(Lists.newArrayList(late, early));
+        assertEquals(Lists.newArrayList(START, START.plus(hours(4))), changes);
+
+        changes.clear();
+        store.deleteActivity(early);
+        assertEquals(Lists.newArrayList(START, START.plus(minutes(30))), changes);
+
+        changes.clear();
+        store.removeChangeListener(listener);
+        store.addActivity(early);
+        assertTrue(changes.isEmpty());
+    }
+
+    public void testOpenIsReferenceCounted() {
+        store.open();
+        store.close();
+
+        // Still open for the reference taken in setUp
+        store.addActivity(new Activity("Read", START, START.plus(hours(1))));
+        assertTrue(store.hasActivitiesInRange(START, START.plus(hours(1))));
+    }
+
+    /**
+     * A few months of realistic history, read back a day at a time like the UI does.  The reads are timed, so the
+     * engines can be compared with {@link Metrics#dump()}.
+     */
+    public void testGeneratedHistory() {
+        DateTime end = START.plusDays(90);
+        List<Activity> activities = ActivityHistoryGenerator.builder()
+                .seed(5)
+                .range(START, end)
+                .edgeCaseRate(0.2)
+                .build()
+                .generate();
+        store.addActivities(activities);
+
+        assertEquals(activities, store.getActivitiesInRange(START, end));
+
+        Timer timer = Metrics.timer(getClass().getSimpleName() + ".getTimelineInRange");
+        for (DateTime day = START; day.isBefore(end); day = day.plusDays(1)) {
+            long startNanos = timer.start();
+            List<Activity> loaded = store.getTimelineInRange(day, day.plusDays(1)).asActivities();
+            timer.stop(startNanos);
+
+            assertEquals(overlapping(activities, day, day.plusDays(1)), loaded);
+        }
+
+        // Partitioning straight from the iterator matches partitioning the loaded list
+        Duration halfHour = Duration.standardMinutes(30);
+        ActivityIterator stream = store.iterateActivitiesInRange(START, end);
+        try {
+            List<ActivityInterval> streamed = Partitioner.partition(stream, START, end, halfHour);
+            assertEquals(Partitioner.partition(activities, START, end, halfHour).toString(), streamed.toString());
+        } finally {
+            stream.close();
+        }
+    }
+
+    private static List<Activity> overlapping(List<Activity> activities, DateTime start, DateTime end) {
+        List<Activity> overlapping = Lists.newArrayList();
+        for (Activity activity : activities) {
+            if (activity.getActivityEnd().isAfter(start) && activity.getActivityStart().isBefore(end)) {
+                overlapping.add(activity);
+            }
+        }
+        return overlapping;
+    }
+}
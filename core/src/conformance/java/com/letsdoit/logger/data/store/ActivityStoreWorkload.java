@@ -0,0 +1,118 @@
+package com.letsdoit.logger.data.store;
+
+import com.letsdoit.logger.data.dao.Activity;
+
+import org.joda.time.DateTime;
+
+import java.util.List;
+
+/**
+ * The same operations as ActivityStoreBenchmark, timed with System.nanoTime instead of JMH, so every engine can be
+ * measured on the platform it runs on.  The SQLite engine only runs on a device, so its instrumentation benchmark runs
+ * this workload against all three engines side by side.
+ */
+public class ActivityStoreWorkload {
+    private final List<Activity> history;
+    private final DateTime lastDay;
+    private final int iterations;
+
+    /**
+     * @param history the Activities to write, sorted by start time
+     * @param end the end of the history.  The day before it is read over and over.
+     * @param iterations how many times to repeat each read
+     */
+    public ActivityStoreWorkload(List<Activity> history, DateTime end, int iterations) {
+        this.history = history;
+        this.lastDay = end.minusDays(1);
+        this.iterations = iterations;
+    }
+
+    /**
+     * Write the history into the store, then time loading a day and checking an hour, the way the list does.
+     *
+     * @param engine the name to report the store as
+     * @param store an open, empty store
+     * @return how long each operation took
+     */
+    public Result run(String engine, ActivityStore store) {
+        long startNanos = System.nanoTime();
+        store.addActivities(history);
+        long writeNanos = System.nanoTime() - startNanos;
+
+        // Warm up caches and the JIT before measuring
+        int loaded = 0;
+        for (int i = 0; i < iterations; i++) {
+            loaded += store.getTimelineInRange(lastDay, lastDay.plusDays(1)).size();
+        }
+
+        startNanos = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            loaded += store.getTimelineInRange(lastDay, lastDay.plusDays(1)).size();
+        }
+        long loadDayNanos = (System.nanoTime() - startNanos) / iterations;
+
+        int overlapping = 0;
+        startNanos = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            if (store.hasActivitiesInRange(lastDay, lastDay.plusHours(1))) {
+                overlapping++;
+            }
+        }
+        long hasActivitiesNanos = (System.nanoTime() - startNanos) / iterations;
+
+        return new Result(engine, history.size(), writeNanos, loadDayNanos, hasActivitiesNanos,
+                loaded / (2 * iterations), overlapping > 0);
+    }
+
+    public static class Result {
+        private final String engine;
+        private final int activities;
+        private final long writeNanos;
+        private final long loadDayNanos;
+        private final long hasActivitiesInHourNanos;
+        // Kept so the reads can't be optimized away, and so engines can be checked against each other
+        private final int activitiesInDay;
+        private final boolean hasActivitiesInHour;
+
+        private Result(String engine, int activities, long writeNanos, long loadDayNanos,
+                       long hasActivitiesInHourNanos, int activitiesInDay, boolean hasActivitiesInHour) {
+            this.engine = engine;
+            this.activities = activities;
+            this.writeNanos = writeNanos;
+            this.loadDayNanos = loadDayNanos;
+            this.hasActivitiesInHourNanos = hasActivitiesInHourNanos;
+            this.activitiesInDay = activitiesInDay;
+            this.hasActivitiesInHour = hasActivitiesInHour;
+        }
+
+        public String getEngine() {
+            return engine;
+        }
+
+        public long getWriteNanos() {
+            return writeNanos;
+        }
+
+        public long getLoadDayNanos() {
+            return loadDayNanos;
+        }
+
+        public long getHasActivitiesInHourNanos() {
+            return hasActivitiesInHourNanos;
+        }
+
+        public int getActivitiesInDay() {
+            return activitiesInDay;
+        }
+
+        public boolean hasActivitiesInHour() {
+            return hasActivitiesInHour;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: wrote %s activities in %s ms, loadDay %s us, hasActivitiesInHour %s us",
+                    engine, activities, writeNanos / 1000000, loadDayNanos / 1000, hasActivitiesInHourNanos / 1000);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.letsdoit.logger.benchmark;
+
+import com.letsdoit.logger.data.dao.ActivityTimeline;
+import com.letsdoit.logger.data.store.ActivityStore;
+import com.letsdoit.logger.data.store.InMemoryActivityStore;
+import com.letsdoit.logger.data.store.MappedFileActivityStore;
+
+import org.joda.time.DateTime;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Loading a day of a history from each storage engine, the way the list loads the rows around the visible hours.
+ *
+ * The SQLite engine needs a device, so it's measured by the app's ActivityStoreInstrumentationBenchmark instead, which
+ * runs the same operations from ActivityStoreWorkload against all three engines.
+ */
+@State(Scope.Thread)
+public class ActivityStoreBenchmark {
+    @Param({"memory", "mapped"})
+    public String engine;
+
+    private File directory;
+    private ActivityStore store;
+    private DateTime day;
+
+    @Setup(Level.Trial)
+    public void setUp(HistoryState history) throws IOException {
+        if ("mapped".equals(engine)) {
+            directory = File.createTempFile("ActivityStoreBenchmark", "");
+            directory.delete();
+            store = new MappedFileActivityStore(directory);
+        } else {
+            store = new InMemoryActivityStore();
+        }
+        store.open();
+        store.addActivities(history.activities);
+        day = history.end.minusDays(1);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        store.close();
+        if (directory != null) {
+            for (File file : directory.listFiles()) {
+                file.delete();
+            }
+            directory.delete();
+        }
+    }
+
+    @Benchmark
+    public ActivityTimeline loadDay() {
+        return store.getTimelineInRange(day, day.plusDays(1));
+    }
+
+    @Benchmark
+    public boolean hasActivitiesInHour() {
+        return store.hasActivitiesInRange(day, day.plusHours(1));
+    }
+}
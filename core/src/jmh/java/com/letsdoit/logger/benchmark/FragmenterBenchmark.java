@@ -0,0 +1,41 @@
+package com.letsdoit.logger.benchmark;
+
+import com.letsdoit.logger.data.dao.Activity;
+import com.letsdoit.logger.data.dao.ActivityFragment;
+import com.letsdoit.logger.data.dao.ActivityNames;
+import com.letsdoit.logger.data.dao.ActivityTimeline;
+import com.letsdoit.logger.data.dao.Fragmenter;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+
+/**
+ * Chopping a whole history up into fragments for storage, and stitching the fragments back together.
+ */
+public class FragmenterBenchmark {
+
+    @Benchmark
+    public void fragment(HistoryState history, Blackhole blackhole) {
+        for (Activity activity : history.activities) {
+            blackhole.consume(Fragmenter.fragment(activity, HistoryState.MAX_FRAGMENT_DURATION));
+        }
+    }
+
+    @Benchmark
+    public List<Activity> defragmentList(HistoryState history) {
+        return Fragmenter.defragment(history.fragments);
+    }
+
+    @Benchmark
+    public ActivityTimeline defragmentTimeline(HistoryState history) {
+        ActivityNames names = new ActivityNames();
+        ActivityTimeline timeline = new ActivityTimeline(names);
+        for (ActivityFragment fragment : history.fragments) {
+            Fragmenter.defragment(timeline, names.intern(fragment.getActivityName()),
+                    fragment.getActivityStart().getMillis(), fragment.getActivityEnd().getMillis());
+        }
+        return timeline;
+    }
+}
@@ -0,0 +1,65 @@
+package com.letsdoit.logger.benchmark;
+
+import com.letsdoit.logger.data.dao.Activity;
+import com.letsdoit.logger.data.dao.ActivityFragment;
+import com.letsdoit.logger.data.dao.ActivityHistoryGenerator;
+import com.letsdoit.logger.data.dao.ActivityNames;
+import com.letsdoit.logger.data.dao.ActivityTimeline;
+import com.letsdoit.logger.data.dao.Fragmenter;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Duration;
+import org.joda.time.Period;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A synthetic activity history shared by the benchmarks.  The history is generated from a fixed seed, so every run
+ * measures the same data.
+ */
+@State(Scope.Benchmark)
+public class HistoryState {
+    public static final Duration MAX_FRAGMENT_DURATION = Period.hours(1).toStandardDuration();
+
+    private static final long SEED = 42;
+
+    // How many days of history to generate, from a few days up to a few years
+    @Param({"7", "365", "1095"})
+    public int days;
+
+    public DateTime start;
+    public DateTime end;
+    public List<Activity> activities;
+    public List<ActivityFragment> fragments;
+    public ActivityTimeline timeline;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        DateTimeZone.setDefault(DateTimeZone.UTC);
+        end = new DateTime(2014, 8, 1, 0, 0);
+        start = end.minusDays(days);
+        activities = ActivityHistoryGenerator.builder()
+                .seed(SEED)
+                .range(start, end)
+                .fragmentDuration(MAX_FRAGMENT_DURATION)
+                .build()
+                .generate();
+
+        fragments = new ArrayList<ActivityFragment>();
+        for (Activity activity : activities) {
+            fragments.addAll(Fragmenter.fragment(activity, MAX_FRAGMENT_DURATION));
+        }
+
+        timeline = new ActivityTimeline(new ActivityNames(), activities.size());
+        for (Activity activity : activities) {
+            timeline.append(activity);
+        }
+    }
+}
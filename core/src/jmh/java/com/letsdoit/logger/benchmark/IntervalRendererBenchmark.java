@@ -0,0 +1,54 @@
+package com.letsdoit.logger.benchmark;
+
+import com.letsdoit.logger.data.dao.ActivityInterval;
+import com.letsdoit.logger.data.dao.Partitioner;
+import com.letsdoit.logger.view.IntervalRenderer;
+import com.letsdoit.logger.view.RenderBuffer;
+
+import org.joda.time.Duration;
+import org.joda.time.Period;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+
+/**
+ * Rendering every half hour of a history into RenderBlocks, with the same durations the hour list uses.
+ */
+@State(Scope.Thread)
+public class IntervalRendererBenchmark {
+    private static final Duration HALF_HOUR = Period.minutes(30).toStandardDuration();
+    private static final Duration FREE_TIME_PARTITION_DURATION = Period.minutes(5).toStandardDuration();
+    private static final Duration MIN_BLOCK_DURATION = Period.minutes(4).toStandardDuration();
+
+    private List<ActivityInterval> halfHours;
+    private final RenderBuffer buffer = new RenderBuffer();
+
+    @Setup(Level.Trial)
+    public void setUp(HistoryState history) {
+        halfHours = Partitioner.partition(history.timeline, history.start, history.end, HALF_HOUR);
+    }
+
+    @Benchmark
+    public void render(Blackhole blackhole) {
+        for (ActivityInterval halfHour : halfHours) {
+            blackhole.consume(IntervalRenderer.render(halfHour, MIN_BLOCK_DURATION, FREE_TIME_PARTITION_DURATION));
+        }
+    }
+
+    /**
+     * Rendering into a reused buffer, which should allocate nothing per half hour.
+     */
+    @Benchmark
+    public void renderIntoBuffer(Blackhole blackhole) {
+        for (ActivityInterval halfHour : halfHours) {
+            IntervalRenderer.render(halfHour, MIN_BLOCK_DURATION.getMillis(), FREE_TIME_PARTITION_DURATION.getMillis(),
+                    buffer);
+            blackhole.consume(buffer.size());
+        }
+    }
+}
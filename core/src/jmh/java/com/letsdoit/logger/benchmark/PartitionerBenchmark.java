@@ -0,0 +1,49 @@
+package com.letsdoit.logger.benchmark;
+
+import com.letsdoit.logger.data.dao.ActivityInterval;
+import com.letsdoit.logger.data.dao.Partitioner;
+
+import org.joda.time.Duration;
+import org.joda.time.Period;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+
+/**
+ * Partitioning a whole history into half-hour intervals.
+ */
+@State(Scope.Thread)
+public class PartitionerBenchmark {
+    private static final Duration HALF_HOUR = Period.minutes(30).toStandardDuration();
+
+    private int[] firstIndices;
+    private int[] endIndices;
+
+    @Setup(Level.Trial)
+    public void setUp(HistoryState history) {
+        int numIntervals = (int) ((history.end.getMillis() - history.start.getMillis()) / HALF_HOUR.getMillis()) + 1;
+        firstIndices = new int[numIntervals];
+        endIndices = new int[numIntervals];
+    }
+
+    @Benchmark
+    public List<ActivityInterval> partitionList(HistoryState history) {
+        return Partitioner.partition(history.activities, history.start, history.end, HALF_HOUR);
+    }
+
+    @Benchmark
+    public List<ActivityInterval> partitionTimeline(HistoryState history) {
+        return Partitioner.partition(history.timeline, history.start, history.end, HALF_HOUR);
+    }
+
+    @Benchmark
+    public int partitionIndices(HistoryState history) {
+        return Partitioner.partition(history.timeline,
+                history.start.getMillis(), history.end.getMillis(), HALF_HOUR.getMillis(),
+                firstIndices, endIndices);
+    }
+}
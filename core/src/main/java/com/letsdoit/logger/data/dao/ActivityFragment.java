@@ -1,12 +1,12 @@
 package com.letsdoit.logger.data.dao;
 
-import android.util.Log;
-import android.util.Pair;
-
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
+import com.letsdoit.logger.logging.AppLog;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.tuple.ImmutablePair;
+import org.apache.commons.lang3.tuple.Pair;
 
 import org.joda.time.DateTime;
 import org.joda.time.Duration;
@@ -82,7 +82,7 @@ public class ActivityFragment {
         ActivityFragment second = new ActivityFragment(activityName, activityStart, activityEnd, splitTime,
                 fragmentEnd);
 
-        return new Pair<ActivityFragment, ActivityFragment>(first, second);
+        return ImmutablePair.of(first, second);
     }
 
     public static List<ActivityInterval> partition(
@@ -122,9 +122,9 @@ public class ActivityFragment {
                 if (fragment.getFragmentEnd().isAfter(endOfInterval)) {
                     // Split fragments that cross the hour
                     Pair<ActivityFragment, ActivityFragment> split = fragment.splitAtTime(endOfInterval);
-                    intervalFragments.add(split.first);
+                    intervalFragments.add(split.getLeft());
                     // This will will break from this while loop, since the fragment start will be endOfInterval
-                    fragment = split.second;
+                    fragment = split.getRight();
                 } else {
                     intervalFragments.add(fragment);
                     if (fragmentIterator.hasNext()) {
@@ -136,7 +136,7 @@ public class ActivityFragment {
             }
 
             ActivityInterval activityInterval = new ActivityInterval(startOfInterval, endOfInterval, intervalFragments);
-            Log.d(TAG, activityInterval.toString());
+            AppLog.d(TAG, "%s", activityInterval);
             intervals.add(activityInterval);
             startOfInterval = endOfInterval;
         }
@@ -177,8 +177,8 @@ public class ActivityFragment {
              splitTime.isBefore(activity.getFragmentEnd());
              splitTime = splitTime.plus(maxFragmentDuration)) {
             Pair<ActivityFragment, ActivityFragment> firstRest = rest.splitAtTime(splitTime);
-            fragments.add(firstRest.first);
-            rest = firstRest.second;
+            fragments.add(firstRest.getLeft());
+            rest = firstRest.getRight();
         }
         fragments.add(rest);
 
@@ -197,21 +197,24 @@ public class ActivityFragment {
 
         while (iterator.hasNext()) {
             next = iterator.next();
-            Log.d(TAG, next.toString());
+            AppLog.d(TAG, "%s", next);
             if (mergeBlockStart == null) {
-                Log.d(TAG, "Start block was null.  Saving fragment in start block.");
+                AppLog.d(TAG, "Start block was null.  Saving fragment in start block.");
                 mergeBlockStart = next;
             } else if (next.isSameActivityAs(mergeBlockStart)) {
-                Log.d(TAG, "Current activity is the same as the start block's.  Writing fragment to the end block.");
+                AppLog.d(TAG,
+                        "Current activity is the same as the start block's.  Writing fragment to the end block.");
                 mergeBlockEnd = next;
             } else if (mergeBlockEnd != null) {
-                Log.d(TAG, "There was an end block, but the current fragment didn't match the start block's activity." +
+                AppLog.d(TAG,
+                        "There was an end block, but the current fragment didn't match the start block's activity." +
                         "  Merging the start and end blocks and resetting the start block.");
                 fragments.add(mergeAndInterpolate(mergeBlockStart, mergeBlockEnd));
                 mergeBlockStart = next;
                 mergeBlockEnd = null;
             } else if(mergeBlockStart != null) {
-                Log.d(TAG, "Have a start block but no end block.  Adding start block and resetting the start block.");
+                AppLog.d(TAG,
+                        "Have a start block but no end block.  Adding start block and resetting the start block.");
                 fragments.add(mergeBlockStart);
                 mergeBlockStart = next;
             } else {
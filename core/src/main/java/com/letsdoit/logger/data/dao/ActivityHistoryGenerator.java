@@ -0,0 +1,299 @@
+package com.letsdoit.logger.data.dao;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Lists;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Duration;
+import org.joda.time.Period;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates long, realistic Activity histories for stress tests and benchmarks.
+ *
+ * The history is a sorted stream of non-overlapping Activities.  Durations follow a log-normal distribution clamped
+ * to [minDuration, maxDuration], the free time between Activities is sized so that roughly a density fraction of the
+ * history is covered, and names are drawn from a fixed set with a few popular names and a long tail of rare ones.
+ *
+ * Some Activities are deliberately placed on edge cases instead: spanning midnight, spanning a daylight saving time
+ * transition of the zone, or lasting an exact multiple of the fragment duration.
+ *
+ * The same settings and seed always generate the same history.
+ */
+public class ActivityHistoryGenerator implements Iterable<Activity> {
+    private static final long SECOND_MILLIS = 1000;
+
+    private enum Shape { NORMAL, SPANS_MIDNIGHT, SPANS_DST_TRANSITION, EXACT_FRAGMENTS }
+
+    private final long seed;
+    private final DateTimeZone zone;
+    private final DateTime start;
+    private final DateTime end;
+    private final int maxActivities;
+    private final double density;
+    private final Duration minDuration;
+    private final Duration medianDuration;
+    private final Duration maxDuration;
+    private final String[] names;
+    // Cumulative popularity of the names, used to pick names with a binary search
+    private final double[] nameWeights;
+    private final double edgeCaseRate;
+    private final Duration fragmentDuration;
+
+    private ActivityHistoryGenerator(Builder builder) {
+        this.seed = builder.seed;
+        this.zone = builder.zone;
+        this.start = builder.start.withZone(builder.zone);
+        this.end = builder.end.withZone(builder.zone);
+        this.maxActivities = builder.maxActivities;
+        this.density = builder.density;
+        this.minDuration = builder.minDuration;
+        this.medianDuration = builder.medianDuration;
+        this.maxDuration = builder.maxDuration;
+        this.edgeCaseRate = builder.edgeCaseRate;
+        this.fragmentDuration = builder.fragmentDuration;
+
+        // Zipf-like popularity: the i-th name is 1/(i+1) as likely as the first
+        this.names = new String[builder.nameCount];
+        this.nameWeights = new double[builder.nameCount];
+        double total = 0;
+        for (int i = 0; i < names.length; i++) {
+            names[i] = "Activity " + i;
+            total += 1.0 / (i + 1);
+            nameWeights[i] = total;
+        }
+        for (int i = 0; i < nameWeights.length; i++) {
+            nameWeights[i] /= total;
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return the whole history.  Prefer {@link #iterator()} for very long histories.
+     */
+    public List<Activity> generate() {
+        return Lists.newArrayList(iterator());
+    }
+
+    /**
+     * Stream the history without holding all of it in memory.
+     */
+    @Override
+    public Iterator<Activity> iterator() {
+        return new AbstractIterator<Activity>() {
+            private final Random random = new Random(seed);
+            private long time = start.getMillis();
+            private int count = 0;
+
+            @Override
+            protected Activity computeNext() {
+                if (count >= maxActivities) {
+                    return endOfData();
+                }
+
+                time += nextGap(random);
+                long activityStart;
+                long activityEnd;
+
+                Shape shape = nextShape(random);
+                long transition = zone.nextTransition(time);
+                if (shape == Shape.SPANS_DST_TRANSITION &&
+                        transition > time && transition - time < Period.days(1).toStandardDuration().getMillis()) {
+                    activityStart = Math.max(time, transition - randomMinutes(random, 5, 60));
+                    activityEnd = transition + randomMinutes(random, 5, 90);
+                } else if (shape == Shape.SPANS_MIDNIGHT) {
+                    long midnight = new DateTime(time, zone).toDateMidnight().plusDays(1).getMillis();
+                    activityStart = Math.max(time, midnight - randomMinutes(random, 5, 60));
+                    activityEnd = midnight + randomMinutes(random, 5, 120);
+                } else if (shape == Shape.EXACT_FRAGMENTS) {
+                    activityStart = time;
+                    activityEnd = time + (1 + random.nextInt(3)) * fragmentDuration.getMillis();
+                } else {
+                    activityStart = time;
+                    activityEnd = time + nextDuration(random);
+                }
+
+                if (activityEnd > end.getMillis()) {
+                    return endOfData();
+                }
+
+                time = activityEnd;
+                count++;
+                return new Activity(nextName(random), new DateTime(activityStart, zone), new DateTime(activityEnd, zone));
+            }
+        };
+    }
+
+    private Shape nextShape(Random random) {
+        if (random.nextDouble() >= edgeCaseRate) {
+            return Shape.NORMAL;
+        }
+        return Shape.values()[1 + random.nextInt(Shape.values().length - 1)];
+    }
+
+    /**
+     * Log-normal around the median, clamped to [minDuration, maxDuration] and rounded to the second.
+     */
+    private long nextDuration(Random random) {
+        double millis = medianDuration.getMillis() * Math.exp(random.nextGaussian());
+        long duration = Math.round(millis / SECOND_MILLIS) * SECOND_MILLIS;
+        return Math.min(Math.max(duration, minDuration.getMillis()), maxDuration.getMillis());
+    }
+
+    /**
+     * Exponentially distributed free time, sized so that about a density fraction of the time is taken up by
+     * activities.
+     */
+    private long nextGap(Random random) {
+        if (density >= 1) {
+            return 0;
+        }
+        double mean = medianDuration.getMillis() * (1 - density) / density;
+        double gap = -mean * Math.log(1 - random.nextDouble());
+        return Math.round(gap / SECOND_MILLIS) * SECOND_MILLIS;
+    }
+
+    private String nextName(Random random) {
+        int index = Arrays.binarySearch(nameWeights, random.nextDouble());
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return names[Math.min(index, names.length - 1)];
+    }
+
+    private static long randomMinutes(Random random, int min, int max) {
+        return Period.minutes(min + random.nextInt(max - min + 1)).toStandardDuration().getMillis();
+    }
+
+    /**
+     * Settings for the generated history.  Defaults to a densely logged week in the default time zone.
+     */
+    public static class Builder {
+        private long seed = 0;
+        private DateTimeZone zone = DateTimeZone.getDefault();
+        private DateTime start = new DateTime(2014, 7, 1, 0, 0, 0, 0);
+        private DateTime end = null;
+        private int maxActivities = Integer.MAX_VALUE;
+        private double density = 0.9;
+        private Duration minDuration = Period.minutes(1).toStandardDuration();
+        private Duration medianDuration = Period.minutes(40).toStandardDuration();
+        private Duration maxDuration = Period.hours(10).toStandardDuration();
+        private int nameCount = 20;
+        private double edgeCaseRate = 0.05;
+        private Duration fragmentDuration = Period.hours(1).toStandardDuration();
+
+        private Builder() {
+        }
+
+        public Builder seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        /**
+         * @param zone the time zone of the generated DateTimes, and whose midnights and DST transitions to hit
+         */
+        public Builder zone(DateTimeZone zone) {
+            this.zone = Preconditions.checkNotNull(zone);
+            return this;
+        }
+
+        /**
+         * @param start the earliest time an Activity can start
+         * @param end no Activity will end after the end
+         */
+        public Builder range(DateTime start, DateTime end) {
+            Preconditions.checkArgument(start.isBefore(end),
+                    String.format("The start [%s] must be before the end [%s].", start, end));
+            this.start = start;
+            this.end = end;
+            return this;
+        }
+
+        /**
+         * @param start the earliest time an Activity can start
+         * @param days how many days the history lasts
+         */
+        public Builder days(DateTime start, int days) {
+            return range(start, start.plusDays(days));
+        }
+
+        /**
+         * @param maxActivities stop after this many Activities even if the end hasn't been reached
+         */
+        public Builder maxActivities(int maxActivities) {
+            Preconditions.checkArgument(maxActivities >= 0, "The max number of activities cannot be negative.");
+            this.maxActivities = maxActivities;
+            return this;
+        }
+
+        /**
+         * @param density the fraction of the time covered by Activities, in (0, 1].  1 leaves no free time.
+         */
+        public Builder density(double density) {
+            Preconditions.checkArgument(density > 0 && density <= 1,
+                    String.format("The density must be in (0, 1], got [%s].", density));
+            this.density = density;
+            return this;
+        }
+
+        /**
+         * @param min the shortest Activity
+         * @param median half of the Activities are shorter, half are longer
+         * @param max the longest Activity, not counting the edge cases
+         */
+        public Builder durations(Duration min, Duration median, Duration max) {
+            Preconditions.checkArgument(min.getMillis() > 0 && !median.isShorterThan(min) && !max.isShorterThan(median),
+                    String.format("Expected 0 < min <= median <= max, got [%s], [%s], [%s].", min, median, max));
+            this.minDuration = min;
+            this.medianDuration = median;
+            this.maxDuration = max;
+            return this;
+        }
+
+        /**
+         * @param nameCount how many distinct activity names to use
+         */
+        public Builder names(int nameCount) {
+            Preconditions.checkArgument(nameCount > 0, "There must be at least one activity name.");
+            this.nameCount = nameCount;
+            return this;
+        }
+
+        /**
+         * @param edgeCaseRate the fraction of Activities to place on an edge case, in [0, 1]
+         */
+        public Builder edgeCaseRate(double edgeCaseRate) {
+            Preconditions.checkArgument(edgeCaseRate >= 0 && edgeCaseRate <= 1,
+                    String.format("The edge case rate must be in [0, 1], got [%s].", edgeCaseRate));
+            this.edgeCaseRate = edgeCaseRate;
+            return this;
+        }
+
+        /**
+         * @param fragmentDuration the max fragment duration of the store.  Some Activities will be an exact
+         *                         multiple of it long.
+         */
+        public Builder fragmentDuration(Duration fragmentDuration) {
+            Preconditions.checkArgument(fragmentDuration.getMillis() > 0, "The fragment duration must be positive.");
+            this.fragmentDuration = fragmentDuration;
+            return this;
+        }
+
+        public ActivityHistoryGenerator build() {
+            if (end == null) {
+                end = start.plusDays(7);
+            }
+            return new ActivityHistoryGenerator(this);
+        }
+    }
+}
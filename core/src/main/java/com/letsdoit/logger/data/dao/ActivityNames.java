@@ -0,0 +1,87 @@
+package com.letsdoit.logger.data.dao;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Interns activity names into small integer ids.
+ *
+ * The same handful of activity names repeat across thousands of fragments.  Holding an int per fragment instead of a
+ * String lets the timeline store names in a primitive column and compare them with ==.  Every lookup of an id returns
+ * the same String instance, so Activities built from the cache share their names as well.
+ *
+ * Ids either come from {@link #intern(String)}, which hands out the next free id, or from {@link #put(int, String)}
+ * when another store (e.g. the database's name dictionary) is the authority on ids.  Don't mix the two on one
+ * instance.
+ *
+ * Thread safe.  Ids are never reused or forgotten for the lifetime of the instance.
+ */
+public class ActivityNames {
+    public static final int NO_ID = -1;
+
+    private final Map<String, Integer> ids = Maps.newHashMap();
+    private String[] names = new String[16];
+    private int nextId = 0;
+
+    /**
+     * Look up the id of the name, assigning the next free id if the name hasn't been seen before.
+     *
+     * @param name the activity name
+     * @return the id of the name
+     */
+    public synchronized int intern(String name) {
+        Preconditions.checkNotNull(name, "Activity name cannot be null.");
+        Integer id = ids.get(name);
+        if (id == null) {
+            id = nextId;
+            put(id, name);
+        }
+        return id;
+    }
+
+    /**
+     * Record a name under an id assigned elsewhere.
+     *
+     * @param id the id of the name, must not already be used by a different name
+     * @param name the activity name
+     */
+    public synchronized void put(int id, String name) {
+        Preconditions.checkNotNull(name, "Activity name cannot be null.");
+        Preconditions.checkArgument(id >= 0, "Activity name ids cannot be negative.");
+
+        if (id >= names.length) {
+            names = Arrays.copyOf(names, Math.max(id + 1, names.length * 2));
+        }
+        Preconditions.checkArgument(names[id] == null || names[id].equals(name),
+                "Activity name id " + id + " is already used by " + names[id]);
+
+        names[id] = name;
+        ids.put(name, id);
+        nextId = Math.max(nextId, id + 1);
+    }
+
+    /**
+     * @param name the activity name
+     * @return the id of the name, or NO_ID if it hasn't been interned
+     */
+    public synchronized int getId(String name) {
+        Integer id = ids.get(name);
+        return id == null ? NO_ID : id;
+    }
+
+    public synchronized boolean contains(int id) {
+        return id >= 0 && id < names.length && names[id] != null;
+    }
+
+    /**
+     * @param id an id returned by {@link #intern(String)} or recorded with {@link #put(int, String)}
+     * @return the activity name for the id
+     */
+    public synchronized String getName(int id) {
+        Preconditions.checkArgument(contains(id), "Unknown activity name id " + id);
+        return names[id];
+    }
+}
@@ -0,0 +1,308 @@
+package com.letsdoit.logger.data.dao;
+
+import com.google.common.base.Preconditions;
+
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A compact, column-oriented list of Activities sorted by start time.
+ *
+ * Instead of holding an Activity with two DateTimes and a String per entry, the timeline keeps parallel arrays of
+ * epoch millis and interned name ids.  Loading a few days of history becomes a handful of array writes instead of
+ * thousands of short-lived objects.
+ *
+ * Callers that want the familiar getters can use an {@link Entry}, a reusable flyweight that only creates DateTimes
+ * when they're asked for, or {@link #asActivities()}, which materializes Activities on access.
+ *
+ * Assumes there are no overlapping Activities, so the end times are sorted as well as the start times.
+ *
+ * Not thread safe.  Build it on one thread, then only read it.
+ */
+public class ActivityTimeline {
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private final ActivityNames names;
+
+    private long[] starts;
+    private long[] ends;
+    private int[] nameIds;
+    private int size;
+
+    public ActivityTimeline(ActivityNames names) {
+        this(names, DEFAULT_CAPACITY);
+    }
+
+    public ActivityTimeline(ActivityNames names, int capacity) {
+        this.names = names;
+        this.starts = new long[capacity];
+        this.ends = new long[capacity];
+        this.nameIds = new int[capacity];
+        this.size = 0;
+    }
+
+    /**
+     * Add an Activity to the end of the timeline.
+     *
+     * @param nameId the interned name of the activity
+     * @param startMillis the activity start, no earlier than the start of the last activity in the timeline
+     * @param endMillis the activity end
+     */
+    public void append(int nameId, long startMillis, long endMillis) {
+        Preconditions.checkArgument(startMillis < endMillis, "Activity start must be before the end.");
+        Preconditions.checkArgument(size == 0 || starts[size - 1] <= startMillis,
+                "Activities must be appended in start time order.");
+
+        if (size == starts.length) {
+            int capacity = Math.max(DEFAULT_CAPACITY, size * 2);
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            nameIds = Arrays.copyOf(nameIds, capacity);
+        }
+
+        starts[size] = startMillis;
+        ends[size] = endMillis;
+        nameIds[size] = nameId;
+        size++;
+    }
+
+    public void append(Activity activity) {
+        append(names.intern(activity.getActivityName()),
+                activity.getActivityStart().getMillis(), activity.getActivityEnd().getMillis());
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public ActivityNames getNames() {
+        return names;
+    }
+
+    public long getStartMillis(int index) {
+        Preconditions.checkElementIndex(index, size);
+        return starts[index];
+    }
+
+    public long getEndMillis(int index) {
+        Preconditions.checkElementIndex(index, size);
+        return ends[index];
+    }
+
+    public int getNameId(int index) {
+        Preconditions.checkElementIndex(index, size);
+        return nameIds[index];
+    }
+
+    public String getName(int index) {
+        return names.getName(getNameId(index));
+    }
+
+    /**
+     * Binary search for the first activity that isn't completely before the time.
+     *
+     * @param timeMillis the time the activity should end after
+     * @return the index of the first activity ending after the time, or size() if there is none
+     */
+    public int indexOfFirstEndingAfter(long timeMillis) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (ends[mid] > timeMillis) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Check whether any activity overlaps the [start, end) period with a binary search.
+     *
+     * @param startMillis the start of the period
+     * @param endMillis the end of the period
+     * @return true if an activity ends after the start and starts before the end
+     */
+    public boolean overlaps(long startMillis, long endMillis) {
+        int index = indexOfFirstEndingAfter(startMillis);
+        return index < size && starts[index] < endMillis;
+    }
+
+    /**
+     * Merge two timelines loaded from the same store, keeping only the activities that overlap [start, end).
+     *
+     * The timelines may have been loaded for adjacent or overlapping ranges, so an activity crossing the boundary can
+     * be in both.  Activities don't overlap, so two entries with the same start are the same activity and it is only
+     * kept once.
+     *
+     * @param first a timeline of activities
+     * @param second another timeline of activities using the same names
+     * @param startMillis activities ending at or before the start are dropped
+     * @param endMillis activities starting at or after the end are dropped
+     * @return a new timeline with the activities of both timelines in the range
+     */
+    public static ActivityTimeline merge(ActivityTimeline first, ActivityTimeline second,
+                                         long startMillis, long endMillis) {
+        Preconditions.checkArgument(first.names == second.names,
+                "Only timelines sharing the same activity names can be merged.");
+
+        ActivityTimeline merged = new ActivityTimeline(first.names, Math.max(1, first.size + second.size));
+        int i = first.indexOfFirstEndingAfter(startMillis);
+        int j = second.indexOfFirstEndingAfter(startMillis);
+
+        while (true) {
+            boolean hasFirst = i < first.size && first.starts[i] < endMillis;
+            boolean hasSecond = j < second.size && second.starts[j] < endMillis;
+
+            if (hasFirst && (!hasSecond || first.starts[i] <= second.starts[j])) {
+                if (hasSecond && first.starts[i] == second.starts[j]) {
+                    // The same activity was loaded into both timelines
+                    j++;
+                }
+                merged.append(first.nameIds[i], first.starts[i], first.ends[i]);
+                i++;
+            } else if (hasSecond) {
+                merged.append(second.nameIds[j], second.starts[j], second.ends[j]);
+                j++;
+            } else {
+                break;
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Replace the part of a timeline that overlaps [start, end) with freshly loaded activities, e.g. after activities
+     * were written to that range of the store.
+     *
+     * @param base a timeline of activities
+     * @param replacement all of the activities overlapping [start, end), using the same names as the base
+     * @param startMillis the start of the replaced range
+     * @param endMillis the end of the replaced range
+     * @return a new timeline with the base's activities outside of the range and the replacement's inside of it
+     */
+    public static ActivityTimeline splice(ActivityTimeline base, ActivityTimeline replacement,
+                                          long startMillis, long endMillis) {
+        Preconditions.checkArgument(base.names == replacement.names,
+                "Only timelines sharing the same activity names can be spliced.");
+
+        ActivityTimeline spliced = new ActivityTimeline(base.names, Math.max(1, base.size + replacement.size));
+        int i = 0;
+        // Activities that end before the range are kept
+        for (int firstOverlapping = base.indexOfFirstEndingAfter(startMillis); i < firstOverlapping; i++) {
+            spliced.append(base.nameIds[i], base.starts[i], base.ends[i]);
+        }
+        for (int j = 0; j < replacement.size; j++) {
+            spliced.append(replacement.nameIds[j], replacement.starts[j], replacement.ends[j]);
+        }
+        // Skip the old activities overlapping the range, keep the ones starting after it
+        while (i < base.size && base.starts[i] < endMillis) {
+            i++;
+        }
+        for (; i < base.size; i++) {
+            spliced.append(base.nameIds[i], base.starts[i], base.ends[i]);
+        }
+        return spliced;
+    }
+
+    /**
+     * Point a flyweight at one of the activities in the timeline.
+     *
+     * @param index the activity to look at
+     * @param reuse a previously returned Entry to repoint, or null to create a new one
+     * @return an Entry for the activity at the index
+     */
+    public Entry get(int index, Entry reuse) {
+        Preconditions.checkElementIndex(index, size);
+        Entry entry = reuse == null ? new Entry() : reuse;
+        entry.timeline = this;
+        entry.index = index;
+        return entry;
+    }
+
+    public Activity getActivity(int index) {
+        return new Activity(getName(index), new DateTime(getStartMillis(index)), new DateTime(getEndMillis(index)));
+    }
+
+    /**
+     * @return a read-only view of the timeline that creates each Activity when it is accessed
+     */
+    public List<Activity> asActivities() {
+        return new AbstractList<Activity>() {
+            @Override
+            public Activity get(int index) {
+                return getActivity(index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * A movable view of one of the activities in an ActivityTimeline.  Has the same getters as Activity, but only
+     * allocates when a DateTime or Duration is requested.
+     */
+    public static class Entry {
+        private ActivityTimeline timeline;
+        private int index;
+
+        public int getIndex() {
+            return index;
+        }
+
+        public int getNameId() {
+            return timeline.nameIds[index];
+        }
+
+        public long getActivityStartMillis() {
+            return timeline.starts[index];
+        }
+
+        public long getActivityEndMillis() {
+            return timeline.ends[index];
+        }
+
+        public String getActivityName() {
+            return timeline.names.getName(getNameId());
+        }
+
+        public DateTime getActivityStart() {
+            return new DateTime(getActivityStartMillis());
+        }
+
+        public DateTime getActivityEnd() {
+            return new DateTime(getActivityEndMillis());
+        }
+
+        public Duration getActivityDuration() {
+            return new Duration(getActivityEndMillis() - getActivityStartMillis());
+        }
+
+        public Activity toActivity() {
+            return timeline.getActivity(index);
+        }
+
+        @Override
+        public String toString() {
+            return "Entry{" +
+                    "index=" + index +
+                    ", activityName='" + getActivityName() + '\'' +
+                    ", activityStart=" + getActivityStartMillis() +
+                    ", activityEnd=" + getActivityEndMillis() +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.letsdoit.logger.data.dao;
+
+import com.google.common.collect.Lists;
+
+import org.joda.time.DateTimeZone;
+import org.joda.time.Duration;
+import org.joda.time.LocalDate;
+
+import java.util.List;
+
+/**
+ * How much time went to one activity name on one day.  Days are calendar days in the zone the totals were split in.
+ */
+public class DailyTotal {
+    private final LocalDate day;
+    private final String activityName;
+    private final Duration duration;
+
+    public DailyTotal(LocalDate day, String activityName, Duration duration) {
+        this.day = day;
+        this.activityName = activityName;
+        this.duration = duration;
+    }
+
+    /**
+     * Split the Activity at midnight into the time it took on each day.
+     *
+     * [--|-----|---]
+     *
+     * Totals that are added up or taken away again have to be split in the same zone, so the zone is passed in rather
+     * than taken from the default, which changes when the user travels.
+     *
+     * @param activity an Activity of any duration
+     * @param zone the time zone whose midnights separate the days
+     * @return the time spent on the Activity on each day it touches, in day order
+     */
+    public static List<DailyTotal> split(Activity activity, DateTimeZone zone) {
+        List<DailyTotal> totals = Lists.newArrayList();
+        long startMs = activity.getActivityStart().getMillis();
+        long endMs = activity.getActivityEnd().getMillis();
+        LocalDate day = new LocalDate(startMs, zone);
+        while (startMs < endMs) {
+            LocalDate nextDay = day.plusDays(1);
+            long dayEndMs = Math.min(endMs, nextDay.toDateMidnight(zone).getMillis());
+            totals.add(new DailyTotal(day, activity.getActivityName(), new Duration(dayEndMs - startMs)));
+            startMs = dayEndMs;
+            day = nextDay;
+        }
+        return totals;
+    }
+
+    public LocalDate getDay() {
+        return day;
+    }
+
+    public String getActivityName() {
+        return activityName;
+    }
+
+    public Duration getDuration() {
+        return duration;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        DailyTotal total = (DailyTotal) o;
+
+        if (!day.equals(total.day)) return false;
+        if (!activityName.equals(total.activityName)) return false;
+        if (!duration.equals(total.duration)) return false;
+
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = day.hashCode();
+        result = 31 * result + activityName.hashCode();
+        result = 31 * result + duration.hashCode();
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "DailyTotal{" +
+                "day=" + day +
+                ", activityName='" + activityName + '\'' +
+                ", duration=" + duration +
+                '}';
+    }
+}
@@ -1,6 +1,9 @@
 package com.letsdoit.logger.data.dao;
 
 import com.google.common.collect.Lists;
+import com.letsdoit.logger.metrics.Counter;
+import com.letsdoit.logger.metrics.Metrics;
+import com.letsdoit.logger.metrics.Timer;
 
 import org.joda.time.DateTime;
 import org.joda.time.Duration;
@@ -11,6 +14,8 @@ import java.util.List;
  * Created by Andrey on 6/13/2015.
  */
 public class Fragmenter {
+    private static final Timer DEFRAGMENT_TIMER = Metrics.timer("Fragmenter.defragment");
+    private static final Counter DEFRAGMENTED_ROWS = Metrics.counter("Fragmenter.defragment.rows");
 
     /**
      * Chops up the activity into fragments no larger than the maxDuration.
@@ -80,6 +85,15 @@ public class Fragmenter {
      * @return List of Activities sorted by Activity startTime
      */
     public static List<Activity> defragment(List<ActivityFragment> fragments) {
+        long startNanos = DEFRAGMENT_TIMER.start();
+        try {
+            return defragmentList(fragments);
+        } finally {
+            DEFRAGMENT_TIMER.stop(startNanos);
+        }
+    }
+
+    private static List<Activity> defragmentList(List<ActivityFragment> fragments) {
         Activity previousActivity = null;
         List<Activity> activities = Lists.newArrayList();
         for (ActivityFragment fragment : fragments) {
@@ -101,4 +115,31 @@ public class Fragmenter {
         return activities;
     }
 
+    /**
+     * Columnar version of {@link #defragment(java.util.List)}, for callers reading fragments one row at a time.
+     * Appends the fragment's Activity to the timeline unless it is a subsequent fragment of the last Activity in the
+     * timeline.  Does not allocate.
+     *
+     * Fragments must be fed in fragmentStartTime order.  Assumes there are no overlapping Activities.
+     *
+     * @param timeline the timeline of defragmented Activities to append to
+     * @param nameId the interned name of the fragment's Activity
+     * @param activityStartMillis the start of the fragment's Activity
+     * @param activityEndMillis the end of the fragment's Activity
+     */
+    public static void defragment(ActivityTimeline timeline, int nameId,
+                                  long activityStartMillis, long activityEndMillis) {
+        DEFRAGMENTED_ROWS.increment();
+        int last = timeline.size() - 1;
+
+        // Skip subsequent fragments from the same Activity
+        if (last >= 0 &&
+                timeline.getNameId(last) == nameId &&
+                timeline.getStartMillis(last) == activityStartMillis) {
+            return;
+        }
+
+        timeline.append(nameId, activityStartMillis, activityEndMillis);
+    }
+
 }
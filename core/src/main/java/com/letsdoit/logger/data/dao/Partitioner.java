@@ -1,12 +1,15 @@
 package com.letsdoit.logger.data.dao;
 
+import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
+import com.letsdoit.logger.metrics.Metrics;
+import com.letsdoit.logger.metrics.Timer;
 
 import org.joda.time.DateTime;
 import org.joda.time.Duration;
 
+import java.util.Iterator;
 import java.util.List;
-import java.util.ListIterator;
 
 /**
  * Converts a list of Activities into a list of ActivityIntervals.
@@ -18,6 +21,7 @@ import java.util.ListIterator;
  * Created by Andrey on 6/14/2015.
  */
 public class Partitioner {
+    private static final Timer PARTITION_TIMER = Metrics.timer("Partitioner.partition");
 
     /**
      * Split the time between the start and end into intervals of the specified duration. Separate any Activities
@@ -39,8 +43,33 @@ public class Partitioner {
             List<Activity> activities,
             DateTime start, DateTime end,
             Duration intervalDuration) {
+        return partition(activities.iterator(), start, end, intervalDuration);
+    }
+
+    /**
+     * Same as {@link #partition(java.util.List, org.joda.time.DateTime, org.joda.time.DateTime,
+     * org.joda.time.Duration)}, but consumes the Activities in a single pass, e.g. straight from a store's
+     * {@link com.letsdoit.logger.data.store.ActivityIterator}.  Only the Activity being partitioned is held on to.
+     *
+     * @param activities - Activities sorted by start time.  Read up to the first one starting at or after the end.
+     */
+    public static List<ActivityInterval> partition(
+            Iterator<Activity> activities,
+            DateTime start, DateTime end,
+            Duration intervalDuration) {
+        long startNanos = PARTITION_TIMER.start();
+        try {
+            return partitionIterator(activities, start, end, intervalDuration);
+        } finally {
+            PARTITION_TIMER.stop(startNanos);
+        }
+    }
+
+    private static List<ActivityInterval> partitionIterator(
+            Iterator<Activity> activityIter,
+            DateTime start, DateTime end,
+            Duration intervalDuration) {
 
-        ListIterator<Activity> activityIter = activities.listIterator();
         Activity activity = findFirstActivityEndingAfter(start, activityIter);
 
         List<ActivityInterval> intervals = Lists.newArrayList();
@@ -60,6 +89,74 @@ public class Partitioner {
         return intervals;
     }
 
+    /**
+     * Same as {@link #partition(java.util.List, org.joda.time.DateTime, org.joda.time.DateTime,
+     * org.joda.time.Duration)}, but reads the Activities from a timeline.  Activities are only materialized for the
+     * part of the timeline that overlaps the [start, end) period.
+     */
+    public static List<ActivityInterval> partition(
+            ActivityTimeline timeline,
+            DateTime start, DateTime end,
+            Duration intervalDuration) {
+        int first = timeline.indexOfFirstEndingAfter(start.getMillis());
+        List<Activity> activities = timeline.asActivities().subList(first, timeline.size());
+        return partition(activities, start, end, intervalDuration);
+    }
+
+    /**
+     * Allocation-free partitioning of a timeline.  Instead of building ActivityIntervals, records which range of
+     * the timeline overlaps each interval: interval i is [start + i * intervalMillis, start + (i + 1) *
+     * intervalMillis) and the Activities overlapping it are at indices [firstIndices[i], endIndices[i]).
+     *
+     * @param timeline the Activities to partition
+     * @param startMillis the start of the first interval
+     * @param endMillis no interval will start at or after the end
+     * @param intervalMillis how long each interval is
+     * @param firstIndices output, the index of the first Activity overlapping each interval
+     * @param endIndices output, one past the index of the last Activity overlapping each interval
+     * @return the number of intervals written to the output arrays
+     */
+    public static int partition(
+            ActivityTimeline timeline,
+            long startMillis, long endMillis, long intervalMillis,
+            int[] firstIndices, int[] endIndices) {
+        Preconditions.checkArgument(intervalMillis > 0, "The interval duration must be positive.");
+        long startNanos = PARTITION_TIMER.start();
+        try {
+            return partitionIndices(timeline, startMillis, endMillis, intervalMillis, firstIndices, endIndices);
+        } finally {
+            PARTITION_TIMER.stop(startNanos);
+        }
+    }
+
+    private static int partitionIndices(
+            ActivityTimeline timeline,
+            long startMillis, long endMillis, long intervalMillis,
+            int[] firstIndices, int[] endIndices) {
+        int numIntervals = 0;
+        int index = timeline.indexOfFirstEndingAfter(startMillis);
+
+        for (long intervalStart = startMillis; intervalStart < endMillis; intervalStart += intervalMillis) {
+            long intervalEnd = intervalStart + intervalMillis;
+
+            // Skip activities that ended by the start of this interval.  The previous interval's last activity may
+            // still overlap this one, so don't move past it until it ends.
+            while (index < timeline.size() && timeline.getEndMillis(index) <= intervalStart) {
+                index++;
+            }
+
+            int end = index;
+            while (end < timeline.size() && timeline.getStartMillis(end) < intervalEnd) {
+                end++;
+            }
+
+            firstIndices[numIntervals] = index;
+            endIndices[numIntervals] = end;
+            numIntervals++;
+        }
+        return numIntervals;
+    }
+
     /**
      * Find the first activity that's not completely before the start, if there is one.
      *
@@ -67,7 +164,7 @@ public class Partitioner {
      * @param activityIter - an iterator through the list of Activities
      * @return the first activity that's not completely before the start, or null if none exist.
      */
-    private static Activity findFirstActivityEndingAfter(DateTime start, ListIterator<Activity> activityIter) {
+    private static Activity findFirstActivityEndingAfter(DateTime start, Iterator<Activity> activityIter) {
 
         Activity activity = null;
         if (activityIter.hasNext()) {
@@ -105,7 +202,7 @@ public class Partitioner {
      */
     private static Activity populateFragmentsForInterval(
             DateTime intervalStart, DateTime intervalEnd,
-            Activity activity, ListIterator<Activity> activityIter,
+            Activity activity, Iterator<Activity> activityIter,
             List<ActivityFragment> fragments) {
 
         DateTime fragmentEnd = intervalStart;
@@ -0,0 +1,268 @@
+package com.letsdoit.logger.data.importer;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.letsdoit.logger.data.dao.Activity;
+import com.letsdoit.logger.data.store.ActivityIterator;
+import com.letsdoit.logger.data.store.ActivityStore;
+import com.letsdoit.logger.logging.AppLog;
+import com.letsdoit.logger.metrics.Counter;
+import com.letsdoit.logger.metrics.Metrics;
+import com.letsdoit.logger.metrics.Timer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Backfills an ActivityStore with a history exported from another tool, e.g. years of logged time.
+ *
+ * The import streams in three steps, so memory stays bounded however long the history is:
+ * <ol>
+ * <li>The Activities are read from the input and sorted with an {@link ActivitySorter}, which spills sorted runs to
+ * disk.</li>
+ * <li>The sorted Activities are checked one at a time: an Activity has to end after it starts, and must not overlap
+ * the Activity before it.</li>
+ * <li>The valid Activities are collected into batches, checked against the Activities already in the store with a
+ * single range scan per batch, and each batch is written with one call to
+ * {@link ActivityStore#addActivities(java.util.Collection)}, i.e. in one transaction.  The store fragments the
+ * Activities as it writes them.</li>
+ * </ol>
+ *
+ * Invalid Activities either fail the import with an {@link ImportException} or, with skipInvalid, are logged and
+ * skipped.  A failed import keeps the batches it already wrote.  Since an Activity already in the store overlaps
+ * itself, running the same import again with skipInvalid picks up where the failed one stopped.
+ *
+ * The store must be open for the duration of the import.
+ */
+public class ActivityImporter {
+    private static final String TAG = "ADP_ActivityImporter";
+
+    private static final Timer IMPORT_TIMER = Metrics.timer("ActivityImporter.import");
+    private static final Timer BATCH_TIMER = Metrics.timer("ActivityImporter.writeBatch");
+    private static final Counter ACTIVITIES_IMPORTED = Metrics.counter("ActivityImporter.activitiesImported");
+
+    private final ActivityStore store;
+    private final File tempDirectory;
+    private final int runSize;
+    private final int batchSize;
+    private final boolean skipInvalid;
+    private final ImportListener listener;
+
+    // Progress of the import that is running
+    private long startMillis;
+    private int activitiesRead;
+    private int activitiesWritten;
+    private int activitiesSkipped;
+    private int fragmentsWritten;
+
+    private ActivityImporter(Builder builder) {
+        this.store = builder.store;
+        this.tempDirectory = builder.tempDirectory;
+        this.runSize = builder.runSize;
+        this.batchSize = builder.batchSize;
+        this.skipInvalid = builder.skipInvalid;
+        this.listener = builder.listener;
+    }
+
+    /**
+     * @param store the store to import into
+     */
+    public static Builder builder(ActivityStore store) {
+        return new Builder(store);
+    }
+
+    /**
+     * Import every Activity the reader has.  The reader is not closed.
+     *
+     * @param reader the exported history, in any order
+     * @return how many Activities were read, written and skipped, and how long it took
+     * @throws ImportException if the input is malformed, or has an invalid Activity and invalid Activities are not
+     * skipped
+     * @throws IOException on error reading the input or spilling to the temp directory
+     */
+    public synchronized ImportProgress importActivities(ActivityReader reader) throws IOException {
+        long startNanos = IMPORT_TIMER.start();
+        startMillis = System.currentTimeMillis();
+        activitiesRead = 0;
+        activitiesWritten = 0;
+        activitiesSkipped = 0;
+        fragmentsWritten = 0;
+
+        ActivitySorter sorter = new ActivitySorter(tempDirectory, runSize);
+        try {
+            Activity activity;
+            while ((activity = reader.read()) != null) {
+                activitiesRead++;
+                if (!activity.getActivityEnd().isAfter(activity.getActivityStart())) {
+                    reject("Can't import %s because it doesn't end after it starts", activity);
+                    continue;
+                }
+
+                int runs = sorter.getRunCount();
+                sorter.add(activity);
+                if (sorter.getRunCount() != runs) {
+                    reportProgress();
+                }
+            }
+
+            ActivityReader sorted = sorter.sorted();
+            List<Activity> batch = Lists.newArrayListWithCapacity(batchSize);
+            Activity previous = null;
+            while ((activity = sorted.read()) != null) {
+                if (previous != null && activity.getActivityStart().isBefore(previous.getActivityEnd())) {
+                    reject("Can't import %s because it overlaps %s", activity, previous);
+                    continue;
+                }
+                batch.add(activity);
+                previous = activity;
+
+                if (batch.size() == batchSize) {
+                    writeBatch(batch);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                writeBatch(batch);
+            }
+        } finally {
+            sorter.close();
+            IMPORT_TIMER.stop(startNanos);
+        }
+
+        ImportProgress progress = getProgress();
+        AppLog.i(TAG, "Imported %s of %s activities in %s ms, %.0f activities/s", progress.getActivitiesWritten(),
+                progress.getActivitiesRead(), progress.getElapsedMillis(), progress.getActivitiesPerSecond());
+        return progress;
+    }
+
+    /**
+     * Write a batch of sorted, non-overlapping Activities that don't overlap the ones in the store.
+     */
+    private void writeBatch(List<Activity> batch) throws IOException {
+        long startNanos = BATCH_TIMER.start();
+        try {
+            List<Activity> accepted = Lists.newArrayListWithCapacity(batch.size());
+
+            // Both the batch and the stored Activities are sorted and don't overlap among themselves, so one pass
+            // over each finds every overlap between them
+            ActivityIterator stored = store.iterateActivitiesInRange(batch.get(0).getActivityStart(),
+                    batch.get(batch.size() - 1).getActivityEnd());
+            try {
+                Activity existing = stored.hasNext() ? stored.next() : null;
+                for (Activity activity : batch) {
+                    while (existing != null && !existing.getActivityEnd().isAfter(activity.getActivityStart())) {
+                        existing = stored.hasNext() ? stored.next() : null;
+                    }
+                    if (existing != null && existing.getActivityStart().isBefore(activity.getActivityEnd())) {
+                        reject("Can't import %s because it overlaps %s in the store", activity, existing);
+                    } else {
+                        accepted.add(activity);
+                    }
+                }
+            } finally {
+                stored.close();
+            }
+
+            fragmentsWritten += store.addActivities(accepted);
+            activitiesWritten += accepted.size();
+            ACTIVITIES_IMPORTED.add(accepted.size());
+        } finally {
+            BATCH_TIMER.stop(startNanos);
+        }
+        reportProgress();
+    }
+
+    /**
+     * Fail the import, or skip the Activity.  The message is only built if it's thrown or logged, since a skipped
+     * re-import can reject every Activity in the history.
+     *
+     * @param format the message, with the Activity as its argument
+     */
+    private void reject(String format, Activity activity) throws ImportException {
+        if (!skipInvalid) {
+            throw new ImportException(String.format(format, activity));
+        }
+        activitiesSkipped++;
+        AppLog.d(TAG, format, activity);
+    }
+
+    /**
+     * @param format the message, with the Activity and the one it conflicts with as its arguments
+     */
+    private void reject(String format, Activity activity, Activity conflict) throws ImportException {
+        if (!skipInvalid) {
+            throw new ImportException(String.format(format, activity, conflict));
+        }
+        activitiesSkipped++;
+        AppLog.d(TAG, format, activity, conflict);
+    }
+
+    private ImportProgress getProgress() {
+        return new ImportProgress(activitiesRead, activitiesWritten, activitiesSkipped, fragmentsWritten,
+                System.currentTimeMillis() - startMillis);
+    }
+
+    private void reportProgress() {
+        if (listener != null) {
+            listener.onProgress(getProgress());
+        }
+    }
+
+    public static class Builder {
+        private final ActivityStore store;
+        private File tempDirectory = null;
+        private int runSize = 50000;
+        private int batchSize = 10000;
+        private boolean skipInvalid = false;
+        private ImportListener listener = null;
+
+        private Builder(ActivityStore store) {
+            this.store = Preconditions.checkNotNull(store);
+        }
+
+        /**
+         * @param tempDirectory where to spill sorted runs, e.g. the app's cache directory.  Null for the system's
+         *                      temp directory.
+         */
+        public Builder tempDirectory(File tempDirectory) {
+            this.tempDirectory = tempDirectory;
+            return this;
+        }
+
+        /**
+         * @param runSize how many Activities to sort in memory before spilling them to the temp directory
+         */
+        public Builder runSize(int runSize) {
+            Preconditions.checkArgument(runSize > 0, "The run size must be positive.");
+            this.runSize = runSize;
+            return this;
+        }
+
+        /**
+         * @param batchSize how many Activities to write in each transaction
+         */
+        public Builder batchSize(int batchSize) {
+            Preconditions.checkArgument(batchSize > 0, "The batch size must be positive.");
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * @param skipInvalid true to skip Activities that can't be stored instead of failing the import
+         */
+        public Builder skipInvalid(boolean skipInvalid) {
+            this.skipInvalid = skipInvalid;
+            return this;
+        }
+
+        public Builder listener(ImportListener listener) {
+            this.listener = listener;
+            return this;
+        }
+
+        public ActivityImporter build() {
+            return new ActivityImporter(this);
+        }
+    }
+}
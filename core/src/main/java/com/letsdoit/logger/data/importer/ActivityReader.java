@@ -0,0 +1,20 @@
+package com.letsdoit.logger.data.importer;
+
+import com.letsdoit.logger.data.dao.Activity;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Reads Activities one at a time out of an exported history, so a history of any length can be imported without
+ * holding it in memory.  The Activities come out in the order they are in the input, which need not be sorted.
+ */
+public interface ActivityReader extends Closeable {
+
+    /**
+     * @return the next Activity, or null once the input has run out
+     * @throws ImportException if the input is malformed
+     * @throws IOException on error reading the input
+     */
+    Activity read() throws IOException;
+}
@@ -0,0 +1,241 @@
+package com.letsdoit.logger.data.importer;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.letsdoit.logger.data.dao.Activity;
+
+import org.joda.time.DateTime;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Sorts any number of Activities by start time in bounded memory.
+ *
+ * Activities are collected in memory until there are runSize of them, then sorted and spilled to a temporary file as
+ * a sorted run.  Reading them back merges the runs, holding one Activity per run.  A history that fits in a single
+ * run never touches the disk.
+ *
+ * The runs are deleted when the sorter is closed.
+ */
+class ActivitySorter implements Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * By start, then by end, so an Activity that overlaps the one before it is always next to it.
+     */
+    static final Comparator<Activity> BY_START_AND_END = new Comparator<Activity>() {
+        @Override
+        public int compare(Activity lhs, Activity rhs) {
+            int byStart = lhs.getActivityStart().compareTo(rhs.getActivityStart());
+            if (byStart != 0) {
+                return byStart;
+            }
+            return lhs.getActivityEnd().compareTo(rhs.getActivityEnd());
+        }
+    };
+
+    private final File directory;
+    private final int runSize;
+    private final List<Activity> buffer;
+    private final List<Run> runs = Lists.newArrayList();
+    private final List<DataInputStream> openRuns = Lists.newArrayList();
+    private boolean sorted = false;
+
+    /**
+     * @param directory where to spill the sorted runs
+     * @param runSize how many Activities to sort in memory at a time
+     */
+    ActivitySorter(File directory, int runSize) {
+        Preconditions.checkArgument(runSize > 0, "The run size must be positive.");
+        this.directory = directory;
+        this.runSize = runSize;
+        this.buffer = Lists.newArrayListWithCapacity(runSize);
+    }
+
+    /**
+     * @param activity an Activity to sort
+     * @throws IOException on error spilling a run to disk
+     */
+    void add(Activity activity) throws IOException {
+        Preconditions.checkState(!sorted, "Activities can't be added once they are being read back.");
+        buffer.add(activity);
+        if (buffer.size() == runSize) {
+            spill();
+        }
+    }
+
+    /**
+     * @return how many runs have been spilled to disk so far
+     */
+    int getRunCount() {
+        return runs.size();
+    }
+
+    /**
+     * Stop taking Activities and read them back in order.  May only be called once.
+     *
+     * @return a reader of every added Activity, sorted by {@link #BY_START_AND_END}
+     * @throws IOException on error opening the runs
+     */
+    ActivityReader sorted() throws IOException {
+        Preconditions.checkState(!sorted, "The Activities can only be read back once.");
+        sorted = true;
+        if (runs.isEmpty()) {
+            Collections.sort(buffer, BY_START_AND_END);
+            return new BufferReader(buffer.iterator());
+        }
+
+        if (!buffer.isEmpty()) {
+            spill();
+        }
+        PriorityQueue<RunReader> heads = new PriorityQueue<RunReader>(runs.size());
+        for (Run run : runs) {
+            DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(run.file),
+                    BUFFER_SIZE));
+            openRuns.add(input);
+            RunReader reader = new RunReader(input, run.size);
+            if (reader.advance()) {
+                heads.add(reader);
+            }
+        }
+        return new MergeReader(heads);
+    }
+
+    /**
+     * Delete the runs.
+     */
+    @Override
+    public void close() {
+        for (DataInputStream input : openRuns) {
+            try {
+                input.close();
+            } catch (IOException e) {
+                // Nothing more to read from it anyway
+            }
+        }
+        for (Run run : runs) {
+            run.file.delete();
+        }
+        runs.clear();
+        buffer.clear();
+    }
+
+    private void spill() throws IOException {
+        Collections.sort(buffer, BY_START_AND_END);
+        File file = File.createTempFile("activities", ".run", directory);
+        runs.add(new Run(file, buffer.size()));
+
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file),
+                BUFFER_SIZE));
+        try {
+            for (Activity activity : buffer) {
+                output.writeUTF(activity.getActivityName());
+                output.writeLong(activity.getActivityStart().getMillis());
+                output.writeLong(activity.getActivityEnd().getMillis());
+            }
+        } finally {
+            output.close();
+        }
+        buffer.clear();
+    }
+
+    private static class Run {
+        private final File file;
+        private final int size;
+
+        private Run(File file, int size) {
+            this.file = file;
+            this.size = size;
+        }
+    }
+
+    /**
+     * The next Activity of one spilled run.
+     */
+    private static class RunReader implements Comparable<RunReader> {
+        private final DataInputStream input;
+        private int remaining;
+        private Activity head;
+
+        private RunReader(DataInputStream input, int size) {
+            this.input = input;
+            this.remaining = size;
+        }
+
+        /**
+         * @return false once the run is used up
+         */
+        private boolean advance() throws IOException {
+            if (remaining == 0) {
+                head = null;
+                return false;
+            }
+            remaining--;
+            String name = input.readUTF();
+            long startMillis = input.readLong();
+            long endMillis = input.readLong();
+            head = new Activity(name, new DateTime(startMillis), new DateTime(endMillis));
+            return true;
+        }
+
+        @Override
+        public int compareTo(RunReader other) {
+            return BY_START_AND_END.compare(head, other.head);
+        }
+    }
+
+    private static class MergeReader implements ActivityReader {
+        private final PriorityQueue<RunReader> heads;
+
+        private MergeReader(PriorityQueue<RunReader> heads) {
+            this.heads = heads;
+        }
+
+        @Override
+        public Activity read() throws IOException {
+            RunReader next = heads.poll();
+            if (next == null) {
+                return null;
+            }
+            Activity activity = next.head;
+            if (next.advance()) {
+                heads.add(next);
+            }
+            return activity;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static class BufferReader implements ActivityReader {
+        private final Iterator<Activity> activities;
+
+        private BufferReader(Iterator<Activity> activities) {
+            this.activities = activities;
+        }
+
+        @Override
+        public Activity read() {
+            return activities.hasNext() ? activities.next() : null;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
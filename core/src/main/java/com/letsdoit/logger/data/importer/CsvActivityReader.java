@@ -0,0 +1,148 @@
+package com.letsdoit.logger.data.importer;
+
+import com.google.common.collect.Lists;
+import com.letsdoit.logger.data.dao.Activity;
+
+import org.joda.time.DateTime;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Reads Activities from comma separated values, one Activity per line:
+ * <pre>
+ * name,start,end
+ * Sleep,2014-07-16T23:30:00,2014-07-17T07:15:00
+ * "Read, then nap",1405591200000,1405598400000
+ * </pre>
+ * The first line is a header naming the columns, which may come in any order.  The name column can also be called
+ * "activity", and columns with any other name are ignored.  Fields can be quoted, with "" for a quote inside of a
+ * quoted field.  Times are read by {@link Timestamps}.
+ *
+ * The input is parsed a character at a time out of a buffer, so only the current line is held in memory.
+ */
+public class CsvActivityReader implements ActivityReader {
+    private static final int END_OF_INPUT = -1;
+
+    private final BufferedReader reader;
+    private final List<String> fields = Lists.newArrayList();
+    private final StringBuilder field = new StringBuilder();
+    private int line = 0;
+    // The line the current record started on, the same as line unless a quoted field spans lines
+    private int recordLine = 0;
+    private int nameColumn = -1;
+    private int startColumn = -1;
+    private int endColumn = -1;
+
+    public CsvActivityReader(Reader reader) {
+        this.reader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+    }
+
+    @Override
+    public Activity read() throws IOException {
+        if (line == 0) {
+            readHeader();
+        }
+
+        while (readRecord()) {
+            // Skip blank lines, e.g. at the end of the file
+            if (fields.size() == 1 && fields.get(0).isEmpty()) {
+                continue;
+            }
+            int columns = Math.max(nameColumn, Math.max(startColumn, endColumn)) + 1;
+            if (fields.size() < columns) {
+                throw new ImportException(String.format("Expected %s fields but found %s on line %s",
+                        columns, fields.size(), recordLine));
+            }
+
+            String location = "line " + recordLine;
+            DateTime start = Timestamps.parse(fields.get(startColumn), location);
+            DateTime end = Timestamps.parse(fields.get(endColumn), location);
+            return new Activity(fields.get(nameColumn), start, end);
+        }
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private void readHeader() throws IOException {
+        if (!readRecord()) {
+            throw new ImportException("The input is empty, expected a header line");
+        }
+        for (int i = 0; i < fields.size(); i++) {
+            // Spreadsheets often start the file with a byte order mark
+            String column = fields.get(i).replace("\uFEFF", "").trim().toLowerCase(Locale.US);
+            if (column.equals("name") || column.equals("activity")) {
+                nameColumn = i;
+            } else if (column.equals("start")) {
+                startColumn = i;
+            } else if (column.equals("end")) {
+                endColumn = i;
+            }
+        }
+        if (nameColumn < 0 || startColumn < 0 || endColumn < 0) {
+            throw new ImportException("The header must name a name, a start and an end column, but is " + fields);
+        }
+    }
+
+    /**
+     * Read the fields of the next line into {@link #fields}.  A quoted field may span several lines.
+     *
+     * @return false if the input has run out
+     */
+    private boolean readRecord() throws IOException {
+        fields.clear();
+        field.setLength(0);
+        int c = reader.read();
+        if (c == END_OF_INPUT) {
+            return false;
+        }
+        line++;
+        recordLine = line;
+
+        boolean quoted = false;
+        while (true) {
+            if (quoted) {
+                if (c == END_OF_INPUT) {
+                    throw new ImportException("Unterminated quoted field on line " + recordLine);
+                } else if (c == '"') {
+                    reader.mark(1);
+                    if (reader.read() == '"') {
+                        field.append('"');
+                    } else {
+                        reader.reset();
+                        quoted = false;
+                    }
+                } else {
+                    if (c == '\n') {
+                        line++;
+                    }
+                    field.append((char) c);
+                }
+            } else if (c == '"' && field.length() == 0) {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\r' || c == '\n' || c == END_OF_INPUT) {
+                if (c == '\r') {
+                    reader.mark(1);
+                    if (reader.read() != '\n') {
+                        reader.reset();
+                    }
+                }
+                fields.add(field.toString());
+                return true;
+            } else {
+                field.append((char) c);
+            }
+            c = reader.read();
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.letsdoit.logger.data.importer;
+
+import java.io.IOException;
+
+/**
+ * An imported history can't be read or has Activities that can't be stored, e.g. Activities that overlap each other.
+ */
+public class ImportException extends IOException {
+
+    public ImportException(String message) {
+        super(message);
+    }
+}
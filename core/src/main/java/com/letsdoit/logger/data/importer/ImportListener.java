@@ -0,0 +1,15 @@
+package com.letsdoit.logger.data.importer;
+
+/**
+ * Follows a long running import, e.g. to update a progress bar.
+ */
+public interface ImportListener {
+
+    /**
+     * Called on the importing thread after every sorted run is spilled and after every batch is written.  Must return
+     * quickly, since the import waits for it.
+     *
+     * @param progress how far the import has come
+     */
+    void onProgress(ImportProgress progress);
+}
@@ -0,0 +1,63 @@
+package com.letsdoit.logger.data.importer;
+
+/**
+ * How far an import has come: how many Activities were read from the input, how many were written to the store and
+ * how many were skipped because they were invalid.
+ */
+public class ImportProgress {
+    private final int activitiesRead;
+    private final int activitiesWritten;
+    private final int activitiesSkipped;
+    private final int fragmentsWritten;
+    private final long elapsedMillis;
+
+    public ImportProgress(int activitiesRead, int activitiesWritten, int activitiesSkipped, int fragmentsWritten,
+                          long elapsedMillis) {
+        this.activitiesRead = activitiesRead;
+        this.activitiesWritten = activitiesWritten;
+        this.activitiesSkipped = activitiesSkipped;
+        this.fragmentsWritten = fragmentsWritten;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public int getActivitiesRead() {
+        return activitiesRead;
+    }
+
+    public int getActivitiesWritten() {
+        return activitiesWritten;
+    }
+
+    public int getActivitiesSkipped() {
+        return activitiesSkipped;
+    }
+
+    /**
+     * @return the rows the store wrote for the Activities, e.g. fragments in the database
+     */
+    public int getFragmentsWritten() {
+        return fragmentsWritten;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * @return how many Activities were read each second since the import started
+     */
+    public double getActivitiesPerSecond() {
+        return elapsedMillis == 0 ? 0 : activitiesRead * 1000.0 / elapsedMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "ImportProgress{" +
+                "activitiesRead=" + activitiesRead +
+                ", activitiesWritten=" + activitiesWritten +
+                ", activitiesSkipped=" + activitiesSkipped +
+                ", fragmentsWritten=" + fragmentsWritten +
+                ", elapsedMillis=" + elapsedMillis +
+                '}';
+    }
+}
@@ -0,0 +1,97 @@
+package com.letsdoit.logger.data.importer;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.letsdoit.logger.data.dao.Activity;
+
+import org.joda.time.DateTime;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reads Activities from a JSON array of objects, one object per Activity:
+ * <pre>
+ * [
+ *   {"name": "Sleep", "start": "2014-07-16T23:30:00", "end": "2014-07-17T07:15:00"},
+ *   {"activity": "Read", "start": 1405591200000, "end": 1405598400000, "tags": ["home"]}
+ * ]
+ * </pre>
+ * The name can also be called "activity", and any other members are skipped.  Times are either strings read by
+ * {@link Timestamps} or numbers of milliseconds.
+ *
+ * The array is read with a streaming JsonReader, so only the current object is held in memory.
+ */
+public class JsonActivityReader implements ActivityReader {
+    private final JsonReader reader;
+    // How many objects have been read, to point at the one that is malformed
+    private int index = 0;
+    private boolean started = false;
+    private boolean finished = false;
+
+    public JsonActivityReader(Reader reader) {
+        this.reader = new JsonReader(reader);
+    }
+
+    @Override
+    public Activity read() throws IOException {
+        if (finished) {
+            return null;
+        }
+        try {
+            if (!started) {
+                reader.beginArray();
+                started = true;
+            }
+            if (!reader.hasNext()) {
+                reader.endArray();
+                finished = true;
+                return null;
+            }
+            index++;
+            return readActivity();
+        } catch (IllegalStateException e) {
+            // The JsonReader throws this when the input isn't shaped like an array of objects
+            throw new ImportException(String.format("Unexpected JSON at activity %s: %s", index, e.getMessage()));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private Activity readActivity() throws IOException {
+        String location = "activity " + index;
+        String name = null;
+        DateTime start = null;
+        DateTime end = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String member = reader.nextName();
+            if (member.equals("name") || member.equals("activity")) {
+                name = reader.nextString();
+            } else if (member.equals("start")) {
+                start = readTime(location);
+            } else if (member.equals("end")) {
+                end = readTime(location);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (name == null || start == null || end == null) {
+            throw new ImportException(String.format("The %s must have a name, a start and an end", location));
+        }
+        return new Activity(name, start, end);
+    }
+
+    private DateTime readTime(String location) throws IOException {
+        if (reader.peek() == JsonToken.NUMBER) {
+            return new DateTime(reader.nextLong());
+        }
+        return Timestamps.parse(reader.nextString(), location);
+    }
+}
@@ -0,0 +1,46 @@
+package com.letsdoit.logger.data.importer;
+
+import org.joda.time.DateTime;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+
+/**
+ * Parses the times of imported Activities.  Other tools export either ISO-8601 dates and times, e.g.
+ * 2014-07-17T10:30:00+02:00, or milliseconds since the epoch.  Times without an offset are in the default time zone.
+ */
+class Timestamps {
+    private static final DateTimeFormatter ISO_PARSER = ISODateTimeFormat.dateTimeParser();
+
+    /**
+     * @param text the time as exported
+     * @param location where the time is in the input, for the error message
+     * @return the time
+     * @throws ImportException if the text is neither an ISO-8601 time nor a number of milliseconds
+     */
+    static DateTime parse(String text, String location) throws ImportException {
+        String trimmed = text.trim();
+        try {
+            if (isMillis(trimmed)) {
+                return new DateTime(Long.parseLong(trimmed));
+            }
+            return new DateTime(ISO_PARSER.parseMillis(trimmed));
+        } catch (IllegalArgumentException e) {
+            throw new ImportException(String.format("Unreadable time [%s] at %s", text, location));
+        }
+    }
+
+    private static boolean isMillis(String text) {
+        if (text.isEmpty()) {
+            return false;
+        }
+        for (int i = text.charAt(0) == '-' ? 1 : 0; i < text.length(); i++) {
+            if (!Character.isDigit(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // This is a utility class with only static members.  Don't allow instantiation.
+    private Timestamps() {}
+}
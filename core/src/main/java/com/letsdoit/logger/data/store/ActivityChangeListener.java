@@ -0,0 +1,17 @@
+package com.letsdoit.logger.data.store;
+
+import org.joda.time.DateTime;
+
+/**
+ * Told when Activities in a range of time were added to or deleted from an ActivityStore.
+ */
+public interface ActivityChangeListener {
+
+    /**
+     * Called on the thread that wrote the Activities, after the write was committed.
+     *
+     * @param start no Activity that changed ends at or before the start
+     * @param end no Activity that changed starts at or after the end
+     */
+    void onActivitiesChanged(DateTime start, DateTime end);
+}
@@ -0,0 +1,52 @@
+package com.letsdoit.logger.data.store;
+
+import com.letsdoit.logger.data.dao.Activity;
+
+import org.joda.time.DateTime;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The listeners of a store.  Thread safe, listeners can be added and removed while they're being told about a change.
+ */
+public class ActivityChangeNotifier {
+    private final List<ActivityChangeListener> listeners = new CopyOnWriteArrayList<ActivityChangeListener>();
+
+    public void addListener(ActivityChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(ActivityChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Tell the listeners that Activities in the range were committed.
+     */
+    public void notifyChanged(DateTime start, DateTime end) {
+        for (ActivityChangeListener listener : listeners) {
+            listener.onActivitiesChanged(start, end);
+        }
+    }
+
+    /**
+     * Tell the listeners about the range covered by the Activities, if there are any.
+     */
+    public void notifyChanged(Collection<Activity> activities) {
+        DateTime start = null;
+        DateTime end = null;
+        for (Activity activity : activities) {
+            if (start == null || activity.getActivityStart().isBefore(start)) {
+                start = activity.getActivityStart();
+            }
+            if (end == null || activity.getActivityEnd().isAfter(end)) {
+                end = activity.getActivityEnd();
+            }
+        }
+        if (start != null) {
+            notifyChanged(start, end);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.letsdoit.logger.data.store;
+
+import com.letsdoit.logger.data.dao.Activity;
+
+import java.io.Closeable;
+import java.util.Iterator;
+
+/**
+ * Streams Activities out of a store one at a time, so a caller walking a large range only holds the Activity it is
+ * looking at.  Holds on to store resources (e.g. a database cursor) until it runs out or is closed, so always close it
+ * in a finally block.
+ */
+public interface ActivityIterator extends Iterator<Activity>, Closeable {
+
+    /**
+     * Release the store resources.  Safe to call more than once, and after the iterator ran out.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,80 @@
+package com.letsdoit.logger.data.store;
+
+import com.letsdoit.logger.data.dao.Activity;
+import com.letsdoit.logger.data.dao.ActivityTimeline;
+
+import org.joda.time.DateTime;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Persistence for Activities, independent of the storage engine.
+ *
+ * Range queries return the Activities overlapping [start, end): every Activity that ends after the start and starts
+ * before the end, whole, sorted by start time.  Stores assume the Activities written to them don't overlap.
+ *
+ * Stores are thread safe.  The open and close calls are reference counted, so a store can be shared by several owners
+ * that each open it once for their own lifetime.
+ */
+public interface ActivityStore {
+
+    /**
+     * Take a reference to the store, opening it if nobody else is using it.  Must be called before any other method,
+     * except for adding and removing change listeners.  Opening may upgrade the storage, so don't call it on the UI
+     * thread.
+     */
+    void open();
+
+    /**
+     * Give back a reference taken by {@link #open()}.  The store is closed when the last reference is given back.
+     */
+    void close();
+
+    /**
+     * @return the Activities overlapping [start, end), sorted by start time
+     */
+    List<Activity> getActivitiesInRange(DateTime start, DateTime end);
+
+    /**
+     * Same as {@link #getActivitiesInRange(DateTime, DateTime)}, but streams the Activities instead of collecting
+     * them, so memory doesn't grow with the size of the range.  The caller must close the iterator.
+     */
+    ActivityIterator iterateActivitiesInRange(DateTime start, DateTime end);
+
+    /**
+     * Same as {@link #getActivitiesInRange(DateTime, DateTime)}, but as a columnar timeline.
+     */
+    ActivityTimeline getTimelineInRange(DateTime start, DateTime end);
+
+    /**
+     * @return true if any Activity overlaps [start, end)
+     */
+    boolean hasActivitiesInRange(DateTime start, DateTime end);
+
+    /**
+     * Persist the Activity.
+     */
+    void addActivity(Activity activity);
+
+    /**
+     * Persist all of the Activities atomically.  Listeners are told about the whole batch at once.
+     *
+     * @return the number of records the engine wrote, which depends on the engine's storage format
+     */
+    int addActivities(Collection<Activity> activities);
+
+    /**
+     * Delete the Activity with the same name, start and end.
+     *
+     * @return true if the Activity was in the store
+     */
+    boolean deleteActivity(Activity activity);
+
+    /**
+     * Be told about every committed write to the store.
+     */
+    void addChangeListener(ActivityChangeListener listener);
+
+    void removeChangeListener(ActivityChangeListener listener);
+}
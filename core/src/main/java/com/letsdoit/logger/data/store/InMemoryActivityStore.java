@@ -0,0 +1,158 @@
+package com.letsdoit.logger.data.store;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Lists;
+import com.letsdoit.logger.data.dao.Activity;
+import com.letsdoit.logger.data.dao.ActivityNames;
+import com.letsdoit.logger.data.dao.ActivityTimeline;
+
+import org.joda.time.DateTime;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Keeps the Activities in memory only, for tests and benchmarks.
+ *
+ * The Activities are an immutable, sorted timeline that writers replace with compare-and-set, so readers never
+ * block and never see a half applied write.  Writes copy the whole timeline, which is fine for the write rates of
+ * tests but not for bulk loading one Activity at a time.
+ */
+public class InMemoryActivityStore implements ActivityStore {
+    private static final Comparator<Activity> BY_START = new Comparator<Activity>() {
+        @Override
+        public int compare(Activity lhs, Activity rhs) {
+            return lhs.getActivityStart().compareTo(rhs.getActivityStart());
+        }
+    };
+
+    private final ActivityNames names = new ActivityNames();
+    private final AtomicReference<ActivityTimeline> activities =
+            new AtomicReference<ActivityTimeline>(new ActivityTimeline(names));
+    private final ActivityChangeNotifier notifier = new ActivityChangeNotifier();
+
+    @Override
+    public void open() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public List<Activity> getActivitiesInRange(DateTime start, DateTime end) {
+        return Lists.newArrayList(getTimelineInRange(start, end).asActivities());
+    }
+
+    @Override
+    public ActivityIterator iterateActivitiesInRange(DateTime start, DateTime end) {
+        return new SnapshotIterator(activities.get(), start.getMillis(), end.getMillis());
+    }
+
+    @Override
+    public ActivityTimeline getTimelineInRange(DateTime start, DateTime end) {
+        ActivityTimeline snapshot = activities.get();
+        // Merging a timeline with itself copies the part in the range
+        return ActivityTimeline.merge(snapshot, snapshot, start.getMillis(), end.getMillis());
+    }
+
+    @Override
+    public boolean hasActivitiesInRange(DateTime start, DateTime end) {
+        return activities.get().overlaps(start.getMillis(), end.getMillis());
+    }
+
+    @Override
+    public void addActivity(Activity activity) {
+        addActivities(Collections.singletonList(activity));
+    }
+
+    @Override
+    public int addActivities(Collection<Activity> added) {
+        if (added.isEmpty()) {
+            return 0;
+        }
+
+        List<Activity> sorted = Lists.newArrayList(added);
+        Collections.sort(sorted, BY_START);
+        ActivityTimeline addedTimeline = new ActivityTimeline(names, sorted.size());
+        for (Activity activity : sorted) {
+            addedTimeline.append(activity);
+        }
+
+        ActivityTimeline current;
+        ActivityTimeline updated;
+        do {
+            current = activities.get();
+            updated = ActivityTimeline.merge(current, addedTimeline, Long.MIN_VALUE, Long.MAX_VALUE);
+        } while (!activities.compareAndSet(current, updated));
+
+        notifier.notifyChanged(added);
+        return added.size();
+    }
+
+    @Override
+    public boolean deleteActivity(Activity activity) {
+        int nameId = names.getId(activity.getActivityName());
+        if (nameId == ActivityNames.NO_ID) {
+            return false;
+        }
+        long start = activity.getActivityStart().getMillis();
+        long end = activity.getActivityEnd().getMillis();
+
+        ActivityTimeline current;
+        ActivityTimeline updated;
+        do {
+            current = activities.get();
+            int index = current.indexOfFirstEndingAfter(start);
+            if (index >= current.size() || current.getStartMillis(index) != start ||
+                    current.getEndMillis(index) != end || current.getNameId(index) != nameId) {
+                return false;
+            }
+            updated = ActivityTimeline.splice(current, new ActivityTimeline(names), start, end);
+        } while (!activities.compareAndSet(current, updated));
+
+        notifier.notifyChanged(activity.getActivityStart(), activity.getActivityEnd());
+        return true;
+    }
+
+    @Override
+    public void addChangeListener(ActivityChangeListener listener) {
+        notifier.addListener(listener);
+    }
+
+    @Override
+    public void removeChangeListener(ActivityChangeListener listener) {
+        notifier.removeListener(listener);
+    }
+
+    /**
+     * Walks the timeline that was current when the iterator was created.  Later writes don't affect it.
+     */
+    private static class SnapshotIterator extends AbstractIterator<Activity> implements ActivityIterator {
+        private final ActivityTimeline snapshot;
+        private final long endMillis;
+        private int index;
+
+        private SnapshotIterator(ActivityTimeline snapshot, long startMillis, long endMillis) {
+            this.snapshot = snapshot;
+            this.endMillis = endMillis;
+            this.index = snapshot.indexOfFirstEndingAfter(startMillis);
+        }
+
+        @Override
+        protected Activity computeNext() {
+            if (index < snapshot.size() && snapshot.getStartMillis(index) < endMillis) {
+                return snapshot.getActivity(index++);
+            }
+            return endOfData();
+        }
+
+        @Override
+        public void close() {
+            index = snapshot.size();
+        }
+    }
+}
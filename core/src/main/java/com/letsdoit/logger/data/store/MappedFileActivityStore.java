@@ -0,0 +1,661 @@
+package com.letsdoit.logger.data.store;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.letsdoit.logger.data.dao.Activity;
+import com.letsdoit.logger.data.dao.ActivityFragment;
+import com.letsdoit.logger.data.dao.ActivityNames;
+import com.letsdoit.logger.data.dao.ActivityTimeline;
+import com.letsdoit.logger.data.dao.Fragmenter;
+import com.letsdoit.logger.metrics.Counter;
+import com.letsdoit.logger.metrics.Metrics;
+import com.letsdoit.logger.metrics.Timer;
+
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
+import org.joda.time.Period;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Keeps the Activities in an append-only log of ActivityFragments that is read and written through a memory mapping.
+ *
+ * The log is a header followed by fixed-width records:
+ * <pre>
+ * header: int magic, int version, long record count
+ * record: long activity start, long activity end, long fragment start, long fragment end, int name id, int flags
+ * </pre>
+ * Like the database, Activities are chopped into fragments no longer than an hour, so the fragments overlapping a range
+ * all start in the hour before it or in it.  A sparse index maps each hour that has fragments starting in it to its
+ * records, sorted by fragment start, so a range scan reads a few buckets of records straight out of the mapping.
+ *
+ * A delete appends a record with the {@link #FLAG_DELETED} flag for the whole Activity, and drops the Activity's
+ * fragments from the index.  Once most of the log is deleted fragments and their tombstones, the live records are
+ * rewritten in time order to a new log that replaces the old one.
+ *
+ * Names are appended to a separate names file, and a name's id is its position in that file.
+ *
+ * Writes append to the mapping, force it to storage, and only then bump the record count in the header, so a crash
+ * never leaves a partly written batch in the log.  A write that fails part way rolls the count back to the last
+ * commit for the same reason.
+ */
+public class MappedFileActivityStore implements ActivityStore {
+    static final String LOG_FILE_NAME = "activities.log";
+    static final String COMPACTED_LOG_FILE_NAME = "activities.log.compact";
+    static final String NAMES_FILE_NAME = "activity_names.dat";
+
+    private static final Timer QUERY_TIMER = Metrics.timer("MappedFileActivityStore.getTimelineInRange");
+    private static final Counter RECORDS_READ = Metrics.counter("MappedFileActivityStore.recordsRead");
+    private static final Timer COMPACT_TIMER = Metrics.timer("MappedFileActivityStore.compact");
+
+    /**
+     * Fragments are never longer than this, so a fragment overlapping a range starts at most this long before it.
+     */
+    private static final Duration MAX_FRAGMENT_DURATION = Period.hours(1).toStandardDuration();
+    private static final long BUCKET_MILLIS = MAX_FRAGMENT_DURATION.getMillis();
+
+    private static final int MAGIC = 0x41435456;
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 16;
+    private static final int COUNT_OFFSET = 8;
+
+    private static final int RECORD_SIZE = 40;
+    private static final int ACTIVITY_START_OFFSET = 0;
+    private static final int ACTIVITY_END_OFFSET = 8;
+    private static final int FRAGMENT_START_OFFSET = 16;
+    private static final int FRAGMENT_END_OFFSET = 24;
+    private static final int NAME_ID_OFFSET = 32;
+    private static final int FLAGS_OFFSET = 36;
+    private static final int FLAG_DELETED = 1;
+
+    private static final int MIN_MAPPED_SIZE = 64 * 1024;
+    // Don't bother compacting until there is at least this much garbage, and it is at least half of the log
+    private static final int MIN_GARBAGE_RECORDS = 1024;
+
+    private final File directory;
+    private final ActivityChangeNotifier notifier = new ActivityChangeNotifier();
+
+    // Queries share the read lock, everything that moves the mapping, the index or the names takes the write lock
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Guarded by lock
+    private int references = 0;
+    private RandomAccessFile file;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int recordCount;
+    private int garbageCount;
+    private NavigableMap<Long, Bucket> index;
+    private ActivityNames names;
+    private DataOutputStream namesOut;
+
+    /**
+     * @param directory where to keep the store's files, created if it doesn't exist
+     */
+    public MappedFileActivityStore(File directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public void open() {
+        lock.writeLock().lock();
+        try {
+            if (references++ > 0) {
+                return;
+            }
+            Preconditions.checkState(directory.isDirectory() || directory.mkdirs(),
+                    String.format("Could not create the store directory [%s].", directory));
+            names = readNames();
+            namesOut = new DataOutputStream(new FileOutputStream(new File(directory, NAMES_FILE_NAME), true));
+            openLog();
+        } catch (IOException e) {
+            references--;
+            throw new IllegalStateException("Could not open the activity log in " + directory, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            Preconditions.checkState(references > 0, "The store was closed more times than it was opened.");
+            if (--references > 0) {
+                return;
+            }
+            namesOut.close();
+            closeLog();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not close the activity log in " + directory, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Activity> getActivitiesInRange(DateTime start, DateTime end) {
+        return Lists.newArrayList(getTimelineInRange(start, end).asActivities());
+    }
+
+    @Override
+    public ActivityIterator iterateActivitiesInRange(DateTime start, DateTime end) {
+        return new BucketIterator(start.getMillis(), end.getMillis());
+    }
+
+    @Override
+    public ActivityTimeline getTimelineInRange(DateTime start, DateTime end) {
+        long startNanos = QUERY_TIMER.start();
+        long startMs = start.getMillis();
+        long endMs = end.getMillis();
+        lock.readLock().lock();
+        try {
+            ActivityTimeline timeline = new ActivityTimeline(names);
+            for (Bucket bucket : bucketsOverlapping(startMs, endMs)) {
+                for (int i = 0; i < bucket.size; i++) {
+                    int position = positionOf(bucket.records[i]);
+                    RECORDS_READ.increment();
+                    if (buffer.getLong(position + FRAGMENT_END_OFFSET) > startMs &&
+                            buffer.getLong(position + FRAGMENT_START_OFFSET) < endMs) {
+                        Fragmenter.defragment(timeline, buffer.getInt(position + NAME_ID_OFFSET),
+                                buffer.getLong(position + ACTIVITY_START_OFFSET),
+                                buffer.getLong(position + ACTIVITY_END_OFFSET));
+                    }
+                }
+            }
+            return timeline;
+        } finally {
+            lock.readLock().unlock();
+            QUERY_TIMER.stop(startNanos);
+        }
+    }
+
+    @Override
+    public boolean hasActivitiesInRange(DateTime start, DateTime end) {
+        long startMs = start.getMillis();
+        long endMs = end.getMillis();
+        lock.readLock().lock();
+        try {
+            for (Bucket bucket : bucketsOverlapping(startMs, endMs)) {
+                for (int i = 0; i < bucket.size; i++) {
+                    int position = positionOf(bucket.records[i]);
+                    if (buffer.getLong(position + FRAGMENT_END_OFFSET) > startMs &&
+                            buffer.getLong(position + FRAGMENT_START_OFFSET) < endMs) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void addActivity(Activity activity) {
+        addActivities(Collections.singletonList(activity));
+    }
+
+    @Override
+    public int addActivities(Collection<Activity> activities) {
+        if (activities.isEmpty()) {
+            return 0;
+        }
+
+        int recordsWritten = 0;
+        lock.writeLock().lock();
+        int firstRecord = recordCount;
+        boolean isCommitted = false;
+        try {
+            for (Activity activity : activities) {
+                int nameId = getOrAddNameId(activity.getActivityName());
+                for (ActivityFragment fragment : Fragmenter.fragment(activity, MAX_FRAGMENT_DURATION)) {
+                    appendRecord(nameId, activity.getActivityStart().getMillis(),
+                            activity.getActivityEnd().getMillis(), fragment.getFragmentStart().getMillis(),
+                            fragment.getFragmentEnd().getMillis(), 0);
+                    recordsWritten++;
+                }
+            }
+            commit();
+            isCommitted = true;
+            for (int record = firstRecord; record < recordCount; record++) {
+                indexRecord(record);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not write to the activity log in " + directory, e);
+        } finally {
+            if (!isCommitted) {
+                rollBack(firstRecord);
+            }
+            lock.writeLock().unlock();
+        }
+
+        notifier.notifyChanged(activities);
+        return recordsWritten;
+    }
+
+    @Override
+    public boolean deleteActivity(Activity activity) {
+        lock.writeLock().lock();
+        int firstRecord = recordCount;
+        boolean isCommitted = true;
+        try {
+            int nameId = names.getId(activity.getActivityName());
+            if (nameId == ActivityNames.NO_ID) {
+                return false;
+            }
+            long startMs = activity.getActivityStart().getMillis();
+            long endMs = activity.getActivityEnd().getMillis();
+            if (!hasFragments(nameId, startMs, endMs)) {
+                return false;
+            }
+
+            isCommitted = false;
+            appendRecord(nameId, startMs, endMs, startMs, endMs, FLAG_DELETED);
+            commit();
+            isCommitted = true;
+            applyTombstone(recordCount - 1);
+            if (garbageCount >= MIN_GARBAGE_RECORDS && garbageCount * 2 >= recordCount) {
+                compactLog();
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not write to the activity log in " + directory, e);
+        } finally {
+            if (!isCommitted) {
+                rollBack(firstRecord);
+            }
+            lock.writeLock().unlock();
+        }
+
+        notifier.notifyChanged(activity.getActivityStart(), activity.getActivityEnd());
+        return true;
+    }
+
+    @Override
+    public void addChangeListener(ActivityChangeListener listener) {
+        notifier.addListener(listener);
+    }
+
+    @Override
+    public void removeChangeListener(ActivityChangeListener listener) {
+        notifier.removeListener(listener);
+    }
+
+    /**
+     * Rewrite the log without the deleted fragments and tombstones, with the records in time order.  Happens on its
+     * own once deletes make up most of the log.
+     */
+    public void compact() {
+        lock.writeLock().lock();
+        try {
+            compactLog();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not compact the activity log in " + directory, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return how many records are in the log, including the deleted ones
+     */
+    int getRecordCount() {
+        lock.readLock().lock();
+        try {
+            return recordCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void openLog() throws IOException {
+        file = new RandomAccessFile(new File(directory, LOG_FILE_NAME), "rw");
+        channel = file.getChannel();
+        boolean isNew = channel.size() == 0;
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(MIN_MAPPED_SIZE, channel.size()));
+        if (isNew) {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putLong(COUNT_OFFSET, 0);
+        }
+        Preconditions.checkState(buffer.getInt(0) == MAGIC && buffer.getInt(4) == VERSION,
+                String.format("[%s] is not a version %s activity log.", LOG_FILE_NAME, VERSION));
+        recordCount = (int) buffer.getLong(COUNT_OFFSET);
+        replay();
+    }
+
+    private void closeLog() throws IOException {
+        buffer.force();
+        channel.close();
+        file.close();
+        buffer = null;
+        index = null;
+    }
+
+    /**
+     * Build the index from the log.  Records are applied in order, so tombstones only delete the fragments before them.
+     */
+    private void replay() {
+        index = Maps.newTreeMap();
+        garbageCount = 0;
+        for (int record = 0; record < recordCount; record++) {
+            if ((buffer.getInt(positionOf(record) + FLAGS_OFFSET) & FLAG_DELETED) != 0) {
+                applyTombstone(record);
+            } else {
+                indexRecord(record);
+            }
+        }
+    }
+
+    /**
+     * Write the live records, in index order, to a new log and swap it in for the current one.  The new log is
+     * complete on storage before it replaces the old one, so a crash leaves one or the other.
+     */
+    private void compactLog() throws IOException {
+        long startNanos = COMPACT_TIMER.start();
+        File compacted = new File(directory, COMPACTED_LOG_FILE_NAME);
+        RandomAccessFile compactedFile = new RandomAccessFile(compacted, "rw");
+        try {
+            compactedFile.setLength(0);
+            FileChannel compactedChannel = compactedFile.getChannel();
+            int liveCount = recordCount - garbageCount;
+            MappedByteBuffer out = compactedChannel.map(FileChannel.MapMode.READ_WRITE, 0,
+                    Math.max(MIN_MAPPED_SIZE, HEADER_SIZE + (long) liveCount * RECORD_SIZE));
+            out.putInt(0, MAGIC);
+            out.putInt(4, VERSION);
+            out.putLong(COUNT_OFFSET, liveCount);
+
+            byte[] record = new byte[RECORD_SIZE];
+            int written = 0;
+            for (Bucket bucket : index.values()) {
+                for (int i = 0; i < bucket.size; i++) {
+                    buffer.position(positionOf(bucket.records[i]));
+                    buffer.get(record);
+                    out.position(positionOf(written++));
+                    out.put(record);
+                }
+            }
+            Preconditions.checkState(written == liveCount,
+                    String.format("Expected %s live records but the index has %s.", liveCount, written));
+            out.force();
+        } finally {
+            compactedFile.close();
+        }
+
+        closeLog();
+        boolean replaced = compacted.renameTo(new File(directory, LOG_FILE_NAME));
+        // Reopen whichever log is in place, so the store stays usable even if the swap failed
+        openLog();
+        Preconditions.checkState(replaced, String.format("Could not replace the activity log in [%s].", directory));
+        COMPACT_TIMER.stop(startNanos);
+    }
+
+    private void appendRecord(int nameId, long activityStartMs, long activityEndMs,
+                              long fragmentStartMs, long fragmentEndMs, int flags) throws IOException {
+        int position = positionOf(recordCount);
+        if (position + RECORD_SIZE > buffer.capacity()) {
+            // Mapping past the end of the file grows it
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, buffer.capacity() * 2L);
+        }
+        buffer.putLong(position + ACTIVITY_START_OFFSET, activityStartMs);
+        buffer.putLong(position + ACTIVITY_END_OFFSET, activityEndMs);
+        buffer.putLong(position + FRAGMENT_START_OFFSET, fragmentStartMs);
+        buffer.putLong(position + FRAGMENT_END_OFFSET, fragmentEndMs);
+        buffer.putInt(position + NAME_ID_OFFSET, nameId);
+        buffer.putInt(position + FLAGS_OFFSET, flags);
+        recordCount++;
+    }
+
+    /**
+     * Make the appended records part of the log.  The count is written last, so a crash before it leaves the new
+     * records past the end of the log, where they're ignored.
+     */
+    private void commit() {
+        buffer.force();
+        buffer.putLong(COUNT_OFFSET, recordCount);
+        buffer.force();
+    }
+
+    /**
+     * Forget the records appended since the last commit, after a write failed part way.  Otherwise the next commit
+     * would make them part of the log, unindexed until the log is replayed.
+     */
+    private void rollBack(int committedCount) {
+        recordCount = committedCount;
+        // The count may have been written if forcing the mapping failed in commit()
+        buffer.putLong(COUNT_OFFSET, committedCount);
+    }
+
+    private void indexRecord(int record) {
+        long fragmentStartMs = buffer.getLong(positionOf(record) + FRAGMENT_START_OFFSET);
+        Long bucketKey = bucketOf(fragmentStartMs);
+        Bucket bucket = index.get(bucketKey);
+        if (bucket == null) {
+            bucket = new Bucket();
+            index.put(bucketKey, bucket);
+        }
+        bucket.insert(record, fragmentStartMs);
+    }
+
+    /**
+     * Drop the fragments of the tombstone's Activity from the index.
+     */
+    private void applyTombstone(int tombstone) {
+        int tombstonePosition = positionOf(tombstone);
+        int nameId = buffer.getInt(tombstonePosition + NAME_ID_OFFSET);
+        long startMs = buffer.getLong(tombstonePosition + ACTIVITY_START_OFFSET);
+        long endMs = buffer.getLong(tombstonePosition + ACTIVITY_END_OFFSET);
+
+        garbageCount++;
+        // The Activity's fragments all start in [start, end)
+        for (Bucket bucket : index.subMap(bucketOf(startMs), true, bucketOf(endMs - 1), true).values()) {
+            garbageCount += bucket.removeFragmentsOf(nameId, startMs, endMs);
+        }
+    }
+
+    private boolean hasFragments(int nameId, long startMs, long endMs) {
+        Bucket bucket = index.get(bucketOf(startMs));
+        if (bucket == null) {
+            return false;
+        }
+        for (int i = 0; i < bucket.size; i++) {
+            if (isFragmentOf(bucket.records[i], nameId, startMs, endMs)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isFragmentOf(int record, int nameId, long startMs, long endMs) {
+        int position = positionOf(record);
+        return buffer.getLong(position + ACTIVITY_START_OFFSET) == startMs &&
+                buffer.getLong(position + ACTIVITY_END_OFFSET) == endMs &&
+                buffer.getInt(position + NAME_ID_OFFSET) == nameId;
+    }
+
+    /**
+     * @return the buckets that can hold fragments overlapping [start, end), in time order
+     */
+    private Collection<Bucket> bucketsOverlapping(long startMs, long endMs) {
+        if (startMs >= endMs) {
+            return Collections.emptyList();
+        }
+        return index.subMap(bucketOf(startMs - BUCKET_MILLIS), true, bucketOf(endMs - 1), true).values();
+    }
+
+    private static long bucketOf(long millis) {
+        // Floor division, so times before the epoch land in the right hour as well
+        return millis >= 0 ? millis / BUCKET_MILLIS : (millis - BUCKET_MILLIS + 1) / BUCKET_MILLIS;
+    }
+
+    private static int positionOf(int record) {
+        return HEADER_SIZE + record * RECORD_SIZE;
+    }
+
+    private int getOrAddNameId(String name) throws IOException {
+        int id = names.getId(name);
+        if (id == ActivityNames.NO_ID) {
+            id = names.intern(name);
+            namesOut.writeUTF(name);
+            namesOut.flush();
+        }
+        return id;
+    }
+
+    private ActivityNames readNames() throws IOException {
+        ActivityNames names = new ActivityNames();
+        File namesFile = new File(directory, NAMES_FILE_NAME);
+        if (!namesFile.exists()) {
+            return names;
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(namesFile)));
+        try {
+            while (true) {
+                names.intern(in.readUTF());
+            }
+        } catch (EOFException e) {
+            // Read all of the names
+        } finally {
+            in.close();
+        }
+        return names;
+    }
+
+    /**
+     * The live records whose fragments start in one hour, sorted by fragment start.
+     */
+    private class Bucket {
+        private int[] records = new int[4];
+        private int size = 0;
+
+        /**
+         * Records are mostly appended in time order, so the insertion point is almost always the end.
+         */
+        private void insert(int record, long fragmentStartMs) {
+            if (size == records.length) {
+                records = Arrays.copyOf(records, size * 2);
+            }
+            int i = size;
+            while (i > 0 && buffer.getLong(positionOf(records[i - 1]) + FRAGMENT_START_OFFSET) > fragmentStartMs) {
+                records[i] = records[i - 1];
+                i--;
+            }
+            records[i] = record;
+            size++;
+        }
+
+        /**
+         * @return how many records were removed
+         */
+        private int removeFragmentsOf(int nameId, long startMs, long endMs) {
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                if (!isFragmentOf(records[i], nameId, startMs, endMs)) {
+                    records[kept++] = records[i];
+                }
+            }
+            int removed = size - kept;
+            size = kept;
+            return removed;
+        }
+    }
+
+    /**
+     * Reads one hour bucket at a time, taking the read lock only while it copies a bucket's Activities out of the
+     * mapping, so a slow consumer never holds up writers.  Writes to buckets it hasn't reached yet are seen.
+     */
+    private class BucketIterator extends AbstractIterator<Activity> implements ActivityIterator {
+        private final long startMs;
+        private final long endMs;
+        private final long lastBucket;
+        private final List<Activity> pending = Lists.newArrayList();
+        private Iterator<Activity> pendingIter = pending.iterator();
+
+        // The next bucket to read, or null when there are no more
+        private Long nextBucket;
+        // The last Activity read, so its later fragments are skipped
+        private int lastNameId = ActivityNames.NO_ID;
+        private long lastActivityStartMs;
+
+        private BucketIterator(long startMs, long endMs) {
+            this.startMs = startMs;
+            this.endMs = endMs;
+            this.lastBucket = bucketOf(endMs - 1);
+            this.nextBucket = startMs < endMs ? bucketOf(startMs - BUCKET_MILLIS) : null;
+        }
+
+        @Override
+        protected Activity computeNext() {
+            while (!pendingIter.hasNext()) {
+                if (nextBucket == null) {
+                    return endOfData();
+                }
+                readNextBucket();
+            }
+            return pendingIter.next();
+        }
+
+        private void readNextBucket() {
+            pending.clear();
+            lock.readLock().lock();
+            try {
+                Preconditions.checkState(index != null, "The store was closed while it was being iterated.");
+                Long key = index.ceilingKey(nextBucket);
+                if (key == null || key > lastBucket) {
+                    nextBucket = null;
+                    return;
+                }
+                Bucket bucket = index.get(key);
+                for (int i = 0; i < bucket.size; i++) {
+                    int position = positionOf(bucket.records[i]);
+                    RECORDS_READ.increment();
+                    if (buffer.getLong(position + FRAGMENT_END_OFFSET) <= startMs ||
+                            buffer.getLong(position + FRAGMENT_START_OFFSET) >= endMs) {
+                        continue;
+                    }
+                    int nameId = buffer.getInt(position + NAME_ID_OFFSET);
+                    long activityStartMs = buffer.getLong(position + ACTIVITY_START_OFFSET);
+                    // Skip subsequent fragments from the same Activity
+                    if (nameId == lastNameId && activityStartMs == lastActivityStartMs) {
+                        continue;
+                    }
+                    pending.add(new Activity(names.getName(nameId), new DateTime(activityStartMs),
+                            new DateTime(buffer.getLong(position + ACTIVITY_END_OFFSET))));
+                    lastNameId = nameId;
+                    lastActivityStartMs = activityStartMs;
+                }
+                nextBucket = key + 1;
+            } finally {
+                pendingIter = pending.iterator();
+                lock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public void close() {
+            nextBucket = null;
+            pending.clear();
+            pendingIter = pending.iterator();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.letsdoit.logger.logging;
+
+import com.google.common.base.Supplier;
+
+/**
+ * Logging facade for the whole project.  Mirrors android.util.Log, but checks the level before building the message,
+ * so a disabled debug statement never formats or concatenates its message.
+ *
+ * To keep disabled statements cheap, don't concatenate or format the message at the call site:
+ * <ul>
+ *     <li>Use the format overloads, e.g. {@code AppLog.d(TAG, "Loaded %s between %s and %s", a, b, c)}.  The
+ *     arguments are only converted to Strings if the level is enabled.  There are fixed arity overloads, so no
+ *     varargs array is allocated either.  Primitive arguments are still boxed at the call site, before the level is
+ *     checked.</li>
+ *     <li>Use a {@link Supplier} for messages that take more work to build than a format.</li>
+ *     <li>Or guard the statement with {@link #isDebugEnabled()}, which on a hot path is the only way to avoid boxing
+ *     primitive arguments.</li>
+ * </ul>
+ *
+ * The level and sink are set once at startup, before any other threads log, and are plain fields after that.
+ */
+public final class AppLog {
+    // Same values as the android.util.Log priorities, so a sink can pass them straight through
+    public static final int VERBOSE = 2;
+    public static final int DEBUG = 3;
+    public static final int INFO = 4;
+    public static final int WARN = 5;
+    public static final int ERROR = 6;
+
+    private static int level = INFO;
+    private static LogSink sink = new JavaLogSink();
+
+    private AppLog() {
+    }
+
+    /**
+     * @param level the lowest level that gets logged
+     */
+    public static void setLevel(int level) {
+        AppLog.level = level;
+    }
+
+    public static void setSink(LogSink sink) {
+        AppLog.sink = sink;
+    }
+
+    public static boolean isLoggable(int messageLevel) {
+        return messageLevel >= level;
+    }
+
+    public static boolean isDebugEnabled() {
+        return DEBUG >= level;
+    }
+
+    public static void d(String tag, String message) {
+        if (DEBUG >= level) {
+            sink.println(DEBUG, tag, message, null);
+        }
+    }
+
+    public static void d(String tag, String format, Object arg) {
+        if (DEBUG >= level) {
+            sink.println(DEBUG, tag, String.format(format, arg), null);
+        }
+    }
+
+    public static void d(String tag, String format, Object arg1, Object arg2) {
+        if (DEBUG >= level) {
+            sink.println(DEBUG, tag, String.format(format, arg1, arg2), null);
+        }
+    }
+
+    public static void d(String tag, String format, Object arg1, Object arg2, Object arg3) {
+        if (DEBUG >= level) {
+            sink.println(DEBUG, tag, String.format(format, arg1, arg2, arg3), null);
+        }
+    }
+
+    public static void d(String tag, Supplier<String> message) {
+        if (DEBUG >= level) {
+            sink.println(DEBUG, tag, message.get(), null);
+        }
+    }
+
+    public static void i(String tag, String message) {
+        if (INFO >= level) {
+            sink.println(INFO, tag, message, null);
+        }
+    }
+
+    public static void i(String tag, String format, Object arg) {
+        if (INFO >= level) {
+            sink.println(INFO, tag, String.format(format, arg), null);
+        }
+    }
+
+    public static void i(String tag, String format, Object arg1, Object arg2) {
+        if (INFO >= level) {
+            sink.println(INFO, tag, String.format(format, arg1, arg2), null);
+        }
+    }
+
+    public static void i(String tag, String format, Object arg1, Object arg2, Object arg3) {
+        if (INFO >= level) {
+            sink.println(INFO, tag, String.format(format, arg1, arg2, arg3), null);
+        }
+    }
+
+    public static void i(String tag, String format, Object arg1, Object arg2, Object arg3, Object arg4) {
+        if (INFO >= level) {
+            sink.println(INFO, tag, String.format(format, arg1, arg2, arg3, arg4), null);
+        }
+    }
+
+    public static void w(String tag, String message) {
+        if (WARN >= level) {
+            sink.println(WARN, tag, message, null);
+        }
+    }
+
+    public static void w(String tag, String format, Object arg1, Object arg2) {
+        if (WARN >= level) {
+            sink.println(WARN, tag, String.format(format, arg1, arg2), null);
+        }
+    }
+
+    public static void e(String tag, String message) {
+        if (ERROR >= level) {
+            sink.println(ERROR, tag, message, null);
+        }
+    }
+
+    public static void e(String tag, String message, Throwable throwable) {
+        if (ERROR >= level) {
+            sink.println(ERROR, tag, message, throwable);
+        }
+    }
+
+    public static void e(String tag, String format, Object arg1, Object arg2) {
+        if (ERROR >= level) {
+            sink.println(ERROR, tag, String.format(format, arg1, arg2), null);
+        }
+    }
+}
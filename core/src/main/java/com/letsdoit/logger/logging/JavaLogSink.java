@@ -0,0 +1,31 @@
+package com.letsdoit.logger.logging;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes to java.util.logging, one Logger per tag.  The default sink, so core code logs somewhere sensible when it
+ * runs on a workstation JVM.
+ */
+public class JavaLogSink implements LogSink {
+
+    @Override
+    public void println(int level, String tag, String message, Throwable throwable) {
+        Logger.getLogger(tag).log(toJavaLevel(level), message, throwable);
+    }
+
+    private static Level toJavaLevel(int level) {
+        switch (level) {
+            case AppLog.VERBOSE:
+                return Level.FINER;
+            case AppLog.DEBUG:
+                return Level.FINE;
+            case AppLog.INFO:
+                return Level.INFO;
+            case AppLog.WARN:
+                return Level.WARNING;
+            default:
+                return Level.SEVERE;
+        }
+    }
+}
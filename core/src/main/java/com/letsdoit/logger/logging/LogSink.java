@@ -0,0 +1,15 @@
+package com.letsdoit.logger.logging;
+
+/**
+ * Where {@link AppLog} writes the messages that pass its level check.
+ */
+public interface LogSink {
+
+    /**
+     * @param level one of the {@link AppLog} levels
+     * @param tag identifies the source of the message
+     * @param message the fully built message
+     * @param throwable an error to log with the message, or null
+     */
+    void println(int level, String tag, String message, Throwable throwable);
+}
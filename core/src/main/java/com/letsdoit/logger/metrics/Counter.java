@@ -0,0 +1,40 @@
+package com.letsdoit.logger.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts events, e.g. rows read.  Cheap enough to call once per row.  Thread safe.
+ */
+public class Counter {
+    private final String name;
+    private final AtomicLong count = new AtomicLong();
+
+    Counter(String name) {
+        this.name = name;
+    }
+
+    public void increment() {
+        count.incrementAndGet();
+    }
+
+    public void add(long delta) {
+        count.addAndGet(delta);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    void reset() {
+        count.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return name + ": " + count.get();
+    }
+}
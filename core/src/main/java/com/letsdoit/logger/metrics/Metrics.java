@@ -0,0 +1,95 @@
+package com.letsdoit.logger.metrics;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Registry of the named timers and counters around the load and render stages, so a slow load or janky scroll can be
+ * attributed to a stage.  Hold on to the returned Timers and Counters in static fields rather than looking them up on
+ * every call.
+ *
+ * The platform installs a {@link Tracer} to also mark the timed stages in systrace.
+ */
+public class Metrics {
+    private static final ConcurrentMap<String, Timer> timers = Maps.newConcurrentMap();
+    private static final ConcurrentMap<String, Counter> counters = Maps.newConcurrentMap();
+    private static volatile Tracer tracer = Tracer.NONE;
+
+    private Metrics() {
+    }
+
+    /**
+     * @param name the name of the timed stage, also used as its trace section name
+     * @return the timer with the name, created if it doesn't exist yet
+     */
+    public static Timer timer(String name) {
+        Timer timer = timers.get(name);
+        if (timer == null) {
+            timers.putIfAbsent(name, new Timer(name));
+            timer = timers.get(name);
+        }
+        return timer;
+    }
+
+    /**
+     * @param name the name of the counted event
+     * @return the counter with the name, created if it doesn't exist yet
+     */
+    public static Counter counter(String name) {
+        Counter counter = counters.get(name);
+        if (counter == null) {
+            counters.putIfAbsent(name, new Counter(name));
+            counter = counters.get(name);
+        }
+        return counter;
+    }
+
+    public static Tracer getTracer() {
+        return tracer;
+    }
+
+    public static void setTracer(Tracer tracer) {
+        Metrics.tracer = tracer == null ? Tracer.NONE : tracer;
+    }
+
+    /**
+     * Zero all of the timers and counters, e.g. before measuring a single scroll.
+     */
+    public static void reset() {
+        for (Timer timer : timers.values()) {
+            timer.reset();
+        }
+        for (Counter counter : counters.values()) {
+            counter.reset();
+        }
+    }
+
+    /**
+     * @return one line per timer and counter that has recorded anything, sorted by name
+     */
+    public static String dump() {
+        List<String> lines = Lists.newArrayList();
+        for (Timer timer : timers.values()) {
+            if (timer.getCount() > 0) {
+                lines.add(timer.toString());
+            }
+        }
+        for (Counter counter : counters.values()) {
+            if (counter.getCount() > 0) {
+                lines.add(counter.toString());
+            }
+        }
+        Collections.sort(lines);
+
+        StringBuilder dump = new StringBuilder();
+        for (String line : lines) {
+            dump.append(line).append("\n");
+        }
+        return dump.toString();
+    }
+}
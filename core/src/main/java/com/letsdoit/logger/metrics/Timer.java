@@ -0,0 +1,131 @@
+package com.letsdoit.logger.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Times a stage of work and keeps a histogram of how long it took.  Each timed call is also a trace section with the
+ * timer's name, so the stage shows up in systrace.
+ *
+ * Usage:
+ * <pre>
+ * long startNanos = TIMER.start();
+ * try {
+ *     ...
+ * } finally {
+ *     TIMER.stop(startNanos);
+ * }
+ * </pre>
+ *
+ * The histogram has power of two buckets: bucket 0 counts calls under a microsecond and bucket i counts calls that
+ * took [2^(i-1), 2^i) microseconds.  Recording is a few atomic adds and doesn't allocate.  Thread safe.
+ */
+public class Timer {
+    private static final int NUM_BUCKETS = 32;
+    private static final long NANOS_PER_MICRO = 1000;
+
+    private final String name;
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+    private final AtomicLongArray buckets = new AtomicLongArray(NUM_BUCKETS);
+
+    Timer(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Begin timing and begin a trace section.  Must be followed by {@link #stop(long)} on the same thread.
+     *
+     * @return the start time, to pass to {@link #stop(long)}
+     */
+    public long start() {
+        Metrics.getTracer().beginSection(name);
+        return System.nanoTime();
+    }
+
+    /**
+     * End the trace section and record the time since the start.
+     *
+     * @param startNanos what {@link #start()} returned
+     */
+    public void stop(long startNanos) {
+        record(System.nanoTime() - startNanos);
+        Metrics.getTracer().endSection();
+    }
+
+    /**
+     * Record a duration measured some other way.
+     *
+     * @param nanos how long the work took
+     */
+    public void record(long nanos) {
+        count.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+        buckets.incrementAndGet(bucketOf(nanos));
+
+        long max = maxNanos.get();
+        while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+            max = maxNanos.get();
+        }
+    }
+
+    private static int bucketOf(long nanos) {
+        long micros = Math.max(0, nanos / NANOS_PER_MICRO);
+        return Math.min(NUM_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.get();
+    }
+
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    /**
+     * @param percentile in [0, 100]
+     * @return an upper bound on the time in microseconds that the percentile of calls took, or 0 if nothing was
+     * recorded.  Only accurate to a power of two.
+     */
+    public long getPercentileMicros(double percentile) {
+        long total = count.get();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return 1L << i;
+            }
+        }
+        return 1L << (NUM_BUCKETS - 1);
+    }
+
+    void reset() {
+        count.set(0);
+        totalNanos.set(0);
+        maxNanos.set(0);
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+    }
+
+    @Override
+    public String toString() {
+        long calls = count.get();
+        long meanMicros = calls == 0 ? 0 : totalNanos.get() / calls / NANOS_PER_MICRO;
+        return String.format("%s: count %d, mean %dus, p50 <%dus, p99 <%dus, max %dus", name, calls, meanMicros,
+                getPercentileMicros(50), getPercentileMicros(99), maxNanos.get() / NANOS_PER_MICRO);
+    }
+}
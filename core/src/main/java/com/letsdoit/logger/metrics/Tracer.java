@@ -0,0 +1,31 @@
+package com.letsdoit.logger.metrics;
+
+/**
+ * Marks named sections of work on a timeline, e.g. for systrace.  Sections nest and must be ended on the thread that
+ * began them.
+ */
+public interface Tracer {
+
+    /**
+     * Doesn't trace anything.  The default until a platform tracer is installed.
+     */
+    Tracer NONE = new Tracer() {
+        @Override
+        public void beginSection(String name) {
+        }
+
+        @Override
+        public void endSection() {
+        }
+    };
+
+    /**
+     * @param name the name of the section, shorter than 128 characters
+     */
+    void beginSection(String name);
+
+    /**
+     * End the most recently begun section on this thread.
+     */
+    void endSection();
+}
@@ -0,0 +1,60 @@
+package com.letsdoit.logger.view;
+
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
+
+/**
+ * Arithmetic on boundaries spaced evenly from a reference time: reference, reference + spacing, reference + 2 *
+ * spacing, and so on.  Free time is split on these boundaries, e.g. every 5 minutes from the start of a half hour.
+ *
+ * The boundary after any time is found with a division instead of stepping from the reference, so it costs the same
+ * however far the time is from the reference.
+ *
+ * The spacing is a fixed number of milliseconds, so boundaries are the same instants whatever the time zone and stay
+ * evenly spaced across daylight saving time transitions.
+ */
+public class AlignedBoundaries {
+
+    /**
+     * @param spacingMillis the distance between boundaries
+     * @return the spacing
+     * @throws IllegalArgumentException if the spacing isn't positive, since there would be no next boundary
+     */
+    public static long checkSpacing(long spacingMillis) {
+        if (spacingMillis <= 0) {
+            throw new IllegalArgumentException(String.format("The spacing must be positive, but is [%s] ms.",
+                    spacingMillis));
+        }
+        return spacingMillis;
+    }
+
+    /**
+     * Find the first boundary after the time.
+     *
+     * @param referenceMillis the first boundary
+     * @param timeMillis the time to find the next boundary after
+     * @param spacingMillis the distance between boundaries, must be positive
+     * @return the first boundary strictly after the time, or the reference if the time is before it
+     */
+    public static long next(long referenceMillis, long timeMillis, long spacingMillis) {
+        checkSpacing(spacingMillis);
+        if (timeMillis < referenceMillis) {
+            return referenceMillis;
+        }
+        long spacings = (timeMillis - referenceMillis) / spacingMillis + 1;
+        return referenceMillis + spacings * spacingMillis;
+    }
+
+    /**
+     * Same as {@link #next(long, long, long)} for DateTimes.
+     *
+     * @return the first boundary strictly after the time, in the reference's chronology
+     */
+    public static DateTime next(DateTime reference, DateTime time, Duration spacing) {
+        return new DateTime(next(reference.getMillis(), time.getMillis(), spacing.getMillis()),
+                reference.getChronology());
+    }
+
+    // This is a utility class with only static members.  Don't allow instantiation.
+    private AlignedBoundaries() {}
+}
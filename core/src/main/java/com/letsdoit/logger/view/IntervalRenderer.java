@@ -0,0 +1,176 @@
+package com.letsdoit.logger.view;
+
+import com.letsdoit.logger.data.dao.ActivityFragment;
+import com.letsdoit.logger.data.dao.ActivityInterval;
+import com.letsdoit.logger.metrics.Metrics;
+import com.letsdoit.logger.metrics.Timer;
+
+import org.joda.time.Duration;
+
+import java.util.List;
+
+/**
+ * Converts an ActivityInterval list of RenderBlocks which will get rendered.
+ *
+ * Fills empty times (ones with no Activity) with fixed size empty blocks.
+ *
+ * Makes sure that no block is smaller than the configured size.
+ *
+ * TODO: Render is not the right verb.  Rendering is when you actually draw something
+ * onto the screen.  This is the "pre-rendering" stage - the DisplayBlocks are the
+ * render-layer-agnostic representation that can get rendered.
+ *
+ * Created by Andrey on 6/20/2015.
+ */
+public class IntervalRenderer {
+    private static final Timer RENDER_TIMER = Metrics.timer("IntervalRenderer.render");
+
+    /**
+     * Break an ActivityInterval into a set of RenderBlocks, making sure that no RenderBlock is smaller than the
+     * minBlockDuration and blocks of free time are partitioned on the freeTimePartitionDuration relative to the
+     * start of the ActivityInterval.
+     *
+     * Creates the RenderBlocks from a {@link RenderBuffer}.  Callers rendering many intervals should keep a buffer
+     * and use {@link #render(ActivityInterval, long, long, RenderBuffer)} instead.
+     *
+     * @param interval a time interval with activities and free time between activities.
+     * @param minBlockDuration the smallest allowed size for a render block.  None of the returned RenderBlocks will
+     *                         be smaller than the minBlockDuration.
+     * @param freeTimePartitionDuration the time interval relative to the start of the ActivityInterval that free time
+     *                                  should be split on as long as the resulting RenderBlocks are not smaller than
+     *                                  the minBlockDuration.
+     * @return a list of RenderBlocks representing the ActivityInterval's activities and free time.
+     */
+    public static List<RenderBlock> render(ActivityInterval interval,
+                                           Duration minBlockDuration,
+                                           Duration freeTimePartitionDuration) {
+        RenderBuffer blocks = new RenderBuffer();
+        render(interval, minBlockDuration.getMillis(), freeTimePartitionDuration.getMillis(), blocks);
+        return blocks.toRenderBlocks(interval);
+    }
+
+    /**
+     * Same as {@link #render(ActivityInterval, Duration, Duration)}, but works on epoch millis and writes the blocks
+     * into a reusable buffer, so rendering allocates nothing once the buffer has grown to fit.
+     *
+     * @param interval a time interval with activities and free time between activities.
+     * @param minBlockMillis the smallest allowed size for a render block.
+     * @param freeTimePartitionMillis the time interval relative to the start of the ActivityInterval that free time
+     *                                should be split on.
+     * @param blocks cleared, then filled with the blocks of the interval
+     */
+    public static void render(ActivityInterval interval, long minBlockMillis, long freeTimePartitionMillis,
+                              RenderBuffer blocks) {
+        long startNanos = RENDER_TIMER.start();
+        try {
+            renderInterval(interval, minBlockMillis, freeTimePartitionMillis, blocks);
+        } finally {
+            RENDER_TIMER.stop(startNanos);
+        }
+    }
+
+    private static void renderInterval(ActivityInterval interval, long minBlockMillis, long freeTimePartitionMillis,
+                                       RenderBuffer blocks) {
+        long intervalStart = interval.getStart().getMillis();
+        long intervalEnd = interval.getEnd().getMillis();
+
+        // Only format the messages when the checks fail, they'd be most of the allocations otherwise
+        if (minBlockMillis >= intervalEnd - intervalStart) {
+            throw new IllegalArgumentException(String.format("The minBlockDuration cannot be larger than the " +
+                    "interval.  Interval [%s], minBlockDuration [%s].", interval, new Duration(minBlockMillis)));
+        }
+
+        AlignedBoundaries.checkSpacing(freeTimePartitionMillis);
+        long remainder = (intervalEnd - intervalStart) % freeTimePartitionMillis;
+        if (remainder != 0) {
+            throw new IllegalArgumentException(String.format("The freeTimePartitionDuration needs to evenly divide " +
+                    "the interval.  Interval [%s], freeTimePartitionDuration [%s], remainder [%s]", interval,
+                    new Duration(freeTimePartitionMillis), remainder));
+        }
+
+        long lastBlockCutoff = intervalEnd - minBlockMillis;
+
+        List<ActivityFragment> fragments = interval.getFragments();
+        int numFragments = fragments.size();
+        // The next fragment to place, numFragments once they're all placed
+        int fragment = 0;
+        long freeTimePartition = intervalStart;
+
+        // The block being built: its start, end and first fragment.  Its fragments end at the next fragment.
+        long blockStart = intervalStart;
+        long blockEnd = intervalStart;
+        int blockFirstFragment = 0;
+        blocks.clear();
+
+        // This loop only handles blocks that aren't too close to the end of the interval
+        while (blockEnd < lastBlockCutoff) {
+
+            // Make sure that the freeTimePartition is pointing to the next partition
+            if (freeTimePartition <= blockEnd) {
+                freeTimePartition = AlignedBoundaries.next(intervalStart, blockEnd, freeTimePartitionMillis);
+            }
+
+            if (blockEnd - blockStart >= minBlockMillis) {
+                blocks.append(blockStart, blockEnd, blockFirstFragment, fragment);
+                blockStart = blockEnd;
+                blockFirstFragment = fragment;
+            } else if (fragment == numFragments) {
+                // There are no more activities in this interval, only free time left
+                blockEnd = freeTimePartition;
+            } else {
+                long fragmentStart = fragments.get(fragment).getFragmentStart().getMillis();
+
+                // Fragments will frequently start back to back, in which case the fragment is too close to the
+                // block and is added to it.  Otherwise include the next fragment if it's too close to create an
+                // empty block.
+                if (fragmentStart == blockEnd || fragmentStart - blockStart < minBlockMillis) {
+                    blockEnd = addFragment(fragments, blockFirstFragment, fragment);
+                    fragment++;
+                } else if (fragmentStart < freeTimePartition) {
+                    // If the fragment is closer than the freeTimePartition, extend the current block until
+                    // it touches the next fragment
+                    blockEnd = fragmentStart;
+                } else {
+                    // If the freeTimePartition is before the fragment start, extend the block to the partition
+                    // and let the next iteration of the loop figure out what to do with remaining free time
+                    // and the next fragment.
+                    blockEnd = freeTimePartition;
+                }
+            }
+        }
+
+        // The above loop exists if we get too close to the end of the ActivityInterval.
+        // All of the free time and fragments go into the last block if we get too close to the end.
+        if (blockEnd < intervalEnd) {
+            while (fragment < numFragments) {
+                addFragment(fragments, blockFirstFragment, fragment);
+                fragment++;
+            }
+            blockEnd = intervalEnd;
+        }
+
+        // The while loop above only adds blocks at the beginning of the loop.
+        // The last block will never get added, since it will end "too close to the end."
+        // Whether we had to fill it out, or it was complete upon exiting the loop,
+        // add it to the list of blocks.
+        blocks.append(blockStart, blockEnd, blockFirstFragment, fragment);
+    }
+
+    /**
+     * Add the fragment to the block being built, checking it doesn't overlap the block's previous fragment.
+     *
+     * @return the new end of the block, which is the end of the fragment
+     */
+    private static long addFragment(List<ActivityFragment> fragments, int blockFirstFragment, int fragment) {
+        ActivityFragment added = fragments.get(fragment);
+        if (fragment > blockFirstFragment) {
+            ActivityFragment lastFragment = fragments.get(fragment - 1);
+            if (added.getFragmentStart().getMillis() < lastFragment.getFragmentEnd().getMillis()) {
+                throw new IllegalArgumentException(String.format("Fragments need to be added in sequential " +
+                        "order.  Got a fragment that starts before the previous one ends: previous [%s] " +
+                        "current [%s].", lastFragment, added));
+            }
+        }
+        return added.getFragmentEnd().getMillis();
+    }
+}
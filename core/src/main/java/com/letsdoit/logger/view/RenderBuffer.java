@@ -0,0 +1,136 @@
+package com.letsdoit.logger.view;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.letsdoit.logger.data.dao.ActivityInterval;
+
+import org.joda.time.Chronology;
+import org.joda.time.DateTime;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The RenderBlocks of one ActivityInterval, kept as parallel arrays instead of objects so the same buffer can be
+ * rendered into over and over without allocating.
+ *
+ * A block's fragments are always a run of consecutive fragments of the interval, so a block is just its start and end
+ * in epoch millis and the range of fragment indexes it holds.  {@link #toRenderBlock(int, ActivityInterval)} turns a
+ * block back into a RenderBlock when one is needed.
+ *
+ * Not thread safe.  Keep one buffer per rendering thread.
+ */
+public class RenderBuffer {
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private long[] starts;
+    private long[] ends;
+    private int[] firstFragments;
+    private int[] fragmentEnds;
+    private int size;
+
+    public RenderBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public RenderBuffer(int capacity) {
+        this.starts = new long[capacity];
+        this.ends = new long[capacity];
+        this.firstFragments = new int[capacity];
+        this.fragmentEnds = new int[capacity];
+        this.size = 0;
+    }
+
+    /**
+     * Forget the blocks, keeping the arrays for the next render.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Add a block to the end of the buffer.  Only grows the arrays until they fit the longest render.
+     *
+     * @param startMillis the start of the block
+     * @param endMillis the end of the block
+     * @param firstFragment the index in the interval of the block's first fragment
+     * @param fragmentEnd the index in the interval after the block's last fragment
+     */
+    void append(long startMillis, long endMillis, int firstFragment, int fragmentEnd) {
+        if (size == starts.length) {
+            int capacity = Math.max(DEFAULT_CAPACITY, size * 2);
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            firstFragments = Arrays.copyOf(firstFragments, capacity);
+            fragmentEnds = Arrays.copyOf(fragmentEnds, capacity);
+        }
+
+        starts[size] = startMillis;
+        ends[size] = endMillis;
+        firstFragments[size] = firstFragment;
+        fragmentEnds[size] = fragmentEnd;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getStartMillis(int index) {
+        Preconditions.checkElementIndex(index, size);
+        return starts[index];
+    }
+
+    public long getEndMillis(int index) {
+        Preconditions.checkElementIndex(index, size);
+        return ends[index];
+    }
+
+    /**
+     * @return the index in the rendered interval of the block's first fragment
+     */
+    public int getFirstFragment(int index) {
+        Preconditions.checkElementIndex(index, size);
+        return firstFragments[index];
+    }
+
+    /**
+     * @return the index in the rendered interval after the block's last fragment
+     */
+    public int getFragmentEnd(int index) {
+        Preconditions.checkElementIndex(index, size);
+        return fragmentEnds[index];
+    }
+
+    /**
+     * @return true if the block is free time, with no fragments in it
+     */
+    public boolean isFreeTime(int index) {
+        Preconditions.checkElementIndex(index, size);
+        return firstFragments[index] == fragmentEnds[index];
+    }
+
+    /**
+     * @param index the block to create
+     * @param interval the interval that was rendered into the buffer
+     * @return the block as a RenderBlock, with times in the interval's chronology
+     */
+    public RenderBlock toRenderBlock(int index, ActivityInterval interval) {
+        Preconditions.checkElementIndex(index, size);
+        Chronology chronology = interval.getStart().getChronology();
+        return new RenderBlock(new DateTime(starts[index], chronology), new DateTime(ends[index], chronology),
+                interval.getFragments().subList(firstFragments[index], fragmentEnds[index]));
+    }
+
+    /**
+     * @param interval the interval that was rendered into the buffer
+     * @return every block as a RenderBlock
+     */
+    public List<RenderBlock> toRenderBlocks(ActivityInterval interval) {
+        List<RenderBlock> blocks = Lists.newArrayListWithCapacity(size);
+        for (int i = 0; i < size; i++) {
+            blocks.add(toRenderBlock(i, interval));
+        }
+        return blocks;
+    }
+}
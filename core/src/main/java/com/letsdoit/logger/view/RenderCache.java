@@ -0,0 +1,184 @@
+package com.letsdoit.logger.view;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.letsdoit.logger.data.dao.ActivityFragment;
+import com.letsdoit.logger.data.dao.ActivityInterval;
+import com.letsdoit.logger.metrics.Counter;
+import com.letsdoit.logger.metrics.Metrics;
+
+import org.joda.time.Duration;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Remembers the RenderBlocks of recently rendered intervals, so reloading a range that mostly didn't change only
+ * renders the intervals that did.
+ *
+ * Entries are keyed by the interval start and remember the content they were rendered from: the interval's end and
+ * every field of its fragments.  A content version, a fingerprint of the same fields, rejects most changed intervals
+ * without comparing them, and a matching version is confirmed field by field, since different content can share a
+ * fingerprint.  When new data changes what's in an interval, the cached blocks are rendered again.  Intervals that
+ * scroll back into view with the same content are served from the cache.
+ *
+ * Holds at most maxEntries intervals, evicting the least recently used.  Thread safe.
+ */
+public class RenderCache {
+    private static final Counter HITS = Metrics.counter("RenderCache.hits");
+    private static final Counter MISSES = Metrics.counter("RenderCache.misses");
+
+    private final long minBlockMillis;
+    private final long freeTimePartitionMillis;
+    private final RenderBuffer buffer = new RenderBuffer();
+    private final LinkedHashMap<Long, CachedBlocks> entries;
+    private long hitCount = 0;
+    private long missCount = 0;
+
+    /**
+     * @param maxEntries the most intervals to remember
+     * @param minBlockDuration passed on to {@link IntervalRenderer}
+     * @param freeTimePartitionDuration passed on to {@link IntervalRenderer}
+     */
+    public RenderCache(final int maxEntries, Duration minBlockDuration, Duration freeTimePartitionDuration) {
+        Preconditions.checkArgument(maxEntries >= 0, "The max number of entries cannot be negative.");
+        this.minBlockMillis = minBlockDuration.getMillis();
+        this.freeTimePartitionMillis = freeTimePartitionDuration.getMillis();
+        // Access ordered, so the eldest entry is the least recently used
+        this.entries = new LinkedHashMap<Long, CachedBlocks>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, CachedBlocks> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Render the interval, or return the blocks it rendered into last time if its content hasn't changed.
+     *
+     * @param interval the interval to render
+     * @return the interval's RenderBlocks
+     */
+    public synchronized List<RenderBlock> render(ActivityInterval interval) {
+        long start = interval.getStart().getMillis();
+        long version = contentVersion(interval);
+
+        CachedBlocks entry = entries.get(start);
+        if (entry != null && entry.version == version && entry.hasContentOf(interval)) {
+            hitCount++;
+            HITS.increment();
+            return entry.blocks;
+        }
+
+        missCount++;
+        MISSES.increment();
+        IntervalRenderer.render(interval, minBlockMillis, freeTimePartitionMillis, buffer);
+        ImmutableList<RenderBlock> blocks = ImmutableList.copyOf(buffer.toRenderBlocks(interval));
+        entries.put(start, new CachedBlocks(version, interval, blocks));
+        return blocks;
+    }
+
+    /**
+     * Forget every interval, e.g. when the data source was replaced.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return how many renders were served from the cache
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return how many renders had to render the interval
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Fingerprint everything about the interval that ends up in its RenderBlocks, without allocating.
+     *
+     * @param interval the interval to fingerprint
+     * @return a version that almost always changes when the interval's content changes
+     */
+    static long contentVersion(ActivityInterval interval) {
+        long version = mix(interval.getEnd().getMillis());
+        List<ActivityFragment> fragments = interval.getFragments();
+        for (int i = 0; i < fragments.size(); i++) {
+            ActivityFragment fragment = fragments.get(i);
+            version = mix(version ^ fragment.getActivityName().hashCode());
+            version = mix(version ^ fragment.getActivityStart().getMillis());
+            version = mix(version ^ fragment.getActivityEnd().getMillis());
+            version = mix(version ^ fragment.getFragmentStart().getMillis());
+            version = mix(version ^ fragment.getFragmentEnd().getMillis());
+        }
+        return version;
+    }
+
+    // The finalizer of the 64-bit MurmurHash3, so every input bit affects every output bit
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+
+    private static class CachedBlocks {
+        private final long version;
+        private final long endMillis;
+        // The content the blocks were rendered from: each fragment's name, and its four times in a row
+        private final String[] names;
+        private final long[] times;
+        private final ImmutableList<RenderBlock> blocks;
+
+        private CachedBlocks(long version, ActivityInterval interval, ImmutableList<RenderBlock> blocks) {
+            this.version = version;
+            this.endMillis = interval.getEnd().getMillis();
+            List<ActivityFragment> fragments = interval.getFragments();
+            this.names = new String[fragments.size()];
+            this.times = new long[fragments.size() * 4];
+            for (int i = 0; i < fragments.size(); i++) {
+                ActivityFragment fragment = fragments.get(i);
+                names[i] = fragment.getActivityName();
+                times[i * 4] = fragment.getActivityStart().getMillis();
+                times[i * 4 + 1] = fragment.getActivityEnd().getMillis();
+                times[i * 4 + 2] = fragment.getFragmentStart().getMillis();
+                times[i * 4 + 3] = fragment.getFragmentEnd().getMillis();
+            }
+            this.blocks = blocks;
+        }
+
+        /**
+         * @return true if the interval has exactly the content the blocks were rendered from.  Names loaded through
+         * the same ActivityNames are the same instance, so comparing them is usually a reference check.
+         */
+        private boolean hasContentOf(ActivityInterval interval) {
+            List<ActivityFragment> fragments = interval.getFragments();
+            if (interval.getEnd().getMillis() != endMillis || fragments.size() != names.length) {
+                return false;
+            }
+            for (int i = 0; i < fragments.size(); i++) {
+                ActivityFragment fragment = fragments.get(i);
+                if (!names[i].equals(fragment.getActivityName())
+                        || times[i * 4] != fragment.getActivityStart().getMillis()
+                        || times[i * 4 + 1] != fragment.getActivityEnd().getMillis()
+                        || times[i * 4 + 2] != fragment.getFragmentStart().getMillis()
+                        || times[i * 4 + 3] != fragment.getFragmentEnd().getMillis()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
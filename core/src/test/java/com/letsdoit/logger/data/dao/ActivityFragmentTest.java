@@ -1,10 +1,11 @@
 package com.letsdoit.logger.data.dao;
 
-import android.test.AndroidTestCase;
-import android.util.Pair;
+import junit.framework.TestCase;
 
 import com.google.common.collect.Lists;
 
+import org.apache.commons.lang3.tuple.Pair;
+
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 
@@ -16,7 +17,7 @@ import static org.joda.time.Period.minutes;
 /**
  * Created by Andrey on 7/18/2014.
  */
-public class ActivityFragmentTest extends AndroidTestCase {
+public class ActivityFragmentTest extends TestCase {
 
     static {
         DateTimeZone.setDefault(DateTimeZone.UTC);
@@ -79,7 +80,7 @@ public class ActivityFragmentTest extends AndroidTestCase {
         ActivityFragment activity = new ActivityFragment("Activity", start.minus(minutes(10)),
                 start.plus(minutes(30)), start, start.plus(minutes(20)));
         Pair<ActivityFragment, ActivityFragment> split = activity.splitAtTime(start.plus(minutes(5)));
-        List<ActivityFragment> fragments = Lists.newArrayList(split.first, split.second);
+        List<ActivityFragment> fragments = Lists.newArrayList(split.getLeft(), split.getRight());
         List<ActivityFragment> outputs = ActivityFragment.defragment(fragments);
 
         assertEquals("" + outputs, 1, outputs.size());
@@ -95,8 +96,8 @@ public class ActivityFragmentTest extends AndroidTestCase {
         ActivityFragment activity = new ActivityFragment("Activity", start.minus(minutes(10)),
                 start.plus(minutes(30)), start, start.plus(minutes(20)));
         Pair<ActivityFragment, ActivityFragment> split1 = activity.splitAtTime(start.plus(minutes(5)));
-        Pair<ActivityFragment, ActivityFragment> split2 = split1.second.splitAtTime(start.plus(minutes(10)));
-        List<ActivityFragment> fragments = Lists.newArrayList(split1.first, split2.first, split2.second);
+        Pair<ActivityFragment, ActivityFragment> split2 = split1.getRight().splitAtTime(start.plus(minutes(10)));
+        List<ActivityFragment> fragments = Lists.newArrayList(split1.getLeft(), split2.getLeft(), split2.getRight());
 
         List<ActivityFragment> outputs = ActivityFragment.defragment(fragments);
 
@@ -0,0 +1,112 @@
+package com.letsdoit.logger.data.dao;
+
+import junit.framework.TestCase;
+
+import com.google.common.collect.Sets;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Duration;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.joda.time.Period.hours;
+
+/**
+ * Verify the generated histories are well formed, reproducible and hit the edge cases.
+ */
+public class ActivityHistoryGeneratorTest extends TestCase {
+
+    static {
+        DateTimeZone.setDefault(DateTimeZone.UTC);
+    }
+
+    private static final DateTime START = new DateTime(2014, 1, 1, 0, 0, 0, 0);
+    private static final Duration MAX_FRAGMENT_DURATION = hours(1).toStandardDuration();
+
+    public void testSortedAndNotOverlapping() {
+        List<Activity> activities = ActivityHistoryGenerator.builder().seed(1).days(START, 365).build().generate();
+        assertTrue(activities.size() > 1000);
+
+        DateTime lastEnd = START;
+        for (Activity activity : activities) {
+            assertFalse(activity.getActivityStart().isBefore(lastEnd));
+            assertTrue(activity.getActivityStart().isBefore(activity.getActivityEnd()));
+            lastEnd = activity.getActivityEnd();
+        }
+        assertFalse(lastEnd.isAfter(START.plusDays(365)));
+    }
+
+    public void testSameSeedSameHistory() {
+        ActivityHistoryGenerator.Builder builder = ActivityHistoryGenerator.builder().days(START, 30);
+        assertEquals(builder.seed(7).build().generate(), builder.seed(7).build().generate());
+        assertFalse(builder.seed(7).build().generate().equals(builder.seed(8).build().generate()));
+    }
+
+    public void testMaxActivities() {
+        List<Activity> activities = ActivityHistoryGenerator.builder()
+                .days(START, 20 * 365).maxActivities(100000).build().generate();
+        assertEquals(100000, activities.size());
+    }
+
+    public void testNameCardinality() {
+        Set<String> names = Sets.newHashSet();
+        for (Activity activity : ActivityHistoryGenerator.builder().days(START, 365).names(5).build()) {
+            names.add(activity.getActivityName());
+        }
+        assertEquals(5, names.size());
+    }
+
+    public void testDensity() {
+        long covered = 0;
+        for (Activity activity : ActivityHistoryGenerator.builder().days(START, 365).density(0.5).build()) {
+            covered += activity.getActivityDuration().getMillis();
+        }
+        double density = (double) covered / START.plusDays(365).minus(START.getMillis()).getMillis();
+        assertTrue("Density was " + density, density > 0.4 && density < 0.6);
+    }
+
+    public void testFullDensityLeavesNoGaps() {
+        List<Activity> activities = ActivityHistoryGenerator.builder()
+                .days(START, 30).density(1).edgeCaseRate(0).build().generate();
+        for (int i = 1; i < activities.size(); i++) {
+            assertEquals(activities.get(i - 1).getActivityEnd(), activities.get(i).getActivityStart());
+        }
+    }
+
+    public void testEdgeCases() {
+        DateTimeZone zone = DateTimeZone.forID("America/New_York");
+        List<Activity> activities = ActivityHistoryGenerator.builder()
+                .zone(zone).days(START, 3 * 365).edgeCaseRate(0.5).build().generate();
+
+        int spansMidnight = 0;
+        int spansTransition = 0;
+        int exactFragments = 0;
+        for (Activity activity : activities) {
+            long start = activity.getActivityStart().getMillis();
+            long end = activity.getActivityEnd().getMillis();
+            if (!activity.getActivityStart().toLocalDate().equals(activity.getActivityEnd().toLocalDate())) {
+                spansMidnight++;
+            }
+            long transition = zone.nextTransition(start);
+            if (transition > start && transition < end) {
+                spansTransition++;
+            }
+            if ((end - start) % MAX_FRAGMENT_DURATION.getMillis() == 0) {
+                exactFragments++;
+            }
+        }
+        assertTrue(spansMidnight > 0);
+        // Two transitions a year
+        assertTrue("Spanned " + spansTransition + " transitions", spansTransition >= 4);
+        assertTrue(exactFragments > 0);
+    }
+
+    public void testFragmentRoundTrip() {
+        List<Activity> activities = ActivityHistoryGenerator.builder()
+                .days(START, 365).edgeCaseRate(0.2).build().generate();
+        List<ActivityFragment> fragments = Fragmenter.fragment(activities, MAX_FRAGMENT_DURATION);
+        assertEquals(activities, Fragmenter.defragment(fragments));
+    }
+}
@@ -0,0 +1,185 @@
+package com.letsdoit.logger.data.dao;
+
+import junit.framework.TestCase;
+
+import com.google.common.collect.Lists;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Duration;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.joda.time.Period.hours;
+import static org.joda.time.Period.minutes;
+
+/**
+ * Verify the columnar timeline and the partitioning and defragmenting that run over it.
+ */
+public class ActivityTimelineTest extends TestCase {
+
+    static {
+        DateTimeZone.setDefault(DateTimeZone.UTC);
+    }
+
+    private static final DateTime START = new DateTime(2014, 7, 17, 10, 30, 0, 0);
+
+    private String activityName() {
+        return "ActivityName-" + UUID.randomUUID().toString();
+    }
+
+    private ActivityTimeline timelineOf(List<Activity> activities) {
+        return timelineOf(new ActivityNames(), activities);
+    }
+
+    private ActivityTimeline timelineOf(ActivityNames names, List<Activity> activities) {
+        ActivityTimeline timeline = new ActivityTimeline(names, 1);
+        for (Activity activity : activities) {
+            timeline.append(activity);
+        }
+        return timeline;
+    }
+
+    public void testNamesAreInterned() {
+        ActivityNames names = new ActivityNames();
+        int id = names.intern("Work");
+
+        assertEquals(id, names.intern("Work"));
+        assertFalse(id == names.intern("Break"));
+        assertEquals("Work", names.getName(id));
+    }
+
+    public void testEntryMatchesActivity() {
+        Activity activity = new Activity(activityName(), START, START.plus(hours(2)));
+        ActivityTimeline timeline = timelineOf(Lists.newArrayList(activity));
+
+        ActivityTimeline.Entry entry = timeline.get(0, null);
+        assertEquals(activity.getActivityName(), entry.getActivityName());
+        assertEquals(activity.getActivityStart(), entry.getActivityStart());
+        assertEquals(activity.getActivityEnd(), entry.getActivityEnd());
+        assertEquals(activity.getActivityDuration(), entry.getActivityDuration());
+        assertEquals(activity, entry.toActivity());
+    }
+
+    public void testAppendGrowsAndKeepsOrder() {
+        List<Activity> activities = Lists.newArrayList();
+        for (int i = 0; i < 40; i++) {
+            activities.add(new Activity(activityName(), START.plus(minutes(10 * i)), START.plus(minutes(10 * i + 5))));
+        }
+
+        ActivityTimeline timeline = timelineOf(activities);
+
+        assertEquals(activities.size(), timeline.size());
+        assertEquals(activities, timeline.asActivities());
+    }
+
+    public void testIndexOfFirstEndingAfter() {
+        ActivityTimeline timeline = timelineOf(Lists.newArrayList(
+                new Activity(activityName(), START, START.plus(hours(1))),
+                new Activity(activityName(), START.plus(hours(2)), START.plus(hours(3)))));
+
+        assertEquals(0, timeline.indexOfFirstEndingAfter(START.getMillis()));
+        assertEquals(1, timeline.indexOfFirstEndingAfter(START.plus(hours(1)).getMillis()));
+        assertEquals(2, timeline.indexOfFirstEndingAfter(START.plus(hours(3)).getMillis()));
+    }
+
+    public void testDefragment_MatchesListDefragment() {
+        List<Activity> activities = Lists.newArrayList(
+                new Activity(activityName(), START, START.plus(hours(3))),
+                new Activity(activityName(), START.plus(hours(3)), START.plus(hours(5))),
+                new Activity(activityName(), START.plus(hours(5)), START.plus(hours(6))));
+        List<ActivityFragment> fragments = Fragmenter.fragment(activities, hours(1).toStandardDuration());
+
+        ActivityNames names = new ActivityNames();
+        ActivityTimeline timeline = new ActivityTimeline(names);
+        for (ActivityFragment fragment : fragments) {
+            Fragmenter.defragment(timeline, names.intern(fragment.getActivityName()),
+                    fragment.getActivityStart().getMillis(), fragment.getActivityEnd().getMillis());
+        }
+
+        assertEquals(Fragmenter.defragment(fragments), timeline.asActivities());
+    }
+
+    public void testPartition_IndicesMatchIntervals() {
+        List<Activity> activities = Lists.newArrayList(
+                new Activity(activityName(), START.minus(minutes(45)), START.minus(minutes(35))),
+                new Activity(activityName(), START.minus(minutes(10)), START.plus(minutes(40))),
+                new Activity(activityName(), START.plus(minutes(40)), START.plus(minutes(50))),
+                new Activity(activityName(), START.plus(minutes(95)), START.plus(minutes(100))));
+        ActivityTimeline timeline = timelineOf(activities);
+
+        Duration halfHour = minutes(30).toStandardDuration();
+        DateTime end = START.plus(hours(2));
+        List<ActivityInterval> intervals = Partitioner.partition(timeline, START, end, halfHour);
+        assertEquals(4, intervals.size());
+
+        int[] firstIndices = new int[4];
+        int[] endIndices = new int[4];
+        int numIntervals = Partitioner.partition(timeline, START.getMillis(), end.getMillis(), halfHour.getMillis(),
+                firstIndices, endIndices);
+        assertEquals(4, numIntervals);
+
+        for (int i = 0; i < numIntervals; i++) {
+            List<ActivityFragment> fragments = intervals.get(i).getFragments();
+            assertEquals(fragments.size(), endIndices[i] - firstIndices[i]);
+            for (int j = 0; j < fragments.size(); j++) {
+                ActivityFragment fragment = fragments.get(j);
+                assertEquals(fragment.getActivityStart().getMillis(), timeline.getStartMillis(firstIndices[i] + j));
+                assertEquals(fragment.getActivityName(), timeline.getName(firstIndices[i] + j));
+            }
+        }
+    }
+
+    public void testMerge_DropsDuplicatesAndOutOfRange() {
+        ActivityNames names = new ActivityNames();
+        Activity before = new Activity(activityName(), START.minus(hours(2)), START.minus(hours(1)));
+        Activity crossing = new Activity(activityName(), START.plus(minutes(30)), START.plus(minutes(90)));
+        Activity after = new Activity(activityName(), START.plus(hours(2)), START.plus(hours(3)));
+        Activity outside = new Activity(activityName(), START.plus(hours(4)), START.plus(hours(5)));
+
+        // Loaded for [START - 3h, START + 1h) and [START + 1h, START + 4h)
+        ActivityTimeline first = new ActivityTimeline(names);
+        first.append(before);
+        first.append(crossing);
+        ActivityTimeline second = new ActivityTimeline(names);
+        second.append(crossing);
+        second.append(after);
+        second.append(outside);
+
+        ActivityTimeline merged = ActivityTimeline.merge(first, second,
+                START.minus(minutes(30)).getMillis(), START.plus(hours(4)).getMillis());
+
+        assertEquals(Lists.newArrayList(crossing, after), merged.asActivities());
+    }
+
+    public void testSplice_ReplacesOnlyTheRange() {
+        ActivityNames names = new ActivityNames();
+        Activity before = new Activity(activityName(), START.minus(hours(2)), START.minus(hours(1)));
+        Activity crossing = new Activity(activityName(), START.minus(minutes(30)), START.plus(minutes(30)));
+        Activity after = new Activity(activityName(), START.plus(hours(2)), START.plus(hours(3)));
+        ActivityTimeline base = timelineOf(names, Lists.newArrayList(before, crossing, after));
+
+        // An activity was logged in [START, START + 2h), the store now has these overlapping the range
+        Activity logged = new Activity(activityName(), START.plus(minutes(45)), START.plus(hours(1)));
+        ActivityTimeline replacement = timelineOf(names, Lists.newArrayList(crossing, logged));
+
+        ActivityTimeline spliced = ActivityTimeline.splice(base, replacement,
+                START.getMillis(), START.plus(hours(2)).getMillis());
+
+        assertEquals(Lists.newArrayList(before, crossing, logged, after), spliced.asActivities());
+    }
+
+    public void testOverlaps() {
+        ActivityTimeline timeline = timelineOf(Lists.newArrayList(
+                new Activity(activityName(), START, START.plus(hours(1))),
+                new Activity(activityName(), START.plus(hours(2)), START.plus(hours(3)))));
+
+        assertFalse(timeline.overlaps(START.minus(hours(1)).getMillis(), START.getMillis()));
+        assertTrue(timeline.overlaps(START.minus(hours(1)).getMillis(), START.plus(minutes(1)).getMillis()));
+        assertTrue(timeline.overlaps(START.plus(minutes(10)).getMillis(), START.plus(minutes(20)).getMillis()));
+        assertFalse(timeline.overlaps(START.plus(hours(1)).getMillis(), START.plus(hours(2)).getMillis()));
+        assertTrue(timeline.overlaps(START.plus(hours(1)).getMillis(), START.plus(hours(4)).getMillis()));
+        assertFalse(timeline.overlaps(START.plus(hours(3)).getMillis(), START.plus(hours(4)).getMillis()));
+    }
+}
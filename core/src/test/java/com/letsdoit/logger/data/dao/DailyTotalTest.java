@@ -0,0 +1,76 @@
+package com.letsdoit.logger.data.dao;
+
+import junit.framework.TestCase;
+
+import com.google.common.collect.Lists;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Duration;
+import org.joda.time.LocalDate;
+
+import static org.joda.time.Period.hours;
+import static org.joda.time.Period.minutes;
+
+/**
+ * Verify splitting Activities into the time spent on each day.
+ */
+public class DailyTotalTest extends TestCase {
+
+    static {
+        DateTimeZone.setDefault(DateTimeZone.UTC);
+    }
+
+    private static final DateTime MIDNIGHT = new DateTime(2014, 7, 17, 0, 0, 0, 0);
+    private static final LocalDate DAY = new LocalDate(2014, 7, 17);
+
+    public void testSplit_WithinOneDay() {
+        Activity activity = new Activity("Read", MIDNIGHT.plus(hours(9)), MIDNIGHT.plus(hours(11)));
+        assertEquals(Lists.newArrayList(new DailyTotal(DAY, "Read", Duration.standardHours(2))),
+                DailyTotal.split(activity, DateTimeZone.UTC));
+    }
+
+    public void testSplit_EndsAtMidnight() {
+        Activity activity = new Activity("Read", MIDNIGHT.minus(hours(1)), MIDNIGHT);
+        assertEquals(Lists.newArrayList(new DailyTotal(DAY.minusDays(1), "Read", Duration.standardHours(1))),
+                DailyTotal.split(activity, DateTimeZone.UTC));
+    }
+
+    public void testSplit_AcrossMidnight() {
+        Activity activity = new Activity("Sleep", MIDNIGHT.minus(hours(2)), MIDNIGHT.plus(hours(7)));
+        assertEquals(Lists.newArrayList(
+                        new DailyTotal(DAY.minusDays(1), "Sleep", Duration.standardHours(2)),
+                        new DailyTotal(DAY, "Sleep", Duration.standardHours(7))),
+                DailyTotal.split(activity, DateTimeZone.UTC));
+    }
+
+    public void testSplit_SeveralDays() {
+        Activity activity = new Activity("Hike", MIDNIGHT.plus(minutes(30)), MIDNIGHT.plusDays(2).plus(hours(1)));
+        assertEquals(Lists.newArrayList(
+                        new DailyTotal(DAY, "Hike", Duration.standardMinutes(23 * 60 + 30)),
+                        new DailyTotal(DAY.plusDays(1), "Hike", Duration.standardHours(24)),
+                        new DailyTotal(DAY.plusDays(2), "Hike", Duration.standardHours(1))),
+                DailyTotal.split(activity, DateTimeZone.UTC));
+    }
+
+    public void testSplit_InAnotherZone() {
+        // 22:00 to 07:00 UTC is 07:00 to 16:00 in Tokyo, all on one day there
+        DateTimeZone tokyo = DateTimeZone.forID("Asia/Tokyo");
+        Activity activity = new Activity("Sleep", MIDNIGHT.minus(hours(2)), MIDNIGHT.plus(hours(7)));
+        assertEquals(Lists.newArrayList(new DailyTotal(DAY, "Sleep", Duration.standardHours(9))),
+                DailyTotal.split(activity, tokyo));
+    }
+
+    public void testSplit_IgnoresTheDefaultZone() {
+        Activity activity = new Activity("Sleep", MIDNIGHT.minus(hours(2)), MIDNIGHT.plus(hours(7)));
+        DateTimeZone.setDefault(DateTimeZone.forID("America/Los_Angeles"));
+        try {
+            assertEquals(Lists.newArrayList(
+                            new DailyTotal(DAY.minusDays(1), "Sleep", Duration.standardHours(2)),
+                            new DailyTotal(DAY, "Sleep", Duration.standardHours(7))),
+                    DailyTotal.split(activity, DateTimeZone.UTC));
+        } finally {
+            DateTimeZone.setDefault(DateTimeZone.UTC);
+        }
+    }
+}
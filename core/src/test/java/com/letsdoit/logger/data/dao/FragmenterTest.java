@@ -1,6 +1,6 @@
 package com.letsdoit.logger.data.dao;
 
-import android.test.AndroidTestCase;
+import junit.framework.TestCase;
 
 import com.google.common.collect.Lists;
 
@@ -19,11 +19,9 @@ import static org.joda.time.Period.hours;
  *
  * Created by Andrey on 6/13/2015.
  */
-public class FragmenterTest extends AndroidTestCase {
+public class FragmenterTest extends TestCase {
 
     static {
-        // Set a default timezone because Android doesn't assume one and crashes
-        // when you using joda time.
         DateTimeZone.setDefault(DateTimeZone.UTC);
     }
 
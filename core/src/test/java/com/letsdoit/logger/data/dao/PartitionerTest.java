@@ -1,6 +1,6 @@
 package com.letsdoit.logger.data.dao;
 
-import android.test.AndroidTestCase;
+import junit.framework.TestCase;
 
 import com.google.common.collect.Lists;
 
@@ -15,11 +15,9 @@ import static org.joda.time.Period.minutes;
 /**
  * Created by Andrey on 6/14/2015.
  */
-public class PartitionerTest extends AndroidTestCase {
+public class PartitionerTest extends TestCase {
 
     static {
-        // Set a default timezone because Android doesn't assume one and crashes
-        // when you using joda time.
         DateTimeZone.setDefault(DateTimeZone.UTC);
     }
 
@@ -148,4 +146,22 @@ public class PartitionerTest extends AndroidTestCase {
         assertFragment(activity6, 120, 130, interval120Fragments.get(0));
     }
 
+    public void testPartition_IteratorMatchesList() {
+        Activity activity1 = new Activity(activityName(), START.minus(minutes(40)), START.plus(minutes(10)));
+        Activity activity2 = new Activity(activityName(), START.plus(minutes(10)), START.plus(minutes(75)));
+        Activity activity3 = new Activity(activityName(), START.plus(minutes(100)), START.plus(minutes(200)));
+        List<Activity> activities = Lists.newArrayList(activity1, activity2, activity3);
+
+        List<ActivityInterval> fromList = Partitioner.partition(activities,
+                START, START.plus(minutes(150)),
+                minutes(30).toStandardDuration());
+        List<ActivityInterval> fromIterator = Partitioner.partition(activities.iterator(),
+                START, START.plus(minutes(150)),
+                minutes(30).toStandardDuration());
+
+        assertEquals(5, fromIterator.size());
+        assertEquals(fromList.toString(), fromIterator.toString());
+        assertFragment(activity3, 120, 150, fromIterator.get(4).getFragments().get(0));
+    }
+
 }
@@ -0,0 +1,180 @@
+package com.letsdoit.logger.data.importer;
+
+import junit.framework.TestCase;
+
+import com.google.common.collect.Lists;
+import com.letsdoit.logger.data.dao.Activity;
+import com.letsdoit.logger.data.dao.ActivityHistoryGenerator;
+import com.letsdoit.logger.data.store.ActivityStore;
+import com.letsdoit.logger.data.store.InMemoryActivityStore;
+import com.letsdoit.logger.logging.AppLog;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.joda.time.Period.hours;
+import static org.joda.time.Period.minutes;
+
+/**
+ * Verify importing histories into a store: sorting, validation, batching and progress.
+ */
+public class ActivityImporterTest extends TestCase {
+
+    static {
+        DateTimeZone.setDefault(DateTimeZone.UTC);
+    }
+
+    private static final DateTime START = new DateTime(2014, 7, 17, 10, 0, 0, 0);
+
+    private ActivityStore store;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        store = new InMemoryActivityStore();
+        store.open();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        store.close();
+        super.tearDown();
+    }
+
+    /**
+     * Reads the Activities back from a list, like a parsed file would.
+     */
+    private static ActivityReader reader(final List<Activity> activities) {
+        return new ActivityReader() {
+            private int next = 0;
+
+            @Override
+            public Activity read() {
+                return next < activities.size() ? activities.get(next++) : null;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    public void testImportSortsAcrossRuns() throws IOException {
+        List<Activity> activities = Lists.newArrayList();
+        for (int i = 0; i < 100; i++) {
+            activities.add(new Activity("Activity " + (i % 3), START.plus(minutes(10 * i)),
+                    START.plus(minutes(10 * i + 5))));
+        }
+        List<Activity> shuffled = Lists.newArrayList(activities);
+        Collections.shuffle(shuffled, new Random(1));
+
+        final List<ImportProgress> reports = Lists.newArrayList();
+        ImportProgress progress = ActivityImporter.builder(store)
+                .runSize(7)
+                .batchSize(30)
+                .listener(new ImportListener() {
+                    @Override
+                    public void onProgress(ImportProgress progress) {
+                        reports.add(progress);
+                    }
+                })
+                .build()
+                .importActivities(reader(shuffled));
+
+        assertEquals(activities, store.getActivitiesInRange(START, START.plusDays(1)));
+        assertEquals(100, progress.getActivitiesRead());
+        assertEquals(100, progress.getActivitiesWritten());
+        assertEquals(0, progress.getActivitiesSkipped());
+
+        // 14 full runs spilled, then 4 batches written
+        assertEquals(18, reports.size());
+        assertEquals(0, reports.get(13).getActivitiesWritten());
+        assertEquals(30, reports.get(14).getActivitiesWritten());
+        assertEquals(100, reports.get(17).getActivitiesWritten());
+    }
+
+    public void testInvalidActivityFailsTheImport() throws IOException {
+        List<Activity> activities = Lists.newArrayList(
+                new Activity("Read", START, START.plus(hours(1))),
+                new Activity("Walk", START.plus(minutes(30)), START.plus(hours(2))));
+        try {
+            ActivityImporter.builder(store).build().importActivities(reader(activities));
+            fail("The activities overlap");
+        } catch (ImportException e) {
+            // Expected
+        }
+        assertFalse(store.hasActivitiesInRange(START, START.plusDays(1)));
+    }
+
+    public void testSkipInvalid() throws IOException {
+        Activity stored = new Activity("Sleep", START.minus(hours(8)), START);
+        store.addActivity(stored);
+
+        Activity valid = new Activity("Read", START, START.plus(hours(1)));
+        Activity laterValid = new Activity("Cook", START.plus(hours(3)), START.plus(hours(4)));
+        List<Activity> activities = Lists.newArrayList(
+                laterValid,
+                new Activity("Walk", START.plus(minutes(30)), START.plus(hours(2))),
+                new Activity("Backwards", START.plus(hours(5)), START.plus(hours(4))),
+                new Activity("Empty", START.plus(hours(5)), START.plus(hours(5))),
+                new Activity("Nap", START.minus(hours(1)), START.minus(minutes(30))),
+                valid);
+
+        ImportProgress progress = ActivityImporter.builder(store)
+                .skipInvalid(true)
+                .build()
+                .importActivities(reader(activities));
+
+        assertEquals(Lists.newArrayList(stored, valid, laterValid),
+                store.getActivitiesInRange(START.minusDays(1), START.plusDays(1)));
+        assertEquals(6, progress.getActivitiesRead());
+        assertEquals(2, progress.getActivitiesWritten());
+        assertEquals(4, progress.getActivitiesSkipped());
+
+        // Importing the same history again skips everything
+        progress = ActivityImporter.builder(store)
+                .skipInvalid(true)
+                .build()
+                .importActivities(reader(activities));
+        assertEquals(0, progress.getActivitiesWritten());
+        assertEquals(6, progress.getActivitiesSkipped());
+    }
+
+    /**
+     * 100k Activities, about fifteen years of history, parsed from CSV out of order in seconds.
+     */
+    public void testImportLargeHistory() throws IOException {
+        List<Activity> activities = ActivityHistoryGenerator.builder()
+                .seed(3)
+                .days(START, 20 * 365)
+                .maxActivities(100000)
+                .build()
+                .generate();
+        assertEquals(100000, activities.size());
+        List<Activity> shuffled = Lists.newArrayList(activities);
+        Collections.shuffle(shuffled, new Random(3));
+
+        StringBuilder csv = new StringBuilder("name,start,end\n");
+        for (Activity activity : shuffled) {
+            csv.append(activity.getActivityName()).append(',')
+                    .append(activity.getActivityStart()).append(',')
+                    .append(activity.getActivityEnd()).append('\n');
+        }
+
+        ImportProgress progress = ActivityImporter.builder(store)
+                .runSize(20000)
+                .build()
+                .importActivities(new CsvActivityReader(new StringReader(csv.toString())));
+
+        AppLog.i("ADP_ActivityImporterTest", progress.toString());
+        assertEquals(activities.size(), progress.getActivitiesWritten());
+        DateTime end = activities.get(activities.size() - 1).getActivityEnd();
+        assertEquals(activities, store.getActivitiesInRange(START, end));
+    }
+}
@@ -0,0 +1,91 @@
+package com.letsdoit.logger.data.importer;
+
+import junit.framework.TestCase;
+
+import com.letsdoit.logger.data.dao.Activity;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.joda.time.Period.hours;
+import static org.joda.time.Period.minutes;
+
+/**
+ * Verify reading Activities from comma separated values.
+ */
+public class CsvActivityReaderTest extends TestCase {
+
+    static {
+        DateTimeZone.setDefault(DateTimeZone.UTC);
+    }
+
+    private static final DateTime START = new DateTime(2014, 7, 17, 10, 0, 0, 0);
+
+    private static CsvActivityReader reader(String csv) {
+        return new CsvActivityReader(new StringReader(csv));
+    }
+
+    public void testRead() throws IOException {
+        CsvActivityReader reader = reader("name,start,end\r\n"
+                + "Sleep,2014-07-17T01:00:00,2014-07-17T09:00:00\r\n"
+                + "Read," + START.getMillis() + "," + START.plus(hours(1)).getMillis() + "\r\n");
+
+        assertEquals(new Activity("Sleep", START.minus(hours(9)), START.minus(hours(1))), reader.read());
+        assertEquals(new Activity("Read", START, START.plus(hours(1))), reader.read());
+        assertNull(reader.read());
+        assertNull(reader.read());
+    }
+
+    public void testColumnsInAnyOrder() throws IOException {
+        CsvActivityReader reader = reader("\uFEFFEnd,Notes,Start,Activity\n"
+                + "2014-07-17T10:30:00Z,ignored,2014-07-17T12:00:00+02:00,Walk\n"
+                + "\n");
+
+        assertEquals(new Activity("Walk", START, START.plus(minutes(30))), reader.read());
+        assertNull(reader.read());
+    }
+
+    public void testQuotedFields() throws IOException {
+        CsvActivityReader reader = reader("name,start,end\n"
+                + "\"Read, then \"\"nap\"\"\",2014-07-17T10:00:00,2014-07-17T11:00:00\n"
+                + "\"Two\nlines\",2014-07-17T11:00:00,2014-07-17T12:00:00");
+
+        assertEquals(new Activity("Read, then \"nap\"", START, START.plus(hours(1))), reader.read());
+        assertEquals(new Activity("Two\nlines", START.plus(hours(1)), START.plus(hours(2))), reader.read());
+        assertNull(reader.read());
+    }
+
+    public void testMissingColumn() throws IOException {
+        try {
+            reader("name,start\nRead,2014-07-17T10:00:00\n").read();
+            fail("The end column is missing");
+        } catch (ImportException e) {
+            // Expected
+        }
+    }
+
+    public void testUnreadableTime() throws IOException {
+        CsvActivityReader reader = reader("name,start,end\n"
+                + "Read,2014-07-17T10:00:00,2014-07-17T11:00:00\n"
+                + "Read,yesterday,2014-07-17T12:00:00\n");
+        reader.read();
+        try {
+            reader.read();
+            fail("The start can't be read");
+        } catch (ImportException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("line 3"));
+        }
+    }
+
+    public void testTooFewFields() throws IOException {
+        try {
+            reader("name,start,end\nRead,2014-07-17T10:00:00\n").read();
+            fail("The end is missing");
+        } catch (ImportException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("line 2"));
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.letsdoit.logger.data.importer;
+
+import junit.framework.TestCase;
+
+import com.letsdoit.logger.data.dao.Activity;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.joda.time.Period.hours;
+
+/**
+ * Verify reading Activities from a JSON array.
+ */
+public class JsonActivityReaderTest extends TestCase {
+
+    static {
+        DateTimeZone.setDefault(DateTimeZone.UTC);
+    }
+
+    private static final DateTime START = new DateTime(2014, 7, 17, 10, 0, 0, 0);
+
+    private static JsonActivityReader reader(String json) {
+        return new JsonActivityReader(new StringReader(json));
+    }
+
+    public void testRead() throws IOException {
+        JsonActivityReader reader = reader("[\n"
+                + "  {\"name\": \"Sleep\", \"start\": \"2014-07-17T01:00:00\", \"end\": \"2014-07-17T09:00:00\"},\n"
+                + "  {\"tags\": [\"home\", {\"room\": 1}], \"end\": " + START.plus(hours(1)).getMillis()
+                + ", \"activity\": \"Read\", \"start\": \"" + START.getMillis() + "\"}\n"
+                + "]");
+
+        assertEquals(new Activity("Sleep", START.minus(hours(9)), START.minus(hours(1))), reader.read());
+        assertEquals(new Activity("Read", START, START.plus(hours(1))), reader.read());
+        assertNull(reader.read());
+        assertNull(reader.read());
+    }
+
+    public void testEmptyArray() throws IOException {
+        assertNull(reader("[]").read());
+    }
+
+    public void testMissingMember() throws IOException {
+        JsonActivityReader reader = reader("[{\"name\": \"Read\", \"start\": \"2014-07-17T10:00:00\"}]");
+        try {
+            reader.read();
+            fail("The end is missing");
+        } catch (ImportException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("activity 1"));
+        }
+    }
+
+    public void testNotAnArray() throws IOException {
+        try {
+            reader("{\"name\": \"Read\"}").read();
+            fail("The activities must be in an array");
+        } catch (ImportException e) {
+            // Expected
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.letsdoit.logger.data.store;
+
+/**
+ * Verify the in-memory store behaves like every other ActivityStore.
+ */
+public class InMemoryActivityStoreTest extends ActivityStoreConformanceTest {
+
+    @Override
+    protected ActivityStore createStore() {
+        return new InMemoryActivityStore();
+    }
+}
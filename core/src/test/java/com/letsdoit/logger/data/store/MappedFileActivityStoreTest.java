@@ -0,0 +1,124 @@
+package com.letsdoit.logger.data.store;
+
+import com.google.common.collect.Lists;
+import com.letsdoit.logger.data.dao.Activity;
+
+import java.io.File;
+import java.util.List;
+
+import static org.joda.time.Period.hours;
+import static org.joda.time.Period.minutes;
+
+/**
+ * Verify the memory mapped store behaves like every other ActivityStore and keeps its Activities across reopening.
+ */
+public class MappedFileActivityStoreTest extends ActivityStoreConformanceTest {
+    private File directory;
+
+    @Override
+    protected ActivityStore createStore() throws Exception {
+        directory = File.createTempFile("MappedFileActivityStoreTest", "");
+        assertTrue(directory.delete());
+        return new MappedFileActivityStore(directory);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    public void testReopen() {
+        Activity kept = new Activity("Walk", START, START.plus(minutes(20)));
+        Activity deleted = new Activity("Cook", START.plus(minutes(20)), START.plus(hours(3)));
+        store.addActivities(Lists.newArrayList(deleted, kept));
+        store.deleteActivity(deleted);
+        store.close();
+
+        store = new MappedFileActivityStore(directory);
+        store.open();
+        assertEquals(Lists.newArrayList(kept), store.getActivitiesInRange(START, START.plusDays(1)));
+
+        // Names read back from the file keep their ids
+        store.addActivity(deleted);
+        store.close();
+        store.open();
+        assertEquals(Lists.newArrayList(kept, deleted), store.getActivitiesInRange(START, START.plusDays(1)));
+    }
+
+    public void testFailedBatchIsRolledBack() {
+        Activity before = new Activity("Walk", START, START.plus(minutes(20)));
+        store.addActivity(before);
+        int recordCount = ((MappedFileActivityStore) store).getRecordCount();
+
+        // The first Activity is appended before the second fails to fragment
+        Activity appended = new Activity("Read", START.plus(hours(1)), START.plus(hours(2)));
+        Activity invalid = new Activity("", START.plus(hours(2)), START.plus(hours(3)));
+        try {
+            store.addActivities(Lists.newArrayList(appended, invalid));
+            fail("The name is empty");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        assertEquals(recordCount, ((MappedFileActivityStore) store).getRecordCount());
+
+        // The next commit doesn't take the failed batch with it, even after replaying the log
+        Activity after = new Activity("Cook", START.plus(hours(4)), START.plus(hours(5)));
+        store.addActivity(after);
+        assertEquals(Lists.newArrayList(before, after), store.getActivitiesInRange(START, START.plusDays(1)));
+        store.close();
+
+        store = new MappedFileActivityStore(directory);
+        store.open();
+        assertEquals(Lists.newArrayList(before, after), store.getActivitiesInRange(START, START.plusDays(1)));
+    }
+
+    public void testGrowsPastTheInitialMapping() {
+        List<Activity> activities = Lists.newArrayList();
+        for (int i = 0; i < 10000; i++) {
+            activities.add(new Activity("Activity " + (i % 7), START.plus(minutes(i)), START.plus(minutes(i + 1))));
+        }
+        store.addActivities(activities);
+        store.close();
+
+        store.open();
+        assertEquals(activities, store.getActivitiesInRange(START, START.plus(minutes(10000))));
+    }
+
+    public void testCompaction() {
+        List<Activity> activities = Lists.newArrayList();
+        for (int i = 0; i < 3000; i++) {
+            // Two hours long, so two fragments each
+            activities.add(new Activity("Activity " + (i % 7), START.plus(hours(2 * i)), START.plus(hours(2 * i + 2))));
+        }
+        MappedFileActivityStore mappedStore = (MappedFileActivityStore) store;
+        mappedStore.addActivities(activities);
+        assertEquals(6000, mappedStore.getRecordCount());
+
+        // Deleting most of the Activities compacts the log on its own
+        List<Activity> kept = Lists.newArrayList();
+        for (int i = 0; i < activities.size(); i++) {
+            if (i % 10 == 0) {
+                kept.add(activities.get(i));
+            } else {
+                assertTrue(mappedStore.deleteActivity(activities.get(i)));
+            }
+        }
+        assertTrue(mappedStore.getRecordCount() < 6000);
+
+        mappedStore.compact();
+        assertEquals(2 * kept.size(), mappedStore.getRecordCount());
+        assertEquals(kept, mappedStore.getActivitiesInRange(START, START.plus(hours(6000))));
+
+        mappedStore.close();
+        mappedStore.open();
+        assertEquals(kept, mappedStore.getActivitiesInRange(START, START.plus(hours(6000))));
+        assertFalse(mappedStore.hasActivitiesInRange(START.plus(hours(2)), START.plus(hours(20))));
+    }
+}
@@ -0,0 +1,91 @@
+package com.letsdoit.logger.logging;
+
+import junit.framework.TestCase;
+
+import com.google.common.base.Supplier;
+import com.google.common.collect.Lists;
+
+import java.util.List;
+
+/**
+ * Verify that disabled levels don't build their messages.
+ */
+public class AppLogTest extends TestCase {
+
+    private final List<String> logged = Lists.newArrayList();
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        AppLog.setSink(new LogSink() {
+            @Override
+            public void println(int level, String tag, String message, Throwable throwable) {
+                logged.add(level + " " + tag + " " + message);
+            }
+        });
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        AppLog.setSink(new JavaLogSink());
+        AppLog.setLevel(AppLog.INFO);
+        super.tearDown();
+    }
+
+    public void testLevelGating() {
+        AppLog.setLevel(AppLog.INFO);
+        assertFalse(AppLog.isDebugEnabled());
+        assertTrue(AppLog.isLoggable(AppLog.WARN));
+
+        AppLog.d("Tag", "debug");
+        AppLog.i("Tag", "info");
+        AppLog.w("Tag", "warn %s %s", 1, 2);
+        assertEquals(Lists.newArrayList("4 Tag info", "5 Tag warn 1 2"), logged);
+    }
+
+    public void testDisabledDoesNotBuildMessage() {
+        AppLog.setLevel(AppLog.INFO);
+        Object explodingArg = new Object() {
+            @Override
+            public String toString() {
+                throw new AssertionError("Disabled messages shouldn't be formatted");
+            }
+        };
+        AppLog.d("Tag", "%s", explodingArg);
+        AppLog.d("Tag", new Supplier<String>() {
+            @Override
+            public String get() {
+                throw new AssertionError("Disabled messages shouldn't be supplied");
+            }
+        });
+        assertTrue(logged.isEmpty());
+    }
+
+    public void testDisabledInfoDoesNotBuildMessage() {
+        AppLog.setLevel(AppLog.WARN);
+        Object explodingArg = new Object() {
+            @Override
+            public String toString() {
+                throw new AssertionError("Disabled messages shouldn't be formatted");
+            }
+        };
+        AppLog.i("Tag", "%s %s %s %s", 1, 2, 3, explodingArg);
+        assertTrue(logged.isEmpty());
+
+        AppLog.setLevel(AppLog.INFO);
+        AppLog.i("Tag", "%s of %s in %s ms, %.0f/s", 1, 2, 3L, 0.4);
+        assertEquals(Lists.newArrayList("4 Tag 1 of 2 in 3 ms, 0/s"), logged);
+    }
+
+    public void testEnabledBuildsMessage() {
+        AppLog.setLevel(AppLog.DEBUG);
+        AppLog.d("Tag", "%s-%s-%s", "a", "b", "c");
+        AppLog.d("Tag", new Supplier<String>() {
+            @Override
+            public String get() {
+                return "supplied";
+            }
+        });
+        assertEquals(Lists.newArrayList("3 Tag a-b-c", "3 Tag supplied"), logged);
+    }
+}
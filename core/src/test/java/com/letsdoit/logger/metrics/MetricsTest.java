@@ -0,0 +1,83 @@
+package com.letsdoit.logger.metrics;
+
+import junit.framework.TestCase;
+
+import com.google.common.collect.Lists;
+
+import java.util.List;
+
+/**
+ * Verify the timers, counters and that timed sections are traced.
+ */
+public class MetricsTest extends TestCase {
+
+    @Override
+    protected void tearDown() throws Exception {
+        Metrics.setTracer(null);
+        Metrics.reset();
+        super.tearDown();
+    }
+
+    public void testSameNameSameInstance() {
+        assertSame(Metrics.timer("MetricsTest.timer"), Metrics.timer("MetricsTest.timer"));
+        assertSame(Metrics.counter("MetricsTest.counter"), Metrics.counter("MetricsTest.counter"));
+    }
+
+    public void testCounter() {
+        Counter counter = Metrics.counter("MetricsTest.counter");
+        counter.increment();
+        counter.add(4);
+        assertEquals(5, counter.getCount());
+
+        Metrics.reset();
+        assertEquals(0, counter.getCount());
+    }
+
+    public void testTimerHistogram() {
+        Timer timer = Metrics.timer("MetricsTest.histogram");
+        // 90 calls around 3us, 10 calls around 1ms
+        for (int i = 0; i < 90; i++) {
+            timer.record(3000);
+        }
+        for (int i = 0; i < 10; i++) {
+            timer.record(1000000);
+        }
+
+        assertEquals(100, timer.getCount());
+        assertEquals(90 * 3000 + 10 * 1000000, timer.getTotalNanos());
+        assertEquals(1000000, timer.getMaxNanos());
+        assertEquals(4, timer.getPercentileMicros(50));
+        assertEquals(4, timer.getPercentileMicros(90));
+        assertEquals(1024, timer.getPercentileMicros(99));
+    }
+
+    public void testTimerIsTraced() {
+        final List<String> sections = Lists.newArrayList();
+        Metrics.setTracer(new Tracer() {
+            @Override
+            public void beginSection(String name) {
+                sections.add("begin " + name);
+            }
+
+            @Override
+            public void endSection() {
+                sections.add("end");
+            }
+        });
+
+        Timer timer = Metrics.timer("MetricsTest.traced");
+        timer.stop(timer.start());
+
+        assertEquals(Lists.newArrayList("begin MetricsTest.traced", "end"), sections);
+        assertEquals(1, timer.getCount());
+    }
+
+    public void testDumpSkipsUnused() {
+        Metrics.timer("MetricsTest.unused");
+        Metrics.counter("MetricsTest.dumped").increment();
+
+        String dump = Metrics.dump();
+        assertTrue(dump, dump.contains("MetricsTest.dumped: 1"));
+        assertFalse(dump, dump.contains("MetricsTest.unused"));
+    }
+}
@@ -0,0 +1,76 @@
+package com.letsdoit.logger.view;
+
+import junit.framework.TestCase;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+import static org.joda.time.Period.days;
+import static org.joda.time.Period.hours;
+import static org.joda.time.Period.minutes;
+
+/**
+ * Verify finding the next boundary without stepping to it.
+ */
+public class AlignedBoundariesTest extends TestCase {
+    private static final long FIVE_MINUTES = minutes(5).toStandardDuration().getMillis();
+
+    public void testNext() {
+        assertEquals(1000 + FIVE_MINUTES, AlignedBoundaries.next(1000, 1000, FIVE_MINUTES));
+        assertEquals(1000 + FIVE_MINUTES, AlignedBoundaries.next(1000, 1000 + FIVE_MINUTES - 1, FIVE_MINUTES));
+        assertEquals(1000 + 2 * FIVE_MINUTES, AlignedBoundaries.next(1000, 1000 + FIVE_MINUTES, FIVE_MINUTES));
+    }
+
+    public void testNext_BeforeReference() {
+        assertEquals(1000, AlignedBoundaries.next(1000, 999, FIVE_MINUTES));
+        assertEquals(-FIVE_MINUTES, AlignedBoundaries.next(-FIVE_MINUTES, -3 * FIVE_MINUTES, FIVE_MINUTES));
+    }
+
+    public void testNext_MatchesStepping() {
+        long reference = -7 * FIVE_MINUTES + 13;
+        long boundary = reference;
+        for (long time = reference; time < reference + 20 * FIVE_MINUTES; time += 997) {
+            while (boundary <= time) {
+                boundary += FIVE_MINUTES;
+            }
+            assertEquals(boundary, AlignedBoundaries.next(reference, time, FIVE_MINUTES));
+        }
+    }
+
+    public void testNext_FarFromReference() {
+        DateTime reference = new DateTime(2014, 7, 17, 10, 0, 0, 0, DateTimeZone.UTC);
+        DateTime time = reference.plusYears(10).plus(minutes(2));
+        assertEquals(reference.plusYears(10).plus(minutes(5)),
+                AlignedBoundaries.next(reference, time, minutes(5).toStandardDuration()));
+    }
+
+    /**
+     * The boundaries are fixed instants apart, so they keep the reference's zone and ignore the DST transition.
+     */
+    public void testNext_AcrossDaylightSavingTime() {
+        DateTimeZone zone = DateTimeZone.forID("America/New_York");
+        // The clocks went forward at 2am on March 9, 2014
+        DateTime reference = new DateTime(2014, 3, 8, 12, 0, 0, 0, zone);
+        DateTime next = AlignedBoundaries.next(reference, reference.plus(hours(13)),
+                days(1).toStandardDuration());
+
+        assertEquals(zone, next.getZone());
+        assertEquals(reference.getMillis() + days(1).toStandardDuration().getMillis(), next.getMillis());
+        assertEquals(13, next.getHourOfDay());
+    }
+
+    public void testZeroSpacingIsRejected() {
+        try {
+            AlignedBoundaries.next(0, 10, 0);
+            fail("There is no next boundary");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        try {
+            AlignedBoundaries.checkSpacing(-1);
+            fail("The spacing is negative");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+}
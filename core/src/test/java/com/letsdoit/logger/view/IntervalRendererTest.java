@@ -0,0 +1,152 @@
+package com.letsdoit.logger.view;
+
+import junit.framework.TestCase;
+
+import com.google.common.collect.Lists;
+import com.letsdoit.logger.data.dao.Activity;
+import com.letsdoit.logger.data.dao.ActivityFragment;
+import com.letsdoit.logger.data.dao.ActivityHistoryGenerator;
+import com.letsdoit.logger.data.dao.ActivityInterval;
+import com.letsdoit.logger.data.dao.Partitioner;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Duration;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.joda.time.Period.minutes;
+
+/**
+ * Verify the millis based renderer against the original DateTime based one, block for block.
+ *
+ * Created by Andrey on 8/8/2015.
+ */
+public class IntervalRendererTest extends TestCase {
+
+    static {
+        DateTimeZone.setDefault(DateTimeZone.UTC);
+    }
+
+    private static final DateTime START = new DateTime(2014, 7, 17, 10, 0, 0, 0);
+    private static final Duration HALF_HOUR = minutes(30).toStandardDuration();
+    private static final Duration MIN_BLOCK_DURATION = minutes(4).toStandardDuration();
+    private static final Duration FREE_TIME_PARTITION_DURATION = minutes(5).toStandardDuration();
+
+    private static void assertSameBlocks(ActivityInterval interval, Duration minBlockDuration,
+                                         Duration freeTimePartitionDuration) {
+        List<RenderBlock> expected = ReferenceIntervalRenderer.render(interval, minBlockDuration,
+                freeTimePartitionDuration);
+        List<RenderBlock> actual = IntervalRenderer.render(interval, minBlockDuration, freeTimePartitionDuration);
+
+        String message = interval.toString();
+        assertEquals(message, expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(message, expected.get(i).getBlockStart(), actual.get(i).getBlockStart());
+            assertEquals(message, expected.get(i).getBlockEnd(), actual.get(i).getBlockEnd());
+            assertEquals(message, expected.get(i).getFragments(), actual.get(i).getFragments());
+        }
+    }
+
+    private static ActivityInterval interval(Activity... activities) {
+        return Partitioner.partition(Lists.newArrayList(activities), START, START.plus(HALF_HOUR), HALF_HOUR).get(0);
+    }
+
+    public void testRender_Empty() {
+        ActivityInterval interval = interval();
+        assertSameBlocks(interval, MIN_BLOCK_DURATION, FREE_TIME_PARTITION_DURATION);
+        assertEquals(6, IntervalRenderer.render(interval, MIN_BLOCK_DURATION, FREE_TIME_PARTITION_DURATION).size());
+    }
+
+    public void testRender_FragmentCloseToTheEnd() {
+        Activity early = new Activity("Read", START.plus(minutes(10)), START.plus(minutes(22)));
+        Activity late = new Activity("Walk", START.plus(minutes(27)), START.plus(minutes(30)));
+        ActivityInterval interval = interval(early, late);
+        assertSameBlocks(interval, MIN_BLOCK_DURATION, FREE_TIME_PARTITION_DURATION);
+
+        // The last block takes the free time and the fragment that are too close to the end
+        List<RenderBlock> blocks = IntervalRenderer.render(interval, MIN_BLOCK_DURATION, FREE_TIME_PARTITION_DURATION);
+        RenderBlock last = blocks.get(blocks.size() - 1);
+        assertEquals(START.plus(minutes(22)), last.getBlockStart());
+        assertEquals(START.plus(HALF_HOUR), last.getBlockEnd());
+        assertEquals(1, last.getFragments().size());
+        assertEquals("Walk", last.getFragments().get(0).getActivityName());
+    }
+
+    public void testRender_ReusesTheBuffer() {
+        Activity activity = new Activity("Read", START.plus(minutes(10)), START.plus(minutes(22)));
+        ActivityInterval busy = interval(activity);
+        RenderBuffer buffer = new RenderBuffer(1);
+
+        IntervalRenderer.render(interval(), MIN_BLOCK_DURATION.getMillis(), FREE_TIME_PARTITION_DURATION.getMillis(),
+                buffer);
+        assertEquals(6, buffer.size());
+
+        IntervalRenderer.render(busy, MIN_BLOCK_DURATION.getMillis(), FREE_TIME_PARTITION_DURATION.getMillis(),
+                buffer);
+        assertEquals(4, buffer.size());
+        assertTrue(buffer.isFreeTime(1));
+        assertFalse(buffer.isFreeTime(2));
+        assertEquals(START.plus(minutes(10)).getMillis(), buffer.getStartMillis(2));
+        assertEquals(START.plus(minutes(22)).getMillis(), buffer.getEndMillis(2));
+        assertEquals(0, buffer.getFirstFragment(2));
+        assertEquals(1, buffer.getFragmentEnd(2));
+    }
+
+    public void testRender_MatchesReferenceOnRandomIntervals() {
+        Random random = new Random(8);
+        for (int i = 0; i < 2000; i++) {
+            // Activities of a few seconds to twenty minutes, with gaps of up to ten minutes
+            List<Activity> activities = Lists.newArrayList();
+            DateTime time = START.minus(minutes(random.nextInt(20)));
+            while (time.isBefore(START.plus(HALF_HOUR))) {
+                DateTime end = time.plusSeconds(1 + random.nextInt(20 * 60));
+                activities.add(new Activity("Activity " + random.nextInt(5), time, end));
+                time = end.plusSeconds(random.nextBoolean() ? 0 : random.nextInt(10 * 60));
+            }
+            ActivityInterval interval = interval(activities.toArray(new Activity[activities.size()]));
+
+            assertSameBlocks(interval, MIN_BLOCK_DURATION, FREE_TIME_PARTITION_DURATION);
+            assertSameBlocks(interval, minutes(1).toStandardDuration(), minutes(10).toStandardDuration());
+            assertSameBlocks(interval, minutes(7).toStandardDuration(), minutes(3).toStandardDuration());
+        }
+    }
+
+    public void testRender_MatchesReferenceOnGeneratedHistory() {
+        List<Activity> activities = ActivityHistoryGenerator.builder()
+                .seed(21)
+                .days(START, 30)
+                .edgeCaseRate(0.2)
+                .build()
+                .generate();
+        List<ActivityInterval> halfHours = Partitioner.partition(activities, START, START.plusDays(30), HALF_HOUR);
+        for (ActivityInterval halfHour : halfHours) {
+            assertSameBlocks(halfHour, MIN_BLOCK_DURATION, FREE_TIME_PARTITION_DURATION);
+        }
+    }
+
+    public void testRender_OverlappingFragments() {
+        ActivityFragment first = new ActivityFragment("Read", START, START.plus(minutes(10)),
+                START, START.plus(minutes(10)));
+        ActivityFragment overlapping = new ActivityFragment("Walk", START.plus(minutes(5)), START.plus(minutes(15)),
+                START.plus(minutes(5)), START.plus(minutes(15)));
+        ActivityInterval interval = new ActivityInterval(START, START.plus(HALF_HOUR),
+                Lists.newArrayList(first, overlapping));
+        try {
+            IntervalRenderer.render(interval, minutes(20).toStandardDuration(), FREE_TIME_PARTITION_DURATION);
+            fail("The fragments overlap");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    public void testRender_ZeroFreeTimePartition() {
+        try {
+            IntervalRenderer.render(interval(), MIN_BLOCK_DURATION, Duration.ZERO);
+            fail("Free time can't be split every 0 ms");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+}
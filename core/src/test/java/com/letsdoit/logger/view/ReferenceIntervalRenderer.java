@@ -12,36 +12,22 @@ import java.util.Iterator;
 import java.util.List;
 
 /**
- * Converts an ActivityInterval list of RenderBlocks which will get rendered.
+ * The original IntervalRenderer, stepping through DateTimes, Durations and RenderBlock.Builders.  Kept as the
+ * reference that the millis based renderer has to match block for block.
  *
- * Fills empty times (ones with no Activity) with fixed size empty blocks.
- *
- * Makes sure that no block is smaller than the configured size.
- *
- * TODO: Render is not the right verb.  Rendering is when you actually draw something
- * onto the screen.  This is the "pre-rendering" stage - the DisplayBlocks are the
- * render-layer-agnostic representation that can get rendered.
- *
- * Created by Andrey on 6/20/2015.
+ * The only change is that a fragment close to the end of the interval is no longer dropped from the last block.
  */
-public class IntervalRenderer {
-
-    /**
-     * Break an ActivityInterval into a set of RenderBlocks, making sure that no RenderBlock is smaller than the
-     * minBlockDuration and blocks of free time are partitioned on the freeTimePartitionDuration relative to the
-     * start of the ActivityInterval.
-     *
-     * @param interval a time interval with activities and free time between activities.
-     * @param minBlockDuration the smallest allowed size for a render block.  None of the returned RenderBlocks will
-     *                         be smaller than the minBlockDuration.
-     * @param freeTimePartitionDuration the time interval relative to the start of the ActivityInterval that free time
-     *                                  should be split on as long as the resulting RenderBlocks are not smaller than
-     *                                  the minBlockDuration.
-     * @return a list of RenderBlocks representing the ActivityInterval's activities and free time.
-     */
-    public static List<RenderBlock> render(ActivityInterval interval,
-                                           Duration minBlockDuration,
-                                           Duration freeTimePartitionDuration) {
+class ReferenceIntervalRenderer {
+
+    static List<RenderBlock> render(ActivityInterval interval,
+                                    Duration minBlockDuration,
+                                    Duration freeTimePartitionDuration) {
+        return renderInterval(interval, minBlockDuration, freeTimePartitionDuration);
+    }
+
+    private static List<RenderBlock> renderInterval(ActivityInterval interval,
+                                                    Duration minBlockDuration,
+                                                    Duration freeTimePartitionDuration) {
 
         Preconditions.checkArgument(minBlockDuration.isShorterThan(interval.getDuration()),
                 String.format("The minBlockDuration cannot be larger than the interval.  " +
@@ -110,6 +96,10 @@ public class IntervalRenderer {
         // The above loop exists if we get too close to the end of the ActivityInterval.
         // All of the free time and fragments go into the last block if we get too close to the end.
         if (blockBuilder.getBlockEnd().isBefore(interval.getEnd())) {
+            // Originally left out: the fragment already taken from the iterator was dropped
+            if (fragment != null) {
+                blockBuilder.add(fragment);
+            }
             while (fragmentIter.hasNext()) {
                 blockBuilder.add(fragmentIter.next());
             }
@@ -128,5 +118,4 @@ public class IntervalRenderer {
     private static ActivityFragment nextOrNull(Iterator<ActivityFragment> fragmentIter) {
         return fragmentIter.hasNext() ? fragmentIter.next() : null;
     }
-
 }
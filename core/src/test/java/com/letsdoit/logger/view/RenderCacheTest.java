@@ -0,0 +1,140 @@
+package com.letsdoit.logger.view;
+
+import junit.framework.TestCase;
+
+import com.google.common.collect.Lists;
+import com.letsdoit.logger.data.dao.Activity;
+import com.letsdoit.logger.data.dao.ActivityInterval;
+import com.letsdoit.logger.data.dao.Partitioner;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Duration;
+
+import java.util.List;
+
+import static org.joda.time.Period.hours;
+import static org.joda.time.Period.minutes;
+
+/**
+ * Verify the RenderCache only renders intervals it hasn't seen with the same content.
+ */
+public class RenderCacheTest extends TestCase {
+
+    static {
+        DateTimeZone.setDefault(DateTimeZone.UTC);
+    }
+
+    private static final DateTime START = new DateTime(2014, 7, 17, 10, 0, 0, 0);
+    private static final Duration HALF_HOUR = minutes(30).toStandardDuration();
+    private static final Duration MIN_BLOCK_DURATION = minutes(4).toStandardDuration();
+    private static final Duration FREE_TIME_PARTITION_DURATION = minutes(5).toStandardDuration();
+
+    private final RenderCache cache = new RenderCache(4, MIN_BLOCK_DURATION, FREE_TIME_PARTITION_DURATION);
+
+    private static List<ActivityInterval> halfHours(List<Activity> activities, int count) {
+        return Partitioner.partition(activities, START, START.plus(HALF_HOUR.getMillis() * count), HALF_HOUR);
+    }
+
+    private static void assertSameBlocks(List<RenderBlock> expected, List<RenderBlock> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getBlockStart(), actual.get(i).getBlockStart());
+            assertEquals(expected.get(i).getBlockEnd(), actual.get(i).getBlockEnd());
+            assertEquals(expected.get(i).getFragments().toString(), actual.get(i).getFragments().toString());
+        }
+    }
+
+    public void testRendersLikeTheRenderer() {
+        List<Activity> activities = Lists.newArrayList(
+                new Activity("Read", START.plus(minutes(10)), START.plus(minutes(50))));
+        for (ActivityInterval halfHour : halfHours(activities, 2)) {
+            assertSameBlocks(IntervalRenderer.render(halfHour, MIN_BLOCK_DURATION, FREE_TIME_PARTITION_DURATION),
+                    cache.render(halfHour));
+        }
+        assertEquals(0, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    public void testReloadingTheSameContentHits() {
+        List<Activity> activities = Lists.newArrayList(
+                new Activity("Read", START.plus(minutes(10)), START.plus(minutes(50))));
+        List<RenderBlock> first = cache.render(halfHours(activities, 1).get(0));
+
+        // A new load partitions into new ActivityIntervals with the same content
+        List<RenderBlock> again = cache.render(halfHours(Lists.newArrayList(activities), 1).get(0));
+        assertSame(first, again);
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    public void testChangedContentMisses() {
+        Activity activity = new Activity("Read", START.plus(minutes(10)), START.plus(minutes(50)));
+        List<ActivityInterval> before = halfHours(Lists.newArrayList(activity), 2);
+        cache.render(before.get(0));
+        cache.render(before.get(1));
+
+        // Extending the activity changes both half hours it's in, even though its first fragment looks the same
+        Activity extended = new Activity("Read", START.plus(minutes(10)), START.plus(minutes(55)));
+        List<ActivityInterval> after = halfHours(Lists.newArrayList(extended), 2);
+        List<RenderBlock> blocks = cache.render(after.get(0));
+        cache.render(after.get(1));
+        assertEquals(0, cache.getHitCount());
+        assertEquals(4, cache.getMissCount());
+        assertEquals(START.plus(minutes(55)), blocks.get(blocks.size() - 1).getFragments().get(0).getActivityEnd());
+
+        // Renaming changes the content too
+        Activity renamed = new Activity("Write", START.plus(minutes(10)), START.plus(minutes(55)));
+        cache.render(halfHours(Lists.newArrayList(renamed), 1).get(0));
+        assertEquals(5, cache.getMissCount());
+    }
+
+    public void testSameVersionWithDifferentContentMisses() {
+        // "Aa" and "BB" have the same String hash code, so the two intervals have the same content version
+        ActivityInterval aa = halfHours(Lists.newArrayList(
+                new Activity("Aa", START.plus(minutes(10)), START.plus(minutes(20)))), 1).get(0);
+        ActivityInterval bb = halfHours(Lists.newArrayList(
+                new Activity("BB", START.plus(minutes(10)), START.plus(minutes(20)))), 1).get(0);
+        assertEquals(RenderCache.contentVersion(aa), RenderCache.contentVersion(bb));
+
+        cache.render(aa);
+        List<RenderBlock> blocks = cache.render(bb);
+        assertEquals(0, cache.getHitCount());
+        assertSameBlocks(IntervalRenderer.render(bb, MIN_BLOCK_DURATION, FREE_TIME_PARTITION_DURATION), blocks);
+    }
+
+    public void testEvictsLeastRecentlyUsed() {
+        List<ActivityInterval> halfHours = halfHours(Lists.<Activity>newArrayList(), 6);
+        for (int i = 0; i < 4; i++) {
+            cache.render(halfHours.get(i));
+        }
+        // Use the first again, so the second is the least recently used
+        cache.render(halfHours.get(0));
+        cache.render(halfHours.get(4));
+        assertEquals(4, cache.size());
+
+        cache.render(halfHours.get(0));
+        assertEquals(2, cache.getHitCount());
+        cache.render(halfHours.get(1));
+        assertEquals(2, cache.getHitCount());
+    }
+
+    public void testClear() {
+        ActivityInterval halfHour = halfHours(Lists.<Activity>newArrayList(), 1).get(0);
+        cache.render(halfHour);
+        cache.clear();
+        assertEquals(0, cache.size());
+        cache.render(halfHour);
+        assertEquals(2, cache.getMissCount());
+    }
+
+    public void testContentVersion() {
+        Activity activity = new Activity("Read", START.minus(hours(1)), START.plus(minutes(20)));
+        ActivityInterval halfHour = halfHours(Lists.newArrayList(activity), 1).get(0);
+        ActivityInterval sameContent = halfHours(Lists.newArrayList(activity), 1).get(0);
+        ActivityInterval empty = halfHours(Lists.<Activity>newArrayList(), 1).get(0);
+
+        assertEquals(RenderCache.contentVersion(halfHour), RenderCache.contentVersion(sameContent));
+        assertFalse(RenderCache.contentVersion(halfHour) == RenderCache.contentVersion(empty));
+    }
+}